@@ -0,0 +1,325 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdaptiveScheduler class - sizes the pipeline while the crawl runs instead of fixed BOUND / N_CONSUMERS / N_CTASKS
+ *          - samples queue occupancy, time producers were blocked on put, consumer utilization (1 - time idle on take)
+ *            and throughput every interval
+ *          - queue full and consumers busy -> one more consumer; queue empty and consumers idle -> more crawler
+ *            permits (directories listed at once), then fewer consumers
+ *          - every step up must raise throughput by STEP_GAIN, otherwise the storage is saturated: the step is taken back
+ *            and not repeated for CEILING_SAMPLES samples (slow disks / network mounts are not overloaded)
+ *          - queue capacity grows when producers are blocked and consumers idle within one interval (bursts),
+ *            shrinks when the queue stays almost empty
+ *          - all changes stay within the configured limits, consumers retire between batches (never mid batch)
+ */
+public class AdaptiveScheduler {
+    /**
+     * Consumer starter - registers (CrawlCompletion.addConsumer) and starts one more consumer
+     */
+    public interface ConsumerStarter {
+        /**
+         * @return true if started, false if the crawl is already done
+         */
+        boolean start();
+    }
+
+    /**
+     * Throughput gain a step up must bring to be kept
+     */
+    private static final double STEP_GAIN = 1.05;
+    /**
+     * Num of samples a step taken back is not repeated
+     */
+    private static final int CEILING_SAMPLES = 10;
+    /**
+     * Num of almost empty samples before the queue shrinks
+     */
+    private static final int SHRINK_SAMPLES = 4;
+
+    /**
+     * Thread sampling all schedulers
+     */
+    private static final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "adaptive-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Last step taken
+     */
+    private enum Step {
+        NONE, ADD_CONSUMER, ADD_CRAWLERS
+    }
+
+    /**
+     * Queue of the crawl
+     */
+    private final FileBatchQueue queue;
+    /**
+     * Permits = directories listed at once (null - crawl not limited)
+     */
+    private final ResizableSemaphore crawlers;
+    /**
+     * Starts one more consumer
+     */
+    private final ConsumerStarter starter;
+    /**
+     * Limits of consumers, crawler permits and queue capacity
+     */
+    private final int minConsumers, maxConsumers, minCrawlers, maxCrawlers, minQueue, maxQueue;
+    /**
+     * Metrics of the run
+     */
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    /**
+     * Num of running consumers (not counting the retiring ones)
+     */
+    private final AtomicInteger consumers;
+    /**
+     * Num of consumers asked to retire that have not yet
+     */
+    private final AtomicInteger retiring = new AtomicInteger();
+    /**
+     * Sampling task, null until start
+     */
+    private ScheduledFuture<?> sampling;
+
+    /**
+     * State of the last sample (only used by the sampling thread)
+     */
+    private long lastNanos, lastTaken, lastDirectories, lastPutBlocked, lastTakeIdle;
+    private double lastRate, lastListRate;
+    private Step lastStep = Step.NONE;
+    private int crawlerStep = 0, consumerCeiling, crawlerCeiling, ceilingAge = 0, emptySamples = 0;
+    /**
+     * Num of changes made and sizes at start (for the summary)
+     */
+    private volatile int changes = 0;
+    private final int startConsumers, startCrawlers, startQueue;
+
+    /**
+     * Constructor initializing controlled parts and limits
+     *
+     * @param queue     queue of the crawl (capacity is changed)
+     * @param crawlers  crawler permits (limit is changed), null - crawler not controlled
+     * @param starter   starts one more consumer
+     * @param consumers num of consumers already started
+     * @param config    limits (min / max consumers, crawlers and queue capacity)
+     */
+    public AdaptiveScheduler(FileBatchQueue queue, ResizableSemaphore crawlers, ConsumerStarter starter, int consumers, CrawlConfig config) {
+        this.queue = queue;
+        this.crawlers = crawlers;
+        this.starter = starter;
+        this.consumers = new AtomicInteger(consumers);
+        this.minConsumers = Math.max(1, config.minConsumers);
+        this.maxConsumers = Math.max(minConsumers, config.maxConsumers);
+        this.minCrawlers = Math.max(1, config.minCrawlers);
+        this.maxCrawlers = Math.max(minCrawlers, config.maxOpenDirectories);
+        this.minQueue = Math.max(1, config.minQueueCapacity);
+        this.maxQueue = Math.max(minQueue, config.maxQueueCapacity);
+        this.consumerCeiling = maxConsumers;
+        this.crawlerCeiling = maxCrawlers;
+        this.startConsumers = consumers;
+        this.startCrawlers = (crawlers == null) ? 0 : crawlers.limit();
+        this.startQueue = queue.capacity();
+    }
+
+    /**
+     * start - samples every interval until stop()
+     *
+     * @param intervalMillis millis between samples
+     */
+    public synchronized void start(long intervalMillis) {
+        lastNanos = System.nanoTime();
+        lastTaken = queue.taken();
+        lastDirectories = metrics.getDirectoriesCrawled();
+        lastPutBlocked = metrics.getPutBlockedMillis();
+        lastTakeIdle = metrics.getTakeIdleMillis();
+        sampling = sampler.scheduleAtFixedRate(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stop - stops sampling (sizes stay as they are)
+     */
+    public synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+        }
+    }
+
+    /**
+     * shouldRetire - asked by a consumer between batches
+     *
+     * @return true if the consumer should stop now (call consumerDone and return)
+     */
+    public boolean shouldRetire() {
+        return retiring.getAndUpdate(n -> (n > 0) ? n - 1 : n) > 0;
+    }
+
+    /**
+     * summary - sizes at start and now
+     *
+     * @return text summary
+     */
+    public String summary() {
+        return String.format("Adaptive: consumers %d -> %d (%d..%d), crawler permits %s, queue %d -> %d chunks (%d..%d), %d changes",
+                startConsumers, consumers.get(), minConsumers, maxConsumers,
+                (crawlers == null) ? "not limited" : startCrawlers + " -> " + crawlers.limit() + " (" + minCrawlers + ".." + maxCrawlers + ")",
+                startQueue, queue.capacity(), minQueue, maxQueue, changes);
+    }
+
+    /**
+     * sample - reads the numbers of the last interval and takes at most one step for workers and one for the queue
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        long taken = queue.taken(), directories = metrics.getDirectoriesCrawled();
+        long putBlocked = metrics.getPutBlockedMillis(), takeIdle = metrics.getTakeIdleMillis();
+        double seconds = (now - lastNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+        long intervalMillis = (long) (seconds * 1000);
+        double rate = (taken - lastTaken) / seconds;
+        double listRate = (directories - lastDirectories) / seconds;
+        long blockedMillis = putBlocked - lastPutBlocked, idleMillis = takeIdle - lastTakeIdle;
+        int capacity = queue.capacity();
+        double occupancy = (double) queue.size() / capacity;
+        int running = consumers.get();
+        // idle time is recorded when a take returns - consumers still waiting count as idle now
+        int waiting = queue.waiting();
+        double utilization = Math.max(0, Math.min(1 - (double) idleMillis / (running * intervalMillis), 1 - (double) waiting / running));
+        boolean queueFull = occupancy >= 0.75 || blockedMillis * 10 > intervalMillis;
+        boolean queueEmpty = occupancy <= 0.25 && (idleMillis > 0 || waiting > 0);
+
+        if (++ceilingAge > CEILING_SAMPLES) {
+            consumerCeiling = maxConsumers;
+            crawlerCeiling = maxCrawlers;
+        }
+        String why = String.format("queue %.0f%% full, consumers %.0f%% busy, %.0f files/s, %.0f dirs/s", occupancy * 100, utilization * 100, rate, listRate);
+        if (lastStep == Step.ADD_CONSUMER && rate < lastRate * STEP_GAIN) {
+            // more consumers did not help - storage (or CPU) is saturated
+            consumerCeiling = running - 1;
+            ceilingAge = 0;
+            retireConsumer(why + " - no gain, taking back");
+            lastStep = Step.NONE;
+        } else if (lastStep == Step.ADD_CRAWLERS && listRate < lastListRate * STEP_GAIN) {
+            crawlerCeiling = crawlers.limit() - crawlerStep;
+            ceilingAge = 0;
+            resizeCrawlers(crawlerCeiling, why + " - no gain, taking back");
+            lastStep = Step.NONE;
+        } else if (queueFull && utilization >= 0.8 && running < Math.min(maxConsumers, consumerCeiling)) {
+            lastStep = addConsumer(why) ? Step.ADD_CONSUMER : Step.NONE;
+        } else if (queueEmpty && utilization < 0.5) {
+            if (crawlers != null && crawlers.limit() < Math.min(maxCrawlers, crawlerCeiling)) {
+                crawlerStep = Math.max(1, crawlers.limit() / 4);
+                resizeCrawlers(Math.min(crawlers.limit() + crawlerStep, Math.min(maxCrawlers, crawlerCeiling)), why);
+                lastStep = Step.ADD_CRAWLERS;
+            } else {
+                if (running > minConsumers) {
+                    retireConsumer(why);
+                }
+                lastStep = Step.NONE;
+            }
+        } else {
+            lastStep = Step.NONE;
+        }
+
+        // queue: bursts need room, a queue that stays almost empty does not
+        if (blockedMillis > 0 && idleMillis > 0 && capacity < maxQueue) {
+            resizeQueue(Math.min(maxQueue, capacity * 2), why);
+            emptySamples = 0;
+        } else if (occupancy <= 0.1 && blockedMillis == 0 && capacity > minQueue) {
+            if (++emptySamples >= SHRINK_SAMPLES) {
+                resizeQueue(Math.max(minQueue, capacity / 2), why);
+                emptySamples = 0;
+            }
+        } else {
+            emptySamples = 0;
+        }
+
+        lastNanos = now;
+        lastTaken = taken;
+        lastDirectories = directories;
+        lastPutBlocked = putBlocked;
+        lastTakeIdle = takeIdle;
+        lastRate = rate;
+        lastListRate = listRate;
+    }
+
+    /**
+     * addConsumer - starts one more consumer
+     *
+     * @param why numbers behind the step
+     * @return true if started
+     */
+    private boolean addConsumer(String why) {
+        if (!starter.start()) {
+            return false;
+        }
+        int running = consumers.incrementAndGet();
+        log("consumers " + (running - 1) + " -> " + running, why);
+        return true;
+    }
+
+    /**
+     * retireConsumer - asks one consumer to stop after its current batch
+     *
+     * @param why numbers behind the step
+     */
+    private void retireConsumer(String why) {
+        int running = consumers.get();
+        if (running <= minConsumers) {
+            return;
+        }
+        consumers.decrementAndGet();
+        retiring.incrementAndGet();
+        log("consumers " + running + " -> " + (running - 1), why);
+    }
+
+    /**
+     * resizeCrawlers - changes num of directories listed at once
+     *
+     * @param limit new limit
+     * @param why   numbers behind the step
+     */
+    private void resizeCrawlers(int limit, String why) {
+        int old = crawlers.limit();
+        limit = Math.max(minCrawlers, Math.min(maxCrawlers, limit));
+        if (limit != old) {
+            crawlers.resize(limit);
+            log("crawler permits " + old + " -> " + limit, why);
+        }
+    }
+
+    /**
+     * resizeQueue - changes queue capacity
+     *
+     * @param capacity new capacity in chunks
+     * @param why      numbers behind the step
+     */
+    private void resizeQueue(int capacity, String why) {
+        int old = queue.capacity();
+        if (capacity != old) {
+            queue.setCapacity(capacity);
+            log("queue " + old + " -> " + capacity + " chunks", why);
+        }
+    }
+
+    /**
+     * log - prints a change
+     *
+     * @param change what changed
+     * @param why    numbers behind it
+     */
+    private void log(String change, String why) {
+        changes++;
+        System.out.println("[adaptive] " + change + " (" + why + ")");
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * AsyncResultWriter class - ResultSink writing found files on its own thread
+ *          - consumers only add to a bounded queue (no stdout lock, no I/O on consumer threads) - when the output
+ *            can not keep up, accept waits for space, so results do not pile up in memory
+ *          - writer thread waits on the queue, drains everything pending, formats it into one buffer and writes +
+ *            flushes once per round, so console / file I/O is batched instead of one synchronized println per match
+ *          - close() queues an end marker, the writer stops once it has written everything before it
+ *          - the writer is a daemon thread - close() waits for it, a run that never closes the sink does not keep the
+ *            JVM alive
+ */
+public class AsyncResultWriter implements ResultSink {
+    /**
+     * Max num of results waiting to be written
+     */
+    static final int CAPACITY = 16 * 1024;
+    /**
+     * Queued by close() after the last result
+     */
+    private static final Result END = new Result(0, null);
+
+    /**
+     * Results waiting to be written
+     */
+    private final BlockingQueue<Result> pending = new ArrayBlockingQueue<>(CAPACITY);
+    /**
+     * Output of the results
+     */
+    private final Writer out;
+    /**
+     * True if out is a file opened by this writer (stdout is only flushed)
+     */
+    private final boolean ownsOutput;
+    /**
+     * Line format
+     */
+    private final Format format;
+    /**
+     * Thread writing the results
+     */
+    private final Thread writer;
+    /**
+     * First write error (later results are taken from the queue and dropped), reported by close()
+     */
+    private volatile IOException error;
+
+    /**
+     * Constructor - opens the output and starts the writer thread
+     *
+     * @param file   file to write to (null - standard output)
+     * @param format line format
+     * @throws IOException if file can not be created
+     */
+    public AsyncResultWriter(File file, Format format) throws IOException {
+        this(file == null ? System.out : new FileOutputStream(file), file != null, format);
+    }
+
+    /**
+     * Constructor - starts the writer thread
+     *
+     * @param stream     output stream
+     * @param ownsOutput true if the stream is closed by close()
+     * @param format     line format
+     */
+    AsyncResultWriter(OutputStream stream, boolean ownsOutput, Format format) {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+        this.ownsOutput = ownsOutput;
+        this.format = format;
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "result-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void accept(long index, File file) {
+        // after a write error results are dropped instead of piling up
+        if (error != null) {
+            return;
+        }
+        try {
+            pending.put(new Result(index, file));
+        } catch (InterruptedException e) {
+            // consumer interrupted (search cancelled) - the result is dropped
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void close() throws IOException {
+        boolean interrupted = false;
+        // the writer drains the queue also after an error, so put waits briefly - closed twice, the writer is gone
+        while (writer.isAlive()) {
+            try {
+                pending.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                // results must be written - wait again and keep the interrupt
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * writeLoop - writer thread: waits for results and writes them in rounds until the end marker
+     */
+    private void writeLoop() {
+        StringBuilder lines = new StringBuilder(64 * 1024);
+        List<Result> round = new ArrayList<>();
+        try {
+            String header = format.header();
+            if (header != null) {
+                out.write(header);
+                out.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        boolean last = false;
+        while (!last) {
+            try {
+                round.add(pending.take());
+            } catch (InterruptedException e) {
+                // nobody else interrupts the writer - keep waiting for the end marker, close() waits for it
+                continue;
+            }
+            pending.drainTo(round);
+            try {
+                for (Result result : round) {
+                    if (result == END) {
+                        last = true;
+                        break;
+                    }
+                    if (error != null) {
+                        continue;
+                    }
+                    format.append(lines, result.index, result.file.getPath());
+                    lines.append(System.lineSeparator());
+                    if (lines.length() >= 60 * 1024) {
+                        out.write(lines.toString());
+                        lines.setLength(0);
+                    }
+                }
+                if (lines.length() > 0) {
+                    out.write(lines.toString());
+                    lines.setLength(0);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                error = e;
+                lines.setLength(0);
+            }
+            round.clear();
+        }
+        try {
+            if (ownsOutput) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Result class - one found file waiting to be written
+     */
+    private static class Result {
+        /**
+         * Running num of the file
+         */
+        final long index;
+        /**
+         * Found file
+         */
+        final File file;
+
+        Result(long index, File file) {
+            this.index = index;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ContentIndex class - in-memory inverted index built by the Indexer (consumer) threads
+ *          - file contents are read block by block by a ContentReader (stream, pooled direct buffers or mmap)
+ *            and split into terms straight from the block
+ *          - every term points to a posting list of file IDs
+ *          - binary files are skipped by sniffing the first block for NUL bytes
+ *          - keeps files/s and MB/s counters, so throughput can be compared with the crawl
+ *          - a re-indexed or deleted file (watch mode) gets its old ID removed - removed IDs are skipped by lookup
+ *          - paths of the indexed files are kept in a PathArena (parent ID + name), not as one String per file
+ *          - with a PersistentIndex, files unchanged since the last run are indexed from their recorded terms (not read),
+ *            terms of the files read are recorded for the next run
+ */
+public class ContentIndex {
+    /**
+     * Size of the read buffer and of the block sniffed for binary content
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Terms shorter / longer than this are not indexed
+     */
+    static final int MIN_TERM = 2, MAX_TERM = 64;
+
+    /**
+     * Term -> posting list of file IDs
+     */
+    private final ConcurrentHashMap<String, PostingList> postings = new ConcurrentHashMap<>();
+    /**
+     * Paths of the indexed files (compact, path ID per file)
+     */
+    private final PathArena paths;
+    /**
+     * File ID -> path ID (file ID is the position in this list, guarded by paths)
+     */
+    private final PathArena.IdList pathIds = new PathArena.IdList();
+    /**
+     * Path ID -> current file ID + 1, 0 - not indexed (guarded by paths)
+     */
+    private int[] idByPath = new int[1024];
+    /**
+     * IDs of files deleted or re-indexed since (guarded by paths)
+     */
+    private final Set<Integer> removed = new HashSet<>();
+    /**
+     * Directory path ID -> path IDs of its indexed files and of its sub directories holding some (guarded by paths) -
+     * a deleted directory finds the files below it without a scan of all paths
+     */
+    private final Map<Integer, PathArena.IdList> childrenOf = new HashMap<>();
+    /**
+     * Path IDs already in childrenOf (guarded by paths)
+     */
+    private final BitSet linked = new BitSet();
+    /**
+     * Reader of file contents (selected read path)
+     */
+    private final ContentReader reader;
+    /**
+     * Counters for throughput (LongAdder - many consumer threads update them)
+     */
+    private final LongAdder filesIndexed = new LongAdder(), binarySkipped = new LongAdder(), bytesRead = new LongAdder(),
+            filesUnchanged = new LongAdder();
+    /**
+     * Index of the last run - terms of unchanged files are taken from it, terms of read files recorded (null - none)
+     */
+    private volatile PersistentIndex persistentIndex;
+    /**
+     * Start time of the first indexed file
+     */
+    private volatile long startNanos = 0;
+
+    /**
+     * Constructor - MMAP reader (large files mapped, others through pooled direct buffers)
+     */
+    public ContentIndex() {
+        this(new ContentReader(ContentReader.Mode.MMAP, ContentReader.DEFAULT_MMAP_THRESHOLD));
+    }
+
+    /**
+     * Constructor initializing reader
+     *
+     * @param reader reader of file contents
+     */
+    public ContentIndex(ContentReader reader) {
+        this(reader, new PathArena());
+    }
+
+    /**
+     * Constructor initializing reader and path store
+     *
+     * @param reader reader of file contents
+     * @param paths  store of the paths of indexed files (heap or off-heap)
+     */
+    public ContentIndex(ContentReader reader, PathArena paths) {
+        this.reader = reader;
+        this.paths = paths;
+    }
+
+    /**
+     * setPersistentIndex - enables incremental indexing
+     *
+     * @param persistentIndex index of the last run (null - every file is read)
+     */
+    public void setPersistentIndex(PersistentIndex persistentIndex) {
+        this.persistentIndex = persistentIndex;
+    }
+
+    /**
+     * indexFile - reads file contents block by block and adds its terms to the index
+     *          - a file unchanged since the last run (persistent index) is not read, its recorded terms are added
+     *
+     * @param file file to index
+     * @return ID given to the file, or -1 if it was skipped (binary or not readable)
+     */
+    public int indexFile(File file) {
+        long start = System.nanoTime();
+        if (startNanos == 0) {
+            startNanos = start;
+        }
+        final PersistentIndex index = persistentIndex;
+        String[] recorded = (index == null) ? null : index.cachedTerms(file);
+        if (recorded != null) {
+            filesUnchanged.increment();
+            if (recorded == PersistentIndex.BINARY) {
+                binarySkipped.increment();
+                return -1;
+            }
+            return addTerms(file, Arrays.asList(recorded));
+        }
+        PipelineMetrics.FileIndexedEvent event = new PipelineMetrics.FileIndexedEvent();
+        event.begin();
+        long read = 0;
+        try {
+            Tokenizer tokenizer = new Tokenizer();
+            try {
+                read = reader.read(file, tokenizer);
+                if (read < 0) {
+                    // first block looked binary - only that block was read
+                    bytesRead.add(-read - 1);
+                    binarySkipped.increment();
+                    if (index != null) {
+                        index.indexed(file, null);
+                    }
+                    return -1;
+                }
+                bytesRead.add(read);
+            } catch (IOException | RuntimeException e) {
+                // not readable, removed meanwhile or name not representable as Path
+                return -1;
+            }
+            Set<String> terms = tokenizer.finish();
+            if (index != null) {
+                index.indexed(file, terms);
+            }
+            return addTerms(file, terms);
+        } finally {
+            long bytes = (read < 0) ? -read - 1 : read;
+            PipelineMetrics.get().fileIndexed(System.nanoTime() - start, bytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = file.getPath();
+                event.bytes = bytes;
+                event.binary = read < 0;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * addTerms - gives the file an ID and adds it to the posting list of every term
+     *
+     * @param file  indexed file
+     * @param terms unique terms of the file
+     * @return file ID
+     */
+    int addTerms(File file, Collection<String> terms) {
+        int id;
+        int pathId = paths.idOf(file);
+        synchronized (paths) {
+            id = pathIds.size();
+            pathIds.add(pathId);
+            if (pathId >= idByPath.length) {
+                idByPath = Arrays.copyOf(idByPath, Math.max(idByPath.length * 2, pathId + 1));
+            }
+            if (idByPath[pathId] != 0) {
+                removed.add(idByPath[pathId] - 1);
+            }
+            idByPath[pathId] = id + 1;
+            link(pathId);
+        }
+        for (String term : terms) {
+            postings.computeIfAbsent(term, k -> new PostingList()).add(id);
+        }
+        filesIndexed.increment();
+        return id;
+    }
+
+    /**
+     * removeFile - removes deleted file (or every file below a deleted directory) from lookups
+     *
+     * @param file deleted file or directory
+     */
+    public void removeFile(File file) {
+        synchronized (paths) {
+            int removedId = paths.find(file);
+            if (removedId < 0) {
+                return;
+            }
+            // the file itself, or the files below the directory (entries stay linked, a file indexed again reuses them)
+            PathArena.IdList pending = new PathArena.IdList();
+            pending.add(removedId);
+            for (int i = 0; i < pending.size(); i++) {
+                int pathId = pending.get(i);
+                if (pathId < idByPath.length && idByPath[pathId] != 0) {
+                    removed.add(idByPath[pathId] - 1);
+                    idByPath[pathId] = 0;
+                }
+                PathArena.IdList children = childrenOf.get(pathId);
+                if (children != null) {
+                    pending.addAll(children);
+                }
+            }
+        }
+    }
+
+    /**
+     * link - adds the path to the list of its parent, and the parent to its own parent, up to the first linked one
+     *        (called with the lock of paths)
+     *
+     * @param pathId path ID of an indexed file
+     */
+    private void link(int pathId) {
+        while (!linked.get(pathId)) {
+            linked.set(pathId);
+            int parent = paths.parentOf(pathId);
+            if (parent == PathArena.NO_PARENT) {
+                return;
+            }
+            childrenOf.computeIfAbsent(parent, k -> new PathArena.IdList()).add(pathId);
+            pathId = parent;
+        }
+    }
+
+    /**
+     * isBinary - sniffs block for NUL bytes (text files practically never contain them)
+     *
+     * @param block  first block of the file
+     * @param length num of valid bytes
+     * @return true if file looks binary
+     */
+    static boolean isBinary(byte[] block, int length) {
+        for (int i = 0; i < length; i++) {
+            if (block[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * isBinary - sniffs buffer (between position and limit) for NUL bytes, position is not changed
+     *
+     * @param block first block of the file
+     * @return true if file looks binary
+     */
+    static boolean isBinary(ByteBuffer block) {
+        for (int i = block.position(); i < block.limit(); i++) {
+            if (block.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * lookup - finds files containing the term
+     *
+     * @param term term to find (case insensitive)
+     * @return paths of the files, in ID order
+     */
+    public List<String> lookup(String term) {
+        List<String> result = new ArrayList<>();
+        PostingList list = postings.get(term.toLowerCase());
+        if (list != null) {
+            synchronized (paths) {
+                for (int id : list.toSortedArray()) {
+                    if (!removed.contains(id)) {
+                        result.add(paths.pathOf(pathIds.get(id)));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return memory used by the paths of the indexed files
+     */
+    public String pathSummary() {
+        return paths.summary();
+    }
+
+    /**
+     * @return num of distinct terms
+     */
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * @return num of indexed (text) files
+     */
+    public long filesIndexed() {
+        return filesIndexed.sum();
+    }
+
+    /**
+     * throughput - text summary of the indexing stage
+     *
+     * @return read mode, files indexed, binary files skipped, unchanged files not read, MB read, files/s and MB/s since
+     *         the first file
+     */
+    public String throughput() {
+        double seconds = (startNanos == 0) ? 0 : (System.nanoTime() - startNanos) / 1e9;
+        double mb = bytesRead.sum() / (1024.0 * 1024.0);
+        long files = filesIndexed.sum() + binarySkipped.sum();
+        String unchanged = (persistentIndex == null) ? "" : ", " + filesUnchanged.sum() + " unchanged not read";
+        return String.format("[" + reader.mode() + "] indexed %d files (%d binary skipped%s), %d terms, %.1f MB read in %.2f s -> %.1f files/s, %.1f MB/s",
+                filesIndexed.sum(), binarySkipped.sum(), unchanged, termCount(), mb, seconds,
+                seconds > 0 ? files / seconds : 0.0, seconds > 0 ? mb / seconds : 0.0);
+    }
+
+    /**
+     * PostingList class - growable int array of file IDs
+     */
+    static class PostingList {
+        /**
+         * File IDs
+         */
+        private int[] ids = new int[4];
+        /**
+         * Num of IDs
+         */
+        private int size = 0;
+
+        /**
+         * add - appends file ID (each file adds a term only once)
+         *
+         * @param id file ID
+         */
+        synchronized void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * @return copy of IDs sorted ascending
+         */
+        synchronized int[] toSortedArray() {
+            int[] copy = Arrays.copyOf(ids, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * Tokenizer class - splits streamed bytes into lower case terms
+     *          - ASCII letters / digits and all non ASCII bytes (UTF-8 sequences) are term characters
+     *          - a term split by a buffer boundary is carried over to the next feed
+     */
+    static class Tokenizer {
+        /**
+         * Bytes of the current term
+         */
+        private final byte[] term = new byte[MAX_TERM];
+        /**
+         * Length of the current term, -1 while skipping a term longer than MAX_TERM
+         */
+        private int length = 0;
+        /**
+         * Unique terms of the file
+         */
+        private final Set<String> terms = new HashSet<>();
+
+        /**
+         * feed - tokenizes next block of bytes
+         *
+         * @param bytes  block
+         * @param offset start of valid bytes
+         * @param count  num of valid bytes
+         */
+        void feed(byte[] bytes, int offset, int count) {
+            for (int i = offset; i < offset + count; i++) {
+                accept(bytes[i]);
+            }
+        }
+
+        /**
+         * feed - tokenizes buffer between position and limit (absolute reads - works on direct and mapped buffers
+         *        without copying, position is not changed)
+         *
+         * @param block block of the file
+         */
+        void feed(ByteBuffer block) {
+            for (int i = block.position(); i < block.limit(); i++) {
+                accept(block.get(i));
+            }
+        }
+
+        /**
+         * accept - adds one byte to the current term or ends the term
+         *
+         * @param b next byte
+         */
+        void accept(byte b) {
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            boolean termChar = (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b < 0;
+            if (termChar) {
+                if (length >= 0) {
+                    if (length < MAX_TERM) {
+                        term[length++] = b;
+                    } else {
+                        length = -1;
+                    }
+                }
+            } else {
+                endTerm();
+            }
+        }
+
+        /**
+         * endTerm - adds the current term to the set (if its length is in range) and starts a new one
+         */
+        private void endTerm() {
+            if (length >= MIN_TERM) {
+                terms.add(new String(term, 0, length, StandardCharsets.UTF_8));
+            }
+            length = 0;
+        }
+
+        /**
+         * finish - ends the last term
+         *
+         * @return unique terms of the file
+         */
+        Set<String> finish() {
+            endTerm();
+            return terms;
+        }
+    }
+}
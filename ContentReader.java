@@ -0,0 +1,241 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ContentReader class - reads file contents for ContentIndex and hands them to the Tokenizer block by block
+ *          - STREAM: FileInputStream into a per-thread heap byte[] (original behaviour)
+ *          - POOLED: FileChannel into direct ByteBuffers taken from a shared pool (no copy to the heap) - the pool keeps
+ *                    at most one buffer per concurrent reader, a buffer released to a full pool is dropped
+ *          - MMAP:   files above the threshold are mapped with FileChannel.map region by region,
+ *                    smaller files use the POOLED path
+ *          - no mode ever builds a String (or array) of the whole file, so multi-GB files do not churn the heap
+ */
+public class ContentReader {
+    /**
+     * Mode enum - selects the read path (so the paths can be compared on the same tree)
+     */
+    public enum Mode {
+        STREAM, POOLED, MMAP
+    }
+
+    /**
+     * Size of a pooled / heap buffer
+     */
+    static final int BUFFER_SIZE = ContentIndex.BUFFER_SIZE;
+    /**
+     * Max size of one mapped region (keeps address space use bounded for very large files)
+     */
+    static final long MAP_REGION = 64L * 1024 * 1024;
+    /**
+     * Default size from which files are mapped in MMAP mode
+     */
+    public static final long DEFAULT_MMAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Selected read path
+     */
+    private final Mode mode;
+    /**
+     * Files of this size or bigger are mapped (MMAP mode only)
+     */
+    private final long mmapThreshold;
+    /**
+     * Pool of direct buffers shared by all consumers
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    /**
+     * Num of buffers in the pool (size() of the queue is not constant time) and max num kept
+     */
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maxPooled;
+    /**
+     * Heap buffer per consumer thread (STREAM mode)
+     */
+    private final ThreadLocal<byte[]> heapBuffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    /**
+     * Permits = max num of files open at a time (null - no limit)
+     */
+    private final Semaphore openFiles;
+
+    /**
+     * Constructor initializing mode and threshold
+     *
+     * @param mode          read path
+     * @param mmapThreshold files of this size or bigger are mapped in MMAP mode
+     */
+    public ContentReader(Mode mode, long mmapThreshold) {
+        this(mode, mmapThreshold, null);
+    }
+
+    /**
+     * Constructor initializing mode, threshold and limit of open files
+     *
+     * @param mode          read path
+     * @param mmapThreshold files of this size or bigger are mapped in MMAP mode
+     * @param openFiles     permits = max num of files read at once (null - no limit)
+     */
+    public ContentReader(Mode mode, long mmapThreshold, Semaphore openFiles) {
+        this(mode, mmapThreshold, openFiles, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor initializing mode, threshold, limit of open files and size of the buffer pool
+     *
+     * @param mode          read path
+     * @param mmapThreshold files of this size or bigger are mapped in MMAP mode
+     * @param openFiles     permits = max num of files read at once (null - no limit)
+     * @param maxPooled     max num of direct buffers kept for reuse (num of files read at once)
+     */
+    public ContentReader(Mode mode, long mmapThreshold, Semaphore openFiles, int maxPooled) {
+        this.mode = mode;
+        this.mmapThreshold = mmapThreshold;
+        this.openFiles = openFiles;
+        this.maxPooled = Math.max(1, maxPooled);
+    }
+
+    /**
+     * @return selected read path
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * read - feeds whole file to the tokenizer
+     *
+     * @param file      file to read
+     * @param tokenizer tokenizer of the file
+     * @return num of bytes read, or -(bytes read) - 1 if the first block looked binary (reading stopped there)
+     * @throws IOException if file can not be read
+     */
+    public long read(File file, ContentIndex.Tokenizer tokenizer) throws IOException {
+        if (openFiles == null) {
+            return readFile(file, tokenizer);
+        }
+        // many reader threads (virtual threads) - keep the num of open handles bounded
+        openFiles.acquireUninterruptibly();
+        try {
+            return readFile(file, tokenizer);
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    /**
+     * readFile - opens the file with the selected read path
+     *
+     * @param file      file to read
+     * @param tokenizer tokenizer of the file
+     * @return num of bytes read or negative if binary
+     * @throws IOException if file can not be read
+     */
+    private long readFile(File file, ContentIndex.Tokenizer tokenizer) throws IOException {
+        if (mode == Mode.STREAM) {
+            return readStream(file, tokenizer);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // size of the open channel - no extra stat by path
+            if (mode == Mode.MMAP && channel.size() >= mmapThreshold) {
+                return readMapped(channel, tokenizer);
+            }
+            return readPooled(channel, tokenizer);
+        }
+    }
+
+    /**
+     * readStream - original InputStream path into a heap buffer
+     *
+     * @param file      file to read
+     * @param tokenizer tokenizer of the file
+     * @return num of bytes read or negative if binary
+     * @throws IOException if file can not be read
+     */
+    private long readStream(File file, ContentIndex.Tokenizer tokenizer) throws IOException {
+        byte[] buffer = heapBuffers.get();
+        long total = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                total += n;
+                if (total == n && ContentIndex.isBinary(buffer, n)) {
+                    return -total - 1;
+                }
+                tokenizer.feed(buffer, 0, n);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * readPooled - channel reads into a pooled direct buffer, buffer is returned to the pool afterwards
+     *
+     * @param channel   open channel of the file
+     * @param tokenizer tokenizer of the file
+     * @return num of bytes read or negative if binary
+     * @throws IOException if file can not be read
+     */
+    private long readPooled(FileChannel channel, ContentIndex.Tokenizer tokenizer) throws IOException {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            pooled.decrementAndGet();
+        }
+        try {
+            long total = 0;
+            buffer.clear();
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                if (total == 0 && ContentIndex.isBinary(buffer)) {
+                    return -buffer.remaining() - 1;
+                }
+                total += buffer.remaining();
+                tokenizer.feed(buffer);
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            buffer.clear();
+            // more readers than usual at once (e.g. a burst of virtual threads) - the extra buffer is left to the GC
+            if (pooled.incrementAndGet() <= maxPooled) {
+                pool.offer(buffer);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * readMapped - maps the file region by region and tokenizes straight from the mapping
+     *
+     * @param channel   open channel of the file
+     * @param tokenizer tokenizer of the file
+     * @return num of bytes read or negative if binary
+     * @throws IOException if file can not be mapped
+     */
+    private long readMapped(FileChannel channel, ContentIndex.Tokenizer tokenizer) throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += MAP_REGION) {
+            long length = Math.min(MAP_REGION, size - position);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position == 0) {
+                ByteBuffer head = region.duplicate();
+                head.limit((int) Math.min(BUFFER_SIZE, length));
+                if (ContentIndex.isBinary(head)) {
+                    return -head.remaining() - 1;
+                }
+            }
+            tokenizer.feed(region);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,454 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * CrawlCheckpoint class - periodic snapshot of a running crawl, so a stopped run resumes where it stopped
+ *          - frontier:  directories discovered but not listed yet (ParallelCrawler)
+ *          - pending:   files handed to the queue but not processed by a consumer yet (tracked per chunk)
+ *          - completed: directories listed (kept out of the resumed crawl, e.g. reached again through a symlink)
+ *          - results:   num of files processed and files found (Task2)
+ *          - a directory leaves the frontier only after its files were handed over, a chunk leaves pending only
+ *            together with its results - the snapshot is taken with all of them paused (write lock), so every file
+ *            is in the frontier, pending or processed
+ *          - files processed while their directory is still being listed are kept (partial), so listing that
+ *            directory again on resume does not hand them over a second time
+ *          - file keys of the listed directories are not kept: a hard link / file symlink reached under another name
+ *            after a resume is counted again (the VisitedIndex of one run catches it)
+ *          - written to a temp file and renamed over the checkpoint (a crash while writing keeps the last one),
+ *            every interval, when the crawl is cancelled and when the JVM is shut down (SIGTERM)
+ */
+public class CrawlCheckpoint {
+    /**
+     * File format
+     */
+    private static final int MAGIC = 0x43524B50, VERSION = 1;
+
+    /**
+     * Thread writing periodic checkpoints
+     */
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Checkpoint file
+     */
+    private final File file;
+    /**
+     * What was crawled (task, roots, search term) - a checkpoint of another crawl is not resumed
+     */
+    private final String key;
+    /**
+     * Read lock - updates (many threads at once), write lock - snapshot
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Directories discovered but not listed yet
+     */
+    private final Set<File> frontier = ConcurrentHashMap.newKeySet();
+    /**
+     * Chunks handed to the queue and not processed yet (arrays compare by identity)
+     */
+    private final Set<File[]> chunks = ConcurrentHashMap.newKeySet();
+    /**
+     * Files processed whose directory was still in the frontier (the ones of listed directories are dropped by write)
+     */
+    private final Set<File> partial = ConcurrentHashMap.newKeySet();
+    /**
+     * Directories listed (append only, guarded by completedPaths)
+     */
+    private final PathArena completedPaths = new PathArena();
+    private final PathArena.IdList completed = new PathArena.IdList();
+    /**
+     * Files found (append only, guarded by resultPaths)
+     */
+    private final PathArena resultPaths = new PathArena();
+    private final PathArena.IdList results = new PathArena.IdList();
+    /**
+     * Num of files processed
+     */
+    private final LongAdder processed = new LongAdder();
+    /**
+     * Periodic writing, null until start
+     */
+    private ScheduledFuture<?> writing;
+    /**
+     * Writes a last checkpoint when the JVM is shut down while crawling
+     */
+    private Thread shutdownHook;
+
+    /**
+     * Constructor initializing file and key
+     *
+     * @param file checkpoint file
+     * @param key  what is crawled (task, roots, search term)
+     */
+    public CrawlCheckpoint(File file, String key) {
+        this.file = file;
+        this.key = key;
+    }
+
+    /**
+     * load - reads the checkpoint of the same crawl and takes over its completed directories, results and count
+     *
+     * @return state to resume from, null if there is no checkpoint of this crawl
+     * @throws IOException if the file can not be read
+     */
+    public State load() throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            if (!in.readUTF().equals(key)) {
+                return null;
+            }
+            State state = new State(in.readLong(), readFiles(in), readFiles(in), readFiles(in), readFiles(in), readFiles(in));
+            processed.add(state.processed);
+            for (File directory : state.completed) {
+                completed.add(completedPaths.idOf(directory));
+            }
+            for (File found : state.results) {
+                results.add(resultPaths.idOf(found));
+            }
+            return state;
+        }
+    }
+
+    /**
+     * discovered - directory found, it will be listed
+     *
+     * @param directory directory
+     */
+    public void discovered(File directory) {
+        lock.readLock().lock();
+        try {
+            frontier.add(directory);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * listed - directory listed and its files handed over (or skipped: unreadable, entered before)
+     *
+     * @param directory directory
+     */
+    public void listed(File directory) {
+        lock.readLock().lock();
+        try {
+            if (frontier.remove(directory)) {
+                int id = completedPaths.idOf(directory);
+                synchronized (completedPaths) {
+                    completed.add(id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * handedOver - chunk of files about to be put into the queue
+     *
+     * @param chunk chunk
+     */
+    public void handedOver(File[] chunk) {
+        lock.readLock().lock();
+        try {
+            chunks.add(chunk);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * processed - consumer is done with a chunk
+     *
+     * @param chunk chunk taken from the queue
+     * @param found files of the chunk found (Task2), null - none kept
+     */
+    public void processed(File[] chunk, List<File> found) {
+        lock.readLock().lock();
+        try {
+            if (chunks.remove(chunk)) {
+                processed.add(chunk.length);
+                for (File f : chunk) {
+                    if (frontier.contains(f.getParentFile())) {
+                        partial.add(f);
+                    }
+                }
+            }
+            if (found != null && !found.isEmpty()) {
+                for (File foundFile : found) {
+                    int id = resultPaths.idOf(foundFile);
+                    synchronized (resultPaths) {
+                        results.add(id);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * start - writes the checkpoint every interval and when the JVM is shut down, until stop()
+     *
+     * @param intervalSeconds seconds between checkpoints
+     */
+    public synchronized void start(long intervalSeconds) {
+        writing = writer.scheduleWithFixedDelay(this::writeQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        shutdownHook = new Thread(this::writeQuietly, "checkpoint-on-shutdown");
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM already shutting down
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * stop - stops periodic writing
+     */
+    public synchronized void stop() {
+        if (writing != null) {
+            writing.cancel(false);
+        }
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM shutting down - the hook runs
+            }
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * delete - removes the checkpoint once the crawl is complete
+     */
+    public void delete() {
+        file.delete();
+    }
+
+    /**
+     * finish - stops periodic writing: a cancelled crawl writes its last state, a complete one removes the checkpoint
+     *
+     * @param cancelled true if the crawl was cancelled
+     */
+    public void finish(boolean cancelled) {
+        stop();
+        if (!cancelled) {
+            delete();
+            return;
+        }
+        try {
+            write();
+            System.out.println("Checkpoint written: " + summary());
+        } catch (IOException e) {
+            System.out.println("Checkpoint could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * write - takes a snapshot and writes it atomically (temp file renamed over the checkpoint)
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void write() throws IOException {
+        List<File> frontierCopy, pendingCopy = new ArrayList<>(), partialCopy = new ArrayList<>();
+        int completedCount, resultCount;
+        long processedCount;
+        lock.writeLock().lock();
+        try {
+            frontierCopy = new ArrayList<>(frontier);
+            partial.removeIf(f -> !frontier.contains(f.getParentFile()));
+            partialCopy.addAll(partial);
+            for (File[] chunk : chunks) {
+                Collections.addAll(pendingCopy, chunk);
+            }
+            processedCount = processed.sum();
+            synchronized (completedPaths) {
+                completedCount = completed.size();
+            }
+            synchronized (resultPaths) {
+                resultCount = results.size();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // completed directories and results are append only - the first entries are written without holding the lock
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeLong(processedCount);
+            writeFiles(out, frontierCopy);
+            writeFiles(out, pendingCopy);
+            writeFiles(out, partialCopy);
+            writePaths(out, completedPaths, completed, completedCount);
+            writePaths(out, resultPaths, results, resultCount);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * summary - sizes of the last state
+     *
+     * @return num of directories in the frontier, files pending, directories completed and files processed
+     */
+    public String summary() {
+        int completedCount;
+        synchronized (completedPaths) {
+            completedCount = completed.size();
+        }
+        return String.format("%d directories to list, %d chunks pending, %d directories completed, %d files processed",
+                frontier.size(), chunks.size(), completedCount, processed.sum());
+    }
+
+    /**
+     * writeQuietly - write() for the timer and the shutdown hook (failures are printed)
+     */
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Checkpoint could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * writePaths - writes the first count entries of an append only list
+     *
+     * @param out   output
+     * @param paths path store
+     * @param ids   IDs in the store
+     * @param count num of entries to write
+     * @throws IOException if writing fails
+     */
+    private static void writePaths(DataOutputStream out, PathArena paths, PathArena.IdList ids, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            int id;
+            synchronized (paths) {
+                id = ids.get(i);
+            }
+            out.writeUTF(paths.pathOf(id));
+        }
+    }
+
+    /**
+     * writeFiles - writes a list of files
+     *
+     * @param out   output
+     * @param files files
+     * @throws IOException if writing fails
+     */
+    private static void writeFiles(DataOutputStream out, List<File> files) throws IOException {
+        out.writeInt(files.size());
+        for (File f : files) {
+            out.writeUTF(f.getPath());
+        }
+    }
+
+    /**
+     * readFiles - reads a list written by writeFiles / writePaths
+     *
+     * @param in input
+     * @return files
+     * @throws IOException if reading fails
+     */
+    private static List<File> readFiles(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<File> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new File(in.readUTF()));
+        }
+        return files;
+    }
+
+    /**
+     * State class - what a checkpoint holds
+     */
+    public static class State {
+        /**
+         * Num of files processed before the stop
+         */
+        public final long processed;
+        /**
+         * Directories to list, files to process again, files of the directories to list already processed,
+         * directories already listed, files found
+         */
+        public final List<File> frontier, pending, partial, completed, results;
+
+        State(long processed, List<File> frontier, List<File> pending, List<File> partial, List<File> completed, List<File> results) {
+            this.processed = processed;
+            this.frontier = frontier;
+            this.pending = pending;
+            this.partial = partial;
+            this.completed = completed;
+            this.results = results;
+        }
+
+        /**
+         * summary - sizes of the state
+         *
+         * @return num of directories to list, files pending, directories completed, files processed and found
+         */
+        public String summary() {
+            return String.format("%d directories to list, %d files pending, %d directories completed, %d files processed, %d found",
+                    frontier.size(), pending.size(), completed.size(), processed, results.size());
+        }
+
+        /**
+         * takeBelow - removes the entries inside a root from a list (an entry goes to the first root containing it)
+         *
+         * @param files list, the entries returned are removed from it
+         * @param root  root of the crawl
+         * @return entries equal to or below root
+         */
+        public static List<File> takeBelow(List<File> files, File root) {
+            String prefix = root.getPath().endsWith(File.separator) ? root.getPath() : root.getPath() + File.separator;
+            List<File> taken = new ArrayList<>();
+            List<File> rest = new ArrayList<>(files.size());
+            for (File f : files) {
+                if (f.equals(root) || f.getPath().startsWith(prefix)) {
+                    taken.add(f);
+                } else {
+                    rest.add(f);
+                }
+            }
+            files.clear();
+            files.addAll(rest);
+            return taken;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Phaser;
+import java.util.function.BiConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * CrawlCompletion class - completion protocol of one crawl (replaces poison object files)
+ *          - every producer (FileCrawler) and consumer (Indexer) is a registered party of a Phaser
+ *          - last producer done  -> the queue is closed (consumers drain what is left, then take() returns null)
+ *          - last consumer done  -> future completes with the result (e.g. total num of files)
+ *          - cancelling the future cancels the queue: producers stop crawling, consumers stop at their next take
+ *          - works for any num of producers / consumers, nothing depends on counting pills - consumers can be added
+ *            while the crawl runs (addConsumer) and can stop early, as long as one is left to drain the queue
+ */
+public class CrawlCompletion {
+    /**
+     * Queue between producers and consumers
+     */
+    private final FileBatchQueue queue;
+    /**
+     * Parties = producers still running, closes the queue when the last one arrives
+     */
+    private final Phaser producers;
+    /**
+     * Parties = consumers still running, completes the future when the last one arrives
+     */
+    private final Phaser consumers;
+    /**
+     * Result of the crawl
+     */
+    private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+    /**
+     * Constructor registers all producers and consumers up front (none can finish before the others are counted)
+     *
+     * @param queue      queue between producers and consumers
+     * @param nProducers num of producers that will call producerDone()
+     * @param nConsumers num of consumers that will call consumerDone()
+     * @param result     computes the result once all consumers are done
+     */
+    public CrawlCompletion(final FileBatchQueue queue, int nProducers, int nConsumers, final IntSupplier result) {
+        this.queue = queue;
+        this.producers = new Phaser(nProducers) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                queue.close();
+                return true;
+            }
+        };
+        this.consumers = new Phaser(nConsumers) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                // all consumers gone before the producers (a consumer failed) - producers must not wait for space forever
+                if (!producers.isTerminated()) {
+                    queue.cancel();
+                }
+                future.complete(result.getAsInt());
+                return true;
+            }
+        };
+        future.whenComplete((value, e) -> {
+            if (future.isCancelled()) {
+                queue.cancel();
+            }
+        });
+        if (nProducers == 0) {
+            queue.close();
+        }
+        if (nConsumers == 0) {
+            future.complete(result.getAsInt());
+        }
+    }
+
+    /**
+     * producerDone - called once by every producer when it has put all its files (or stopped)
+     */
+    public void producerDone() {
+        producers.arriveAndDeregister();
+    }
+
+    /**
+     * addConsumer - registers one more consumer while the crawl runs (AdaptiveScheduler)
+     *
+     * @return true if registered - the caller must start a consumer that calls consumerDone(), false if all consumers
+     *         are already done
+     */
+    public boolean addConsumer() {
+        return consumers.register() >= 0;
+    }
+
+    /**
+     * consumerDone - called once by every consumer after take() returned null (or when it stops)
+     */
+    public void consumerDone() {
+        consumers.arriveAndDeregister();
+    }
+
+    /**
+     * @return true if the crawl was cancelled (producers stop crawling)
+     */
+    public boolean isCancelled() {
+        return queue.isCancelled();
+    }
+
+    /**
+     * @return future completed with the result when all consumers are done (cancel it to stop the crawl)
+     */
+    public CompletableFuture<Integer> future() {
+        return future;
+    }
+
+    /**
+     * whenDone - runs action (e.g. printing RESULTS) once the crawl is done or cancelled
+     *
+     * @param action called with the result, or with the exception if cancelled
+     * @return future completed after the action ran - cancelling it cancels the crawl too
+     */
+    public CompletableFuture<Integer> whenDone(final BiConsumer<Integer, Throwable> action) {
+        // not future.whenComplete(action) - a stage cancelled first never runs its action, so cancelling it would skip RESULTS
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            try {
+                action.accept(value, e);
+            } catch (RuntimeException | Error failure) {
+                done.completeExceptionally(failure);
+                throw failure;
+            }
+            if (e == null) {
+                done.complete(value);
+            } else {
+                done.completeExceptionally(e);
+            }
+        });
+        done.whenComplete((value, e) -> {
+            if (done.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return done;
+    }
+}
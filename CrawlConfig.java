@@ -0,0 +1,204 @@
+/**
+ * CrawlConfig class - settings passed to startIndexing of Task1 / Task2
+ *          - every field has a default, so new CrawlConfig() behaves like the plain startIndexing call
+ */
+public class CrawlConfig {
+    /**
+     * Num of threads listing directories (ForkJoinPool parallelism). 0 - each root is crawled recursively on its own thread
+     */
+    public int crawlerParallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * Backend listing the directories (LEGACY java.io.File or NIO DirectoryStream)
+     */
+    public DirectoryLister.Backend backend = DirectoryLister.Backend.NIO;
+    /**
+     * Num of consumer threads (Task1 Indexer threads, Task2 pool threads in PLATFORM mode)
+     */
+    public int consumers = Runtime.getRuntime().availableProcessors();
+    /**
+     * BOUND for the queue - max num of chunks waiting for consumers
+     */
+    public int queueCapacity = 10;
+    /**
+     * Max num of files handed over in one chunk (1 - one file per put/take like the original LinkedBlockingQueue)
+     */
+    public int batchSize = 64;
+    /**
+     * Read path of the content indexing stage (STREAM, POOLED or MMAP)
+     */
+    public ContentReader.Mode readMode = ContentReader.Mode.MMAP;
+    /**
+     * Files of this size (bytes) or bigger are memory mapped in MMAP mode
+     */
+    public long mmapThreshold = ContentReader.DEFAULT_MMAP_THRESHOLD;
+    /**
+     * Directory of the persistent index for incremental re-crawls (Task1). null - every run is a full crawl
+     */
+    public java.io.File indexDirectory = null;
+    /**
+     * Incremental re-crawl: do not list directories whose mtime did not change (their files are queued as unchanged, without a stat)
+     */
+    public boolean trustDirectoryMtime = false;
+    /**
+     * Live mode (Task1): after the crawl, keep watching the tree and queue created / modified / deleted files
+     */
+    public boolean watch = false;
+    /**
+     * Max num of directories registered with the WatchService in live mode
+     */
+    public int maxWatchedDirectories = 8192;
+    /**
+     * Threads of the blocking tasks: PLATFORM (fixed pools) or VIRTUAL (one virtual thread per directory / file / Task2 Indexer)
+     */
+    public ExecutionMode execution = ExecutionMode.PLATFORM;
+    /**
+     * Max num of directories listed at once (0 - no limit)
+     */
+    public int maxOpenDirectories = 64;
+    /**
+     * Max num of files read at once by the content index (0 - no limit)
+     */
+    public int maxOpenFiles = 256;
+    /**
+     * Seconds between metrics snapshots printed while crawling (0 - no snapshots, metrics stay available over JMX)
+     */
+    public int metricsInterval = 0;
+    /**
+     * File the Task2 results are written to (null - standard output)
+     */
+    public java.io.File resultFile = null;
+    /**
+     * Line format of the Task2 results (TEXT, JSONL or CSV)
+     */
+    public ResultSink.Format resultFormat = ResultSink.Format.TEXT;
+    /**
+     * Aggregates of the consumed files (top-K largest / oldest, size by extension and top-level directory, size histogram):
+     * num of largest / oldest files listed (0 - no aggregates)
+     */
+    public int aggregateTopK = 0;
+    /**
+     * Max num of extensions / top-level directories listed in the aggregates report
+     */
+    public int aggregateGroups = 20;
+    /**
+     * Duplicate-content finder mode (Task1): files are grouped by size while crawling instead of being indexed,
+     * then by a hash of their first / last KB and by a full SHA-256 (each stage only on the survivors of the previous one)
+     */
+    public boolean findDuplicates = false;
+    /**
+     * Files smaller than this are not checked for duplicates
+     */
+    public long duplicateMinSize = 1;
+    /**
+     * Max num of duplicate groups listed in the report (most reclaimable bytes first)
+     */
+    public int duplicateGroups = 50;
+    /**
+     * Keep the names of the compact path store (indexed files, duplicate candidates, Task2 results) in direct buffers
+     * outside the Java heap
+     */
+    public boolean offHeapPaths = false;
+    /**
+     * Adaptive sizing (AdaptiveScheduler): consumers, crawler permits (directories listed at once, up to maxOpenDirectories)
+     * and queue capacity follow queue occupancy and consumer utilization while the crawl runs - consumers and queueCapacity
+     * are the starting values
+     */
+    public boolean adaptive = false;
+    /**
+     * Millis between samples of the adaptive scheduler
+     */
+    public int adaptiveInterval = 500;
+    /**
+     * Limits of the adaptive scheduler: num of consumers
+     */
+    public int minConsumers = 1, maxConsumers = 4 * Runtime.getRuntime().availableProcessors();
+    /**
+     * Limits of the adaptive scheduler: min num of directories listed at once (max is maxOpenDirectories)
+     */
+    public int minCrawlers = 1;
+    /**
+     * Limits of the adaptive scheduler: queue capacity in chunks
+     */
+    public int minQueueCapacity = 2, maxQueueCapacity = 1000;
+    /**
+     * Checkpoint file of the traversal (frontier, pending files, listed directories, results) - a run stopped (cancelled,
+     * SIGTERM, crash) resumes from it instead of listing everything again, it is deleted once the crawl completes.
+     * null - no checkpoints
+     */
+    public java.io.File checkpointFile = null;
+    /**
+     * Seconds between checkpoints
+     */
+    public int checkpointInterval = 60;
+    /**
+     * Exclude rules in .gitignore syntax (e.g. ".git/", "node_modules/", "build/", "*.class") - an excluded directory is
+     * pruned when it is found, nothing below it is listed
+     */
+    public java.util.List<String> exclude = new java.util.ArrayList<>();
+    /**
+     * Rule file in .gitignore syntax applied below every root (null - none)
+     */
+    public java.io.File excludeFile = null;
+    /**
+     * Name of the rule files read in every listed directory, e.g. ".gitignore" (null - none read)
+     */
+    public String ignoreFileName = null;
+    /**
+     * Include globs - only files matching one of them are crawled (empty - all files)
+     */
+    public java.util.List<String> include = new java.util.ArrayList<>();
+    /**
+     * Max depth of files below a root (files of a root have depth 1, deeper directories are not listed), 0 - no limit
+     */
+    public int maxDepth = 0;
+    /**
+     * File size limits in bytes, 0 - no limit
+     */
+    public long minFileSize = 0, maxFileSize = 0;
+    /**
+     * File mtime limits in epoch millis (files modified after / before), 0 - no limit
+     */
+    public long modifiedAfter = 0, modifiedBefore = 0;
+    /**
+     * Task2: every crawled file name is kept in a NameIndex (trigram index), so later searches are answered without
+     * crawling again (checkpoints are not used - a resumed crawl would miss the files listed before)
+     */
+    public boolean nameIndex = false;
+    /**
+     * Task2: num of worker processes the search is split across (ShardCoordinator), 0 - search in this process.
+     * Checkpoints and the name index are not used when sharding
+     */
+    public int shardWorkers = 0;
+    /**
+     * Command starting a worker process (stdin / stdout carry the ShardWorker protocol), e.g. ["ssh", "host", "java",
+     * "-cp", "crawler.jar", "ShardWorker"] - empty: a local JVM with the class path of this one
+     */
+    public java.util.List<String> shardWorkerCommand = new java.util.ArrayList<>();
+    /**
+     * Max time a worker may send nothing while crawling a shard (it sends a heartbeat every quarter of it), then it is
+     * killed and the shard retried on a new worker
+     */
+    public long shardWorkerTimeoutMillis = 60_000;
+    /**
+     * Root the path filter rules and max depth are anchored at, when only a directory below it is crawled (shard of
+     * a worker), null - the crawled directory
+     */
+    public java.io.File filterRoot = null;
+    /**
+     * Sink receiving the found files instead of the result output (e.g. results streamed to the coordinator), null - resultFile
+     */
+    public ResultSink resultSink = null;
+    /**
+     * Directory listing cache: max num of entries kept (0 - no cache). A directory with the same mtime is not listed
+     * again while its listing is younger than listingCacheTtl
+     */
+    public int listingCacheSize = 0;
+    /**
+     * Seconds a cached listing is used (bounds how old the cached size / mtime of its files can be)
+     */
+    public int listingCacheTtl = 600;
+    /**
+     * File the listing cache is spilled to at the end of a crawl and loaded from by the next process (null - memory only)
+     */
+    public java.io.File listingCacheFile = null;
+}
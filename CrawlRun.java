@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CrawlRun class - state of one startIndexing run, handed to its crawlers and consumers through their constructors
+ *          - nothing of a run is kept in static fields, so two runs in one JVM (overlapping or one after the other, e.g.
+ *            the JMH benchmarks or a ShardWorker crawling shard after shard) do not see each other
+ *          - filter, checkpoint and persistent index are set by startIndexing before the first crawler or consumer
+ *            starts (Thread.start / submit publishes them), only the scheduler is set while the run is going
+ */
+public class CrawlRun {
+    /**
+     * Settings of the run
+     */
+    final CrawlConfig config;
+    /**
+     * Files and directories already queued / entered - shared by all crawlers of the run
+     */
+    final VisitedIndex visitedIndex;
+    /**
+     * Num of files counted by the consumers (Task1: files taken, Task2: files found)
+     */
+    final AtomicInteger counter = new AtomicInteger();
+    /**
+     * Num of producers that crawled their root completely (a cancelled run keeps index records it did not reach)
+     */
+    final AtomicInteger rootsCrawled = new AtomicInteger();
+    /**
+     * Filter of the crawl - excluded directories are pruned while listing
+     */
+    PathFilter pathFilter = PathFilter.NONE;
+    /**
+     * Checkpoint of the traversal (null - no checkpoints)
+     */
+    CrawlCheckpoint checkpoint;
+    /**
+     * Index of the last crawl - unchanged files are queued but not read again (null - full crawl)
+     */
+    PersistentIndex persistentIndex;
+    /**
+     * Max num of watched directories in live mode (0 - no live mode)
+     */
+    int maxWatchedDirectories;
+    /**
+     * Adaptive scheduler of the run - asked between batches whether a consumer should retire, null - fixed consumers
+     */
+    volatile AdaptiveScheduler scheduler;
+
+    /**
+     * Constructor initializing the settings, files are keyed by their file key
+     *
+     * @param config settings of the run
+     */
+    public CrawlRun(CrawlConfig config) {
+        this(config, false);
+    }
+
+    /**
+     * Constructor initializing the settings and how the visited index keys files
+     *
+     * @param config    settings of the run
+     * @param fileNames true - files are keyed by (file key, name), so every name of a hard link is crawled (name search)
+     */
+    public CrawlRun(CrawlConfig config, boolean fileNames) {
+        this.config = config;
+        this.visitedIndex = new VisitedIndex(fileNames);
+    }
+
+    /**
+     * shouldRetire - checks between batches if the adaptive scheduler has too many consumers
+     *
+     * @return true if the calling consumer should stop
+     */
+    boolean shouldRetire() {
+        AdaptiveScheduler current = scheduler;
+        return current != null && current.shouldRetire();
+    }
+}
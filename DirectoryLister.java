@@ -0,0 +1,211 @@
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Semaphore;
+
+/**
+ * DirectoryLister interface - crawler backend listing one directory at a time
+ *          - LEGACY: File.listFiles(FileFilter) - builds a File[] per directory and calls isDirectory() on each entry
+ *          - NIO:    DirectoryStream - streams entries and reads BasicFileAttributes once per entry
+ *                    (attributes are handed to the visitor, so VisitedIndex and others do not stat the file again)
+ */
+public interface DirectoryLister {
+
+    /**
+     * list - calls visitor once for every entry of the directory accepted by the filter (directories are always accepted)
+     *
+     * @param directory  directory to list
+     * @param fileFilter filter to accept file's pathname
+     * @param visitor    called for each entry
+     * @throws IOException          if directory can not be read
+     * @throws InterruptedException if visitor was interrupted
+     */
+    void list(File directory, FileFilter fileFilter, EntryVisitor visitor) throws IOException, InterruptedException;
+
+    /**
+     * EntryVisitor interface - receives entries from the lister
+     */
+    interface EntryVisitor {
+        /**
+         * visit - called once per entry
+         *
+         * @param entry       entry of the listed directory
+         * @param attrs       attributes of the entry (following symlinks) or null if the backend does not read them
+         * @param isDirectory true if entry is a directory
+         * @throws InterruptedException if thread interrupted while handing the entry over
+         */
+        void visit(File entry, BasicFileAttributes attrs, boolean isDirectory) throws InterruptedException;
+    }
+
+    /**
+     * Backend enum - lets callers choose the lister
+     */
+    enum Backend {
+        LEGACY, NIO;
+
+        /**
+         * @return lister for this backend
+         */
+        public DirectoryLister create() {
+            return (this == LEGACY) ? new LegacyLister() : new NioLister();
+        }
+    }
+
+    /**
+     * limited - wraps lister so that at most as many directories as the semaphore has permits are open at a time
+     *          (a thread per directory task could otherwise run out of file handles)
+     *
+     * @param lister          lister to wrap
+     * @param openDirectories permits = max num of directories listed at once
+     * @return limited lister
+     */
+    static DirectoryLister limited(final DirectoryLister lister, final Semaphore openDirectories) {
+        return new DirectoryLister() {
+            public void list(File directory, FileFilter fileFilter, EntryVisitor visitor) throws IOException, InterruptedException {
+                openDirectories.acquire();
+                try {
+                    lister.list(directory, fileFilter, visitor);
+                } finally {
+                    openDirectories.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * measured - wraps lister so that every listing is counted and timed in PipelineMetrics (and recorded as JFR event)
+     *
+     * @param lister lister to wrap
+     * @return measured lister
+     */
+    static DirectoryLister measured(final DirectoryLister lister) {
+        return new DirectoryLister() {
+            public void list(File directory, FileFilter fileFilter, final EntryVisitor visitor) throws IOException, InterruptedException {
+                PipelineMetrics.DirectoryListedEvent event = new PipelineMetrics.DirectoryListedEvent();
+                event.begin();
+                long start = System.nanoTime();
+                final int[] files = {0};
+                try {
+                    lister.list(directory, fileFilter, new EntryVisitor() {
+                        public void visit(File entry, BasicFileAttributes attrs, boolean isDirectory) throws InterruptedException {
+                            if (!isDirectory) {
+                                files[0]++;
+                            }
+                            visitor.visit(entry, attrs, isDirectory);
+                        }
+                    });
+                } finally {
+                    PipelineMetrics.get().directoryListed(System.nanoTime() - start, files[0]);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.directory = directory.getPath();
+                        event.files = files[0];
+                        event.commit();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * cached - wraps lister so that a directory whose mtime did not change since it was listed is served from the
+     *          listing cache (one stat of the directory instead of readdir + a stat per entry)
+     *          - a miss lists all entries (the filter is applied afterwards, so the cached listing serves any filter)
+     *          - only complete listings are cached (not when the lister failed or the visitor was interrupted)
+     *          - cached size and mtime may be up to the TTL old, a crawl comparing them is handed cached entries without
+     *            attributes (read again by the visitor)
+     *
+     * @param lister          lister to wrap
+     * @param cache           listing cache
+     * @param freshAttributes true if the crawl compares size / mtime of entries (persistent index, size / mtime limits)
+     * @return cached lister
+     */
+    static DirectoryLister cached(final DirectoryLister lister, final ListingCache cache, final boolean freshAttributes) {
+        return new DirectoryLister() {
+            public void list(File directory, final FileFilter fileFilter, final EntryVisitor visitor) throws IOException, InterruptedException {
+                long mtime;
+                try {
+                    mtime = Files.getLastModifiedTime(directory.toPath()).toMillis();
+                } catch (InvalidPathException e) {
+                    throw new IOException("Can not list " + directory, e);
+                }
+                ListingCache.Listing listing = cache.get(directory, mtime);
+                if (listing != null) {
+                    listing.visit(directory, fileFilter, visitor, !freshAttributes);
+                    return;
+                }
+                long listedAt = System.currentTimeMillis();
+                final ListingCache.Builder builder = new ListingCache.Builder(64);
+                lister.list(directory, new FileFilter() {
+                    public boolean accept(File file) {
+                        return true;
+                    }
+                }, new EntryVisitor() {
+                    public void visit(File entry, BasicFileAttributes attrs, boolean isDirectory) throws InterruptedException {
+                        builder.add(entry.getName(), attrs, isDirectory);
+                        if (isDirectory || fileFilter.accept(entry)) {
+                            visitor.visit(entry, attrs, isDirectory);
+                        }
+                    }
+                });
+                cache.put(directory, builder.build(mtime, listedAt));
+            }
+        };
+    }
+
+    /**
+     * LegacyLister class - original java.io.File based listing
+     */
+    class LegacyLister implements DirectoryLister {
+        public void list(File directory, final FileFilter fileFilter, EntryVisitor visitor) throws IOException, InterruptedException {
+            File[] entries = directory.listFiles(new FileFilter() {
+                public boolean accept(File f) {
+                    return f.isDirectory() || fileFilter.accept(f);
+                }
+            });
+            if (entries == null) {
+                throw new IOException("Can not list " + directory);
+            }
+            for (File entry : entries) {
+                visitor.visit(entry, null, entry.isDirectory());
+            }
+        }
+    }
+
+    /**
+     * NioLister class - DirectoryStream based listing with one attribute read per entry
+     */
+    class NioLister implements DirectoryLister {
+        public void list(File directory, FileFilter fileFilter, EntryVisitor visitor) throws IOException, InterruptedException {
+            Path dir;
+            try {
+                dir = directory.toPath();
+            } catch (InvalidPathException e) {
+                // name not representable in the platform encoding
+                throw new IOException("Can not list " + directory, e);
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // broken symlink or entry removed while listing - skip it
+                        continue;
+                    }
+                    File entry = path.toFile();
+                    if (attrs.isDirectory()) {
+                        visitor.visit(entry, attrs, true);
+                    } else if (fileFilter.accept(entry)) {
+                        visitor.visit(entry, attrs, false);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DirectoryWatcher class - live mode after the initial crawl, keeps the index current with WatchService
+ *          - every directory of the tree is registered for create / modify / delete events
+ *          - created and modified files are put into the same FileBatchQueue the crawler used,
+ *            deleted files are put there too as DeletedFile (the Indexer removes them, they are not counted)
+ *          - a new directory is registered and its files are queued (they may be created before registration)
+ *          - events go through the PathFilter of the crawl - excluded directories are not watched, rejected files
+ *            are not queued
+ *          - OVERFLOW (events lost) re-scans only the subtree of the directory that overflowed
+ *          - num of watch keys is capped - deeper directories are not watched once the cap is reached,
+ *            keys of deleted directories are dropped
+ */
+public class DirectoryWatcher {
+    /**
+     * Queue shared with the Indexer (consumer) threads
+     */
+    private final FileBatchQueue queue;
+    /**
+     * Max num of registered directories
+     */
+    private final int maxWatchKeys;
+    /**
+     * Watch service of the default file system
+     */
+    private final WatchService watchService;
+    /**
+     * Filter of the crawl
+     */
+    private final PathFilter pathFilter;
+    /**
+     * Watch key -> watched directory
+     */
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    /**
+     * Watched directory -> its filter scope (O(1) check if a directory is already watched)
+     */
+    private final Map<Path, PathFilter.Scope> watched = new HashMap<>();
+    /**
+     * True once the cap was reached (message is printed only once)
+     */
+    private boolean capReported = false;
+
+    /**
+     * DeletedFile class - a file reported deleted by the watcher (removed from the index, not counted as a file)
+     */
+    public static class DeletedFile extends File {
+        /**
+         * Serialization version (File is Serializable)
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor initializing the path
+         *
+         * @param path path of the deleted file or directory
+         */
+        public DeletedFile(String path) {
+            super(path);
+        }
+    }
+
+    /**
+     * Constructor initializing queue, cap, filter and watch service
+     *
+     * @param queue        queue shared with consumers
+     * @param maxWatchKeys max num of watched directories
+     * @param pathFilter   filter of the crawl (PathFilter.NONE - everything is watched)
+     * @throws IOException if watch service can not be created
+     */
+    public DirectoryWatcher(FileBatchQueue queue, int maxWatchKeys, PathFilter pathFilter) throws IOException {
+        this.queue = queue;
+        this.maxWatchKeys = maxWatchKeys;
+        this.pathFilter = pathFilter;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * registerTree - registers root and all directories below it (up to the cap)
+     *
+     * @param root root directory
+     */
+    public void registerTree(File root) {
+        try {
+            walk(root.toPath(), null);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("W: Can not watch " + root + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return num of watched directories
+     */
+    public int watchedDirectories() {
+        return keys.size();
+    }
+
+    /**
+     * watch - processes events until the thread is interrupted or close() is called
+     *
+     * @throws InterruptedException if thread interrupted while waiting for events
+     */
+    public void watch() throws InterruptedException {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Path dir = keys.get(key);
+                if (dir == null) {
+                    key.cancel();
+                    continue;
+                }
+                FileBatchQueue.Batch batch = queue.newBatch();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handle(dir, event, batch);
+                }
+                batch.flush();
+                // directory deleted or no longer accessible - free its key
+                if (!key.reset()) {
+                    watched.remove(keys.remove(key));
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() called - stop watching
+        }
+    }
+
+    /**
+     * close - stops watch() and releases all keys
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // nothing to release
+        }
+    }
+
+    /**
+     * handle - turns one event into queued files
+     *
+     * @param dir   watched directory
+     * @param event event of the directory
+     * @param batch batch to add files to
+     * @throws InterruptedException if thread interrupted while waiting for space in the queue
+     */
+    private void handle(Path dir, WatchEvent<?> event, FileBatchQueue.Batch batch) throws InterruptedException {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // events were lost - re-scan just this subtree
+            System.out.println("W: Events lost in " + dir + " - re-scanning it");
+            rescan(dir, batch);
+            return;
+        }
+        Path child = dir.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            // never indexed if the filter rejected it - removing it is a no-op then
+            batch.add(new DeletedFile(child.toString()));
+            return;
+        }
+        PathFilter.Scope scope = scopeOf(dir);
+        if (scope == null) {
+            return;
+        }
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+            if (scope.enter(child.toFile()) != null) {
+                rescan(child, batch);
+            }
+        } else if (!Files.isDirectory(child) && scope.accept(child.toFile(), null)) {
+            batch.add(child.toFile());
+        }
+    }
+
+    /**
+     * rescan - registers directories of a subtree and queues all its files
+     *
+     * @param dir   root of the subtree
+     * @param batch batch to add files to
+     * @throws InterruptedException if thread interrupted while waiting for space in the queue
+     */
+    private void rescan(Path dir, FileBatchQueue.Batch batch) throws InterruptedException {
+        try {
+            walk(dir, batch);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("W: Can not re-scan " + dir + ": " + e.getMessage());
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * walk - registers directories (already registered ones keep their key) and, if batch is given, queues files
+     *
+     * @param start root of the walk
+     * @param batch batch to add files to, null - only register
+     * @throws IOException if walk fails
+     */
+    private void walk(Path start, final FileBatchQueue.Batch batch) throws IOException {
+        // scopes of the directories of this walk (also the ones not watched because of the cap)
+        final Map<Path, PathFilter.Scope> scopes = new HashMap<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                PathFilter.Scope parentScope = scopes.get(dir.getParent());
+                PathFilter.Scope scope = (parentScope == null) ? scopeOf(dir) : parentScope.enter(dir.toFile());
+                // excluded - not watched, not queued
+                if (scope == null) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                scopes.put(dir, scope);
+                if (watched.containsKey(dir)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (keys.size() >= maxWatchKeys) {
+                    if (!capReported) {
+                        System.out.println("W: Watch limit of " + maxWatchKeys + " directories reached - deeper directories are not watched");
+                        capReported = true;
+                    }
+                    return (batch == null) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                keys.put(key, dir);
+                watched.put(dir, scope);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                PathFilter.Scope scope = scopes.get(file.getParent());
+                if (batch != null && scope != null && scope.accept(file.toFile(), attrs)) {
+                    try {
+                        batch.add(file.toFile());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * scopeOf - filter scope of a directory (scope of a watched directory is kept, others are found from the root)
+     *
+     * @param dir directory
+     * @return scope, null if the directory is excluded
+     */
+    private PathFilter.Scope scopeOf(Path dir) {
+        PathFilter.Scope scope = watched.get(dir);
+        return (scope != null) ? scope : pathFilter.scopeOf(dir.toFile());
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DuplicateFinder class - finds files with the same content in one crawl without hashing every byte of every file
+ *          - stage 1 (while crawling): files grouped by size, a file with a unique size can not have a duplicate
+ *          - stage 2: hash of the first and last EDGE_BYTES of every file left (files up to 2 * EDGE_BYTES are hashed whole)
+ *          - stage 3: full streaming SHA-256 of the files still sharing size and edge hash
+ *          - every stage only sees the candidates that survived the previous one, stages 2 and 3 run in parallel on a pool
+ *          - hard links are not reported, the crawler queues a (device, inode) once (VisitedIndex)
+ *          - size groups hold path IDs of a shared PathArena, File objects are only created for files sharing a size
+ *          - size groups are not thread safe: every consumer keeps its own partial, partials are merged once at the end
+ */
+public class DuplicateFinder {
+    /**
+     * Bytes hashed at the start and at the end of a file in stage 2
+     */
+    static final int EDGE_BYTES = 4096;
+    /**
+     * Buffer of the full hash
+     */
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Files smaller than this are ignored (1 - empty files are not reported as duplicates of each other)
+     */
+    private final long minSize;
+    /**
+     * Paths of the files - shared by all partials
+     */
+    private final PathArena paths;
+    /**
+     * Size -> path IDs of the files of that size (stage 1)
+     */
+    private final Map<Long, PathArena.IdList> bySize = new HashMap<>();
+    /**
+     * Num of files added
+     */
+    private long files = 0;
+    /**
+     * Num of candidates entering stage 2 and stage 3
+     */
+    private long edgeCandidates = 0, fullCandidates = 0;
+    /**
+     * Bytes read by stage 2 and 3
+     */
+    private final AtomicLong bytesHashed = new AtomicLong();
+
+    /**
+     * Constructor initializing min size and path store
+     *
+     * @param minSize files smaller than this are ignored
+     * @param paths   path store shared by all partials of a crawl
+     */
+    public DuplicateFinder(long minSize, PathArena paths) {
+        this.minSize = Math.max(1, minSize);
+        this.paths = paths;
+    }
+
+    /**
+     * add - reads size of the file (one stat) and adds it to its size group
+     *
+     * @param file file taken from the queue
+     */
+    public void add(File file) {
+        try {
+            add(file, Files.size(file.toPath()));
+        } catch (IOException | InvalidPathException e) {
+            // removed meanwhile or not accessible - not a candidate
+        }
+    }
+
+    /**
+     * add - adds file with known size
+     *
+     * @param file file
+     * @param size size in bytes
+     */
+    void add(File file, long size) {
+        files++;
+        if (size < minSize) {
+            return;
+        }
+        PathArena.IdList group = bySize.get(size);
+        if (group == null) {
+            group = new PathArena.IdList();
+            bySize.put(size, group);
+        }
+        group.add(paths.idOf(file));
+    }
+
+    /**
+     * merge - adds size groups of another consumer to this one
+     *
+     * @param other partial of another consumer
+     */
+    public void merge(DuplicateFinder other) {
+        files += other.files;
+        for (Map.Entry<Long, PathArena.IdList> e : other.bySize.entrySet()) {
+            PathArena.IdList group = bySize.get(e.getKey());
+            if (group == null) {
+                bySize.put(e.getKey(), e.getValue());
+            } else {
+                group.addAll(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * mergeAll - merges the partials of all consumers into the first one (called once, after all consumers are done)
+     *
+     * @param partials partials (not empty)
+     * @return merged finder
+     */
+    public static DuplicateFinder mergeAll(List<DuplicateFinder> partials) {
+        DuplicateFinder merged = partials.get(0);
+        for (int i = 1; i < partials.size(); i++) {
+            merged.merge(partials.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * find - runs stage 2 and 3 on the size groups
+     *
+     * @param pool executor hashing the files (one task per file)
+     * @return groups of files with the same content, most reclaimable bytes first
+     * @throws InterruptedException if interrupted while hashing
+     */
+    public List<Group> find(ExecutorService pool) throws InterruptedException {
+        List<Group> groups = new ArrayList<>();
+        for (Map.Entry<Long, PathArena.IdList> e : bySize.entrySet()) {
+            PathArena.IdList ids = e.getValue();
+            if (ids.size() > 1) {
+                List<File> files = new ArrayList<>(ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    files.add(paths.fileOf(ids.get(i)));
+                }
+                groups.add(new Group(e.getKey(), null, files));
+                edgeCandidates += ids.size();
+            }
+        }
+        groups = refine(groups, false, pool);
+        // small files were hashed whole by stage 2 - only larger ones need the full hash
+        List<Group> done = new ArrayList<>(), large = new ArrayList<>();
+        for (Group group : groups) {
+            if (group.size <= 2L * EDGE_BYTES) {
+                done.add(group);
+            } else {
+                large.add(group);
+                fullCandidates += group.files.size();
+            }
+        }
+        done.addAll(refine(large, true, pool));
+        done.sort((a, b) -> Long.compare(b.reclaimable(), a.reclaimable()));
+        return done;
+    }
+
+    /**
+     * refine - splits every group by the hash of its files, groups left with one file are dropped
+     *
+     * @param groups candidate groups
+     * @param full   true - hash whole files, false - hash first and last EDGE_BYTES
+     * @param pool   executor hashing the files
+     * @return groups of files with the same size and hash
+     * @throws InterruptedException if interrupted while hashing
+     */
+    private List<Group> refine(List<Group> groups, final boolean full, ExecutorService pool) throws InterruptedException {
+        List<Callable<String>> hashes = new ArrayList<>();
+        for (final Group group : groups) {
+            for (final File file : group.files) {
+                hashes.add(new Callable<String>() {
+                    public String call() {
+                        return hash(file, group.size, full);
+                    }
+                });
+            }
+        }
+        List<Future<String>> results = pool.invokeAll(hashes);
+        List<Group> refined = new ArrayList<>();
+        int next = 0;
+        for (Group group : groups) {
+            Map<String, List<File>> byHash = new HashMap<>();
+            for (File file : group.files) {
+                String hash = valueOf(results.get(next++));
+                if (hash != null) {
+                    byHash.computeIfAbsent(hash, h -> new ArrayList<>(2)).add(file);
+                }
+            }
+            for (Map.Entry<String, List<File>> e : byHash.entrySet()) {
+                if (e.getValue().size() > 1) {
+                    refined.add(new Group(group.size, e.getKey(), e.getValue()));
+                }
+            }
+        }
+        return refined;
+    }
+
+    /**
+     * hash - SHA-256 of the file, or of its first and last EDGE_BYTES
+     *
+     * @param file file
+     * @param size size seen while crawling
+     * @param full true - whole file
+     * @return hex digest, null if the file can not be read or its size changed since the crawl
+     */
+    String hash(File file, long size, boolean full) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long read = 0;
+            if (full || size <= 2L * EDGE_BYTES) {
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    byte[] buffer = new byte[BUFFER_BYTES];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, n);
+                        read += n;
+                    }
+                }
+                bytesHashed.addAndGet(read);
+                return (read == size) ? hex(digest.digest()) : null;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() != size) {
+                    return null;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(EDGE_BYTES);
+                for (long position : new long[]{0, size - EDGE_BYTES}) {
+                    buffer.clear();
+                    while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    }
+                    buffer.flip();
+                    read += buffer.remaining();
+                    digest.update(buffer);
+                }
+            }
+            bytesHashed.addAndGet(read);
+            return hex(digest.digest());
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * report - text report of the duplicate groups
+     *
+     * @param groups    result of find
+     * @param maxGroups max num of groups listed
+     * @return report
+     */
+    public String report(List<Group> groups, int maxGroups) {
+        long reclaimable = 0, duplicates = 0;
+        for (Group group : groups) {
+            reclaimable += group.reclaimable();
+            duplicates += group.files.size() - 1;
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Duplicates: %d files checked, %d left after size, %d large files left after edge hash, %s read%n",
+                files, edgeCandidates, fullCandidates, FileAggregates.human(bytesHashed.get())));
+        report.append(String.format("%d groups, %d redundant copies, %s reclaimable%n", groups.size(), duplicates, FileAggregates.human(reclaimable)));
+        for (Group group : groups.subList(0, Math.min(maxGroups, groups.size()))) {
+            report.append(String.format("  %d x %s  sha256 %s%n", group.files.size(), FileAggregates.human(group.size), group.hash));
+            for (File file : group.files) {
+                report.append("      ").append(file.getPath()).append(System.lineSeparator());
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * valueOf - result of a hash task
+     *
+     * @param result future of the task
+     * @return hash, null if the task failed
+     */
+    private static String valueOf(Future<String> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * hex - hex form of a digest
+     *
+     * @param bytes digest
+     * @return lower case hex
+     */
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Group class - files with the same size (and hash, once hashed)
+     */
+    public static class Group {
+        /**
+         * Size of every file of the group
+         */
+        public final long size;
+        /**
+         * Hex SHA-256 of the content (of the edges until stage 3), null after stage 1
+         */
+        public final String hash;
+        /**
+         * Files of the group
+         */
+        public final List<File> files;
+
+        Group(long size, String hash, List<File> files) {
+            this.size = size;
+            this.hash = hash;
+            this.files = files;
+        }
+
+        /**
+         * @return bytes freed by keeping one copy
+         */
+        public long reclaimable() {
+            return size * (files.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ExecutionMode enum - selects the threads blocking tasks (directory listings, file reads, Task2 Indexer tasks) run on
+ *          - PLATFORM: fixed pool of platform threads (original behaviour, kept for comparison)
+ *          - VIRTUAL:  one virtual thread per task (JDK 21 Executors.newVirtualThreadPerTaskExecutor),
+ *                      so a task blocked on I/O or on the queue never keeps other tasks from getting a thread
+ *          - virtual threads are looked up by reflection, so the code still builds and runs on older JDKs -
+ *            there VIRTUAL falls back to a fixed pool of (daemon) platform threads of the same size as PLATFORM, so a
+ *            task per directory or per file never becomes an OS thread per task
+ */
+public enum ExecutionMode {
+    PLATFORM, VIRTUAL;
+
+    /**
+     * Factory method of virtual thread executors, null if the JDK has no virtual threads
+     */
+    private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+    /**
+     * True once the fallback message was printed
+     */
+    private static volatile boolean fallbackReported = false;
+
+    /**
+     * newExecutor - creates executor for this mode
+     *
+     * @param platformThreads num of threads of the PLATFORM pool and of the VIRTUAL fallback (ignored with virtual threads)
+     * @return new executor, to be shut down by the caller
+     */
+    public ExecutorService newExecutor(int platformThreads) {
+        platformThreads = Math.max(1, platformThreads);
+        if (this == PLATFORM) {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // not usable (e.g. preview not enabled) - fall back below
+            }
+        }
+        if (!fallbackReported) {
+            fallbackReported = true;
+            System.out.println("Virtual threads not available on Java " + System.getProperty("java.version") + " - using a fixed pool of platform threads");
+        }
+        return Executors.newFixedThreadPool(platformThreads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable task) {
+                // daemon like virtual threads - idle threads do not keep the JVM alive
+                Thread thread = new Thread(task, "task-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return true if this JDK provides virtual threads
+     */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * findVirtualExecutor - looks up Executors.newVirtualThreadPerTaskExecutor
+     *
+     * @return the method or null (JDK older than 21)
+     */
+    private static Method findVirtualExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
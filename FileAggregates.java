@@ -0,0 +1,343 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * FileAggregates class - streaming aggregates over the files passing a consumer (one pass, bounded memory)
+ *          - top-K largest and top-K oldest files (bounded heaps of K entries)
+ *          - count and total size per extension and per top-level directory (first directory below a root)
+ *          - size histogram with power of two buckets
+ *          - not thread safe: every consumer keeps its own partial, partials are merged once at the end (no shared locks)
+ */
+public class FileAggregates {
+    /**
+     * Num of largest / oldest files kept
+     */
+    private final int topK;
+    /**
+     * Roots of the crawl (absolute paths) - for the top-level directory of a file
+     */
+    private final List<String> roots;
+    /**
+     * K largest files so far - min heap, root is the smallest of them
+     */
+    private final PriorityQueue<Entry> largest;
+    /**
+     * K oldest files so far - max heap on mtime, root is the newest of them
+     */
+    private final PriorityQueue<Entry> oldest;
+    /**
+     * Extension -> {count, bytes}
+     */
+    private final Map<String, long[]> byExtension = new HashMap<>();
+    /**
+     * Top-level directory -> {count, bytes}
+     */
+    private final Map<String, long[]> byDirectory = new HashMap<>();
+    /**
+     * Num of files per size bucket: bucket 0 - empty files, bucket b - sizes in [2^(b-1), 2^b)
+     */
+    private final long[] sizeHistogram = new long[65];
+    /**
+     * Num of files and total size
+     */
+    private long files = 0, bytes = 0;
+
+    /**
+     * Constructor initializing K and roots
+     *
+     * @param topK  num of largest / oldest files to keep
+     * @param roots roots of the crawl
+     */
+    public FileAggregates(int topK, File[] roots) {
+        this.topK = Math.max(1, topK);
+        this.roots = new ArrayList<>();
+        for (File root : roots) {
+            this.roots.add(root.getAbsolutePath());
+        }
+        this.largest = new PriorityQueue<>(this.topK + 1, Comparator.comparingLong((Entry e) -> e.size));
+        this.oldest = new PriorityQueue<>(this.topK + 1, Comparator.comparingLong((Entry e) -> e.modified).reversed());
+    }
+
+    /**
+     * add - reads size and mtime of the file (one stat) and adds it
+     *
+     * @param file file taken from the queue
+     */
+    public void add(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            add(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+        } catch (IOException | InvalidPathException e) {
+            // removed meanwhile or not accessible - not counted
+        }
+    }
+
+    /**
+     * add - adds file with known size and mtime
+     *
+     * @param file     file
+     * @param size     size in bytes
+     * @param modified mtime in millis
+     */
+    void add(File file, long size, long modified) {
+        files++;
+        bytes += size;
+        sizeHistogram[64 - Long.numberOfLeadingZeros(size)]++;
+        addTo(byExtension, extensionOf(file.getName()), 1, size);
+        addTo(byDirectory, topLevelOf(file), 1, size);
+        Entry entry = new Entry(file.getPath(), size, modified);
+        offer(largest, entry, largest.comparator());
+        offer(oldest, entry, oldest.comparator());
+    }
+
+    /**
+     * merge - adds partial of another consumer to this one
+     *
+     * @param other partial aggregates
+     */
+    public void merge(FileAggregates other) {
+        files += other.files;
+        bytes += other.bytes;
+        for (int i = 0; i < sizeHistogram.length; i++) {
+            sizeHistogram[i] += other.sizeHistogram[i];
+        }
+        for (Map.Entry<String, long[]> e : other.byExtension.entrySet()) {
+            addTo(byExtension, e.getKey(), e.getValue()[0], e.getValue()[1]);
+        }
+        for (Map.Entry<String, long[]> e : other.byDirectory.entrySet()) {
+            addTo(byDirectory, e.getKey(), e.getValue()[0], e.getValue()[1]);
+        }
+        for (Entry e : other.largest) {
+            offer(largest, e, largest.comparator());
+        }
+        for (Entry e : other.oldest) {
+            offer(oldest, e, oldest.comparator());
+        }
+    }
+
+    /**
+     * mergeAll - merges the partials of all consumers into the first one (called once, after all consumers are done)
+     *
+     * @param partials partial aggregates (not empty)
+     * @return merged aggregates
+     */
+    public static FileAggregates mergeAll(List<FileAggregates> partials) {
+        FileAggregates merged = partials.get(0);
+        for (int i = 1; i < partials.size(); i++) {
+            merged.merge(partials.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * @return num of files added
+     */
+    public long fileCount() {
+        return files;
+    }
+
+    /**
+     * @return total size of the files added
+     */
+    public long totalBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return largest files, largest first
+     */
+    public List<Entry> largest() {
+        List<Entry> result = new ArrayList<>(largest);
+        result.sort(Collections.reverseOrder(largest.comparator()));
+        return result;
+    }
+
+    /**
+     * @return oldest files, oldest first
+     */
+    public List<Entry> oldest() {
+        List<Entry> result = new ArrayList<>(oldest);
+        result.sort(Collections.reverseOrder(oldest.comparator()));
+        return result;
+    }
+
+    /**
+     * @return extension ("" - none) -> {count, bytes}
+     */
+    public Map<String, long[]> byExtension() {
+        return byExtension;
+    }
+
+    /**
+     * @return top-level directory -> {count, bytes}
+     */
+    public Map<String, long[]> byDirectory() {
+        return byDirectory;
+    }
+
+    /**
+     * report - text report of all aggregates
+     *
+     * @param maxGroups max num of extensions / directories listed (largest total size first)
+     * @return report
+     */
+    public String report(int maxGroups) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Aggregates: %d files, %s%n", files, human(bytes)));
+        report.append(String.format("Top %d largest files:%n", topK));
+        for (Entry e : largest()) {
+            report.append(String.format("  %10s  %s%n", human(e.size), e.path));
+        }
+        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        report.append(String.format("Top %d oldest files:%n", topK));
+        for (Entry e : oldest()) {
+            report.append(String.format("  %s  %s%n", date.format(new Date(e.modified)), e.path));
+        }
+        appendGroups(report, "Size by extension", byExtension, maxGroups);
+        appendGroups(report, "Size by top-level directory", byDirectory, maxGroups);
+        report.append("Size histogram:").append(System.lineSeparator());
+        for (int b = 0; b < sizeHistogram.length; b++) {
+            if (sizeHistogram[b] > 0) {
+                String range = (b == 0) ? "0 B" : "< " + human(1L << Math.min(b, 62));
+                report.append(String.format("  %10s  %d files%n", range, sizeHistogram[b]));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * appendGroups - lists groups by total size
+     *
+     * @param report    report to append to
+     * @param title     title of the section
+     * @param groups    group -> {count, bytes}
+     * @param maxGroups max num of groups listed
+     */
+    private static void appendGroups(StringBuilder report, String title, Map<String, long[]> groups, int maxGroups) {
+        List<Map.Entry<String, long[]>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        report.append(String.format("%s (%d groups):%n", title, groups.size()));
+        for (Map.Entry<String, long[]> e : sorted.subList(0, Math.min(maxGroups, sorted.size()))) {
+            String name = e.getKey().isEmpty() ? "(none)" : e.getKey();
+            report.append(String.format("  %10s  %8d files  %s%n", human(e.getValue()[1]), e.getValue()[0], name));
+        }
+    }
+
+    /**
+     * offer - keeps entry if it belongs to the top K (heap root is the weakest kept entry)
+     *
+     * @param heap       bounded heap
+     * @param entry      candidate
+     * @param comparator order of the heap
+     */
+    private void offer(PriorityQueue<Entry> heap, Entry entry, Comparator<? super Entry> comparator) {
+        if (heap.size() < topK) {
+            heap.add(entry);
+        } else if (comparator.compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * addTo - adds count and bytes to a group
+     *
+     * @param groups group -> {count, bytes}
+     * @param key    group
+     * @param count  num of files
+     * @param size   bytes
+     */
+    private static void addTo(Map<String, long[]> groups, String key, long count, long size) {
+        long[] totals = groups.get(key);
+        if (totals == null) {
+            totals = new long[2];
+            groups.put(key, totals);
+        }
+        totals[0] += count;
+        totals[1] += size;
+    }
+
+    /**
+     * extensionOf - lower case extension of the file name
+     *
+     * @param name file name
+     * @return extension with dot, "" if the name has none (dot files like .bashrc have none)
+     */
+    static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return (dot <= 0 || dot == name.length() - 1) ? "" : name.substring(dot).toLowerCase();
+    }
+
+    /**
+     * topLevelOf - first directory below the root the file was found in
+     *
+     * @param file file
+     * @return root + first directory, or root if the file is directly in it
+     */
+    private String topLevelOf(File file) {
+        String path = file.getAbsolutePath();
+        for (String root : roots) {
+            boolean below = path.length() > root.length() && path.startsWith(root)
+                    && (root.endsWith(File.separator) || path.charAt(root.length()) == File.separatorChar);
+            if (below) {
+                int start = root.endsWith(File.separator) ? root.length() : root.length() + 1;
+                int end = path.indexOf(File.separatorChar, start);
+                return (end < 0) ? root : path.substring(0, end);
+            }
+        }
+        String parent = file.getParent();
+        return (parent == null) ? "" : parent;
+    }
+
+    /**
+     * human - size with unit
+     *
+     * @param size bytes
+     * @return e.g. "12.3 MB"
+     */
+    static String human(long size) {
+        if (size < 1024) {
+            return size + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB", "PB", "EB"};
+        double value = size;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+
+    /**
+     * Entry class - one file in a top-K list
+     */
+    public static class Entry {
+        /**
+         * Path of the file
+         */
+        public final String path;
+        /**
+         * Size in bytes and mtime in millis
+         */
+        public final long size, modified;
+
+        Entry(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FileBatchQueue class - batched transport between FileCrawler (producer) and Indexer (consumer)
+ *          - producers fill a Batch of up to batchSize files and hand it over with one put
+ *          - consumers take a whole chunk (File[]) with one take
+ *          - one lock acquisition and one possible park/unpark per chunk instead of per file
+ *          - end of stream is an identity sentinel chunk (not a file name): close() puts it once, every consumer that
+ *            takes it puts it back for the next one, take() returns null from then on
+ *          - cancel() drops waiting and further chunks and ends the stream at once
+ *          - capacity is a ResizableSemaphore of chunk slots (a producer takes one per chunk, a consumer gives it back),
+ *            so the bound can be changed while the crawl runs (AdaptiveScheduler)
+ */
+public class FileBatchQueue {
+    /**
+     * Chunks of files waiting for consumers (bounded by slots)
+     */
+    private final BlockingQueue<File[]> chunks = new LinkedBlockingQueue<>();
+    /**
+     * Free chunk slots - permits = capacity
+     */
+    private final ResizableSemaphore slots;
+    /**
+     * Num of files taken by consumers
+     */
+    private final LongAdder taken = new LongAdder();
+    /**
+     * Num of consumers waiting in take right now
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+    /**
+     * Max num of files in one chunk
+     */
+    private final int batchSize;
+    /**
+     * End of stream sentinel - compared by identity, so no real file can be mistaken for it
+     */
+    private static final File[] END = new File[0];
+    /**
+     * Max time a put blocked on a full queue waits before checking for cancel()
+     */
+    private static final long CANCEL_CHECK_MILLIS = 100;
+    /**
+     * True once cancel() was called
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * Time producers wait on put and consumers wait on take is recorded here
+     */
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    /**
+     * Checkpoint told about every chunk put (null - no checkpoints)
+     */
+    private volatile CrawlCheckpoint checkpoint;
+
+    /**
+     * Constructor initializing chunk queue
+     *
+     * @param capacity  max num of chunks waiting in the queue
+     * @param batchSize max num of files in one chunk
+     */
+    public FileBatchQueue(int capacity, int batchSize) {
+        this.slots = new ResizableSemaphore(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * newBatch - creates producer side buffer. A Batch is not thread safe, every producer thread / task uses its own
+     *
+     * @return empty batch
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * put - puts single file as its own chunk (for files that must not wait in a producer buffer)
+     *
+     * @param file file to add
+     * @throws InterruptedException if thread interrupted while waiting
+     */
+    public void put(File file) throws InterruptedException {
+        putChunk(new File[]{file});
+    }
+
+    /**
+     * take - takes next chunk, waits if queue is empty
+     *
+     * @return chunk of files (never empty), or null once the stream is closed / cancelled and nothing is left
+     * @throws InterruptedException if thread interrupted while waiting
+     */
+    public File[] take() throws InterruptedException {
+        if (cancelled) {
+            return null;
+        }
+        File[] chunk = chunks.poll();
+        if (chunk == null) {
+            // queue empty - consumer is idle until a producer puts a chunk
+            long start = System.nanoTime();
+            waiting.incrementAndGet();
+            try {
+                chunk = chunks.take();
+            } finally {
+                waiting.decrementAndGet();
+            }
+            metrics.takeIdle(System.nanoTime() - start);
+        }
+        if (chunk == END) {
+            // pass the end on to the next consumer
+            chunks.offer(END);
+            return null;
+        }
+        slots.release();
+        taken.add(chunk.length);
+        return cancelled ? null : chunk;
+    }
+
+    /**
+     * close - ends the stream after all chunks put so far (called once, when the last producer is done)
+     */
+    public void close() {
+        // the end needs no slot - it never waits for space, chunks put so far stay ahead of it
+        chunks.offer(END);
+    }
+
+    /**
+     * cancel - ends the stream now: waiting chunks are dropped, producers stop waiting for space and their chunks are dropped
+     */
+    public void cancel() {
+        cancelled = true;
+        chunks.clear();
+        chunks.offer(END);
+    }
+
+    /**
+     * setCheckpoint - tells the checkpoint about every chunk put from now on (consumers report them processed)
+     *
+     * @param checkpoint checkpoint of the crawl (null - no checkpoints)
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return true if cancel() was called (producers can stop crawling)
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return num of chunks currently waiting in the queue
+     */
+    public int size() {
+        return chunks.size();
+    }
+
+    /**
+     * @return max num of chunks waiting in the queue
+     */
+    public int capacity() {
+        return slots.limit();
+    }
+
+    /**
+     * setCapacity - changes max num of waiting chunks while the crawl runs (producers waiting for space see a larger
+     *               capacity at once, a smaller one holds once consumers have taken enough chunks)
+     *
+     * @param capacity new max num of chunks (at least 1)
+     */
+    public void setCapacity(int capacity) {
+        slots.resize(capacity);
+    }
+
+    /**
+     * @return num of consumers waiting for a chunk right now
+     */
+    public int waiting() {
+        return waiting.get();
+    }
+
+    /**
+     * @return num of files taken by consumers so far
+     */
+    public long taken() {
+        return taken.sum();
+    }
+
+    /**
+     * @return max num of files in one chunk
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * putChunk - puts chunk into queue
+     *          - the wait goes through ForkJoinPool.managedBlock, so a ForkJoinPool (ParallelCrawler) can add a spare worker
+     *            while this one is blocked on a full queue (outside a pool it is a plain put)
+     *          - after cancel() the chunk is dropped, a waiting put notices cancel within CANCEL_CHECK_MILLIS
+     *          - the checkpoint sees the chunk before it is put, a chunk dropped by cancel() stays pending there
+     *
+     * @param chunk chunk to add
+     * @throws InterruptedException if thread interrupted while waiting
+     */
+    private void putChunk(final File[] chunk) throws InterruptedException {
+        if (cancelled) {
+            return;
+        }
+        CrawlCheckpoint current = checkpoint;
+        if (current != null) {
+            current.handedOver(chunk);
+        }
+        if (tryPut(chunk)) {
+            return;
+        }
+        // queue full - producer is blocked until a consumer takes a chunk
+        long start = System.nanoTime();
+        try {
+            managedPut(chunk);
+        } finally {
+            metrics.putBlocked(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * managedPut - waits for space in the queue inside ForkJoinPool.managedBlock
+     *
+     * @param chunk chunk to add
+     * @throws InterruptedException if thread interrupted while waiting
+     */
+    private void managedPut(final File[] chunk) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean done = false;
+
+            public boolean block() throws InterruptedException {
+                while (!done && !cancelled) {
+                    done = slots.tryAcquire(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS) && chunks.offer(chunk);
+                }
+                return true;
+            }
+
+            public boolean isReleasable() {
+                return done || cancelled || (done = tryPut(chunk));
+            }
+        });
+    }
+
+    /**
+     * tryPut - puts chunk if a slot is free
+     *
+     * @param chunk chunk to add
+     * @return true if added
+     */
+    private boolean tryPut(File[] chunk) {
+        return slots.tryAcquire() && chunks.offer(chunk);
+    }
+
+    /**
+     * Batch class - producer side buffer of one chunk
+     */
+    public class Batch {
+        /**
+         * Files collected so far
+         */
+        private File[] files = new File[batchSize];
+        /**
+         * Num of files collected so far
+         */
+        private int count = 0;
+
+        /**
+         * add - adds file to the buffer, hands the chunk over when it is full
+         *
+         * @param file file to add
+         * @throws InterruptedException if thread interrupted while waiting for space in the queue
+         */
+        public void add(File file) throws InterruptedException {
+            files[count++] = file;
+            if (count == files.length) {
+                flush();
+            }
+        }
+
+        /**
+         * flush - hands over collected files (if any) as one chunk
+         *
+         * @throws InterruptedException if thread interrupted while waiting for space in the queue
+         */
+        public void flush() throws InterruptedException {
+            if (count == 0) {
+                return;
+            }
+            File[] chunk = (count == files.length) ? files : Arrays.copyOf(files, count);
+            files = new File[batchSize];
+            count = 0;
+            putChunk(chunk);
+        }
+    }
+}
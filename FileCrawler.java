@@ -0,0 +1,270 @@
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * FileCrawler class: producer class shared by Task1 and Task2
+ * Adding/putting file to Blocking Queue if it's not directory
+ *          - crawls recursively on its own thread, or hands the directories to a ParallelCrawler
+ *          - resumes from the frontier and pending files of a checkpoint, prunes with the PathFilter of the run
+ *          - with a persistent index (Task1) unchanged directories are not listed again, in live mode (Task1) the
+ *            crawled tree is watched after the crawl
+ */
+public class FileCrawler implements Runnable {
+    /**
+     * FileQueue adding files into
+     */
+    private final FileBatchQueue fileQueue;
+    /**
+     * FileFilter - directories are always accepted by the lister
+     */
+    private final FileFilter fileFilter;
+    /**
+     * Backend listing the directories
+     */
+    private final DirectoryLister lister;
+    /**
+     * Root of the file structure
+     */
+    private final File root;
+    /**
+     * Directories crawled - root, or the directories left to list when resuming from a checkpoint
+     */
+    private final File[] startDirectories;
+    /**
+     * Files queued before crawling - files a stopped run had queued but not processed (resume)
+     */
+    private final List<File> pendingFiles;
+    /**
+     * Run this crawler belongs to - visited index, filter, checkpoint, persistent index and live mode of the crawl
+     */
+    private final CrawlRun run;
+    /**
+     * parallelCrawler - work-stealing engine, null when crawling recursively on this thread
+     */
+    private final ParallelCrawler parallelCrawler;
+    /**
+     * Producer side buffer used by the recursive crawl
+     */
+    private final FileBatchQueue.Batch batch;
+    /**
+     * Completion of the crawl - told when this producer is done
+     */
+    private final CrawlCompletion completion;
+
+    /**
+     * Constructor initializing fileQueue, fileFilter, root
+     *
+     * @param fileQueue  batched queue with specific bound
+     * @param fileFilter filter to accept file's pathname
+     * @param root       root file from file structure
+     * @param completion completion of the crawl
+     * @param run        run this crawler belongs to
+     */
+    public FileCrawler(FileBatchQueue fileQueue, final FileFilter fileFilter, File root, CrawlCompletion completion, CrawlRun run) {
+        this(fileQueue, fileFilter, root, completion, null, DirectoryLister.Backend.LEGACY.create(), run);
+    }
+
+    /**
+     * Constructor initializing fileQueue, fileFilter, root, parallel engine and listing backend
+     *
+     * @param fileQueue  batched queue with specific bound
+     * @param fileFilter filter to accept file's pathname
+     * @param root       root file from file structure
+     * @param completion completion of the crawl
+     * @param pool       ForkJoinPool or virtual thread executor shared by crawlers (null - crawl recursively on this thread)
+     * @param lister     backend listing the directories
+     * @param run        run this crawler belongs to
+     */
+    public FileCrawler(FileBatchQueue fileQueue, final FileFilter fileFilter, File root, CrawlCompletion completion, ExecutorService pool,
+                       DirectoryLister lister, CrawlRun run) {
+        this(fileQueue, fileFilter, root, new File[]{root}, Collections.<File>emptyList(), completion, pool, lister, run);
+    }
+
+    /**
+     * Constructor resuming a stopped crawl of root
+     *
+     * @param fileQueue        batched queue with specific bound
+     * @param fileFilter       filter to accept file's pathname
+     * @param root             root file from file structure (watched in live mode)
+     * @param startDirectories directories left to list
+     * @param pendingFiles     files queued but not processed by the stopped run
+     * @param completion       completion of the crawl
+     * @param pool             ForkJoinPool or virtual thread executor shared by crawlers (null - crawl recursively on this thread)
+     * @param lister           backend listing the directories
+     * @param run              run this crawler belongs to
+     */
+    public FileCrawler(FileBatchQueue fileQueue, final FileFilter fileFilter, File root, File[] startDirectories, List<File> pendingFiles,
+                       CrawlCompletion completion, ExecutorService pool, DirectoryLister lister, CrawlRun run) {
+        this.fileQueue = fileQueue;
+        this.run = run;
+        this.root = root;
+        this.startDirectories = startDirectories;
+        this.pendingFiles = pendingFiles;
+        this.completion = completion;
+        // fileFilter is only applied to files - the lister always accepts directories
+        this.fileFilter = fileFilter;
+        this.lister = lister;
+        this.batch = fileQueue.newBatch();
+        this.parallelCrawler = (pool == null) ? null : new ParallelCrawler(pool, fileQueue, fileFilter, run.visitedIndex, lister);
+        if (parallelCrawler != null) {
+            parallelCrawler.setPersistentIndex(run.persistentIndex);
+            parallelCrawler.setCheckpoint(run.checkpoint);
+            parallelCrawler.setPathFilter(run.pathFilter);
+        }
+    }
+
+    /**
+     * alreadyIndexed - check the file is checked before or not (VisitedIndex)
+     * - adds to VisitedIndex if not indexed (check and add is one atomic operation)
+     *
+     * @param file  file to compare
+     * @param attrs attributes read by the lister (null - read by VisitedIndex)
+     * @return true if file is already indexed or false
+     */
+    private boolean alreadyIndexed(File file, BasicFileAttributes attrs) {
+        if (!run.visitedIndex.markFile(file, attrs)) {
+            System.out.println("P: Found the same item! <---------");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Run method calls recursive crawl method with passing root, then tells the completion this producer is done
+     *          (the last producer closes the queue - consumers stop when it is drained), live mode watches the tree
+     *          before that
+     */
+    public void run() {
+        try {
+            for (File pending : pendingFiles) {
+                batch.add(pending);
+            }
+            batch.flush();
+            if (parallelCrawler != null) {
+                parallelCrawler.crawl(startDirectories);
+            } else {
+                for (File directory : startDirectories) {
+                    PathFilter.Scope scope = run.pathFilter.scopeOf(directory);
+                    if (scope != null) {
+                        crawl(directory, null, scope);
+                    }
+                }
+                batch.flush();
+            }
+            if (!completion.isCancelled()) {
+                run.rootsCrawled.incrementAndGet();
+            }
+            // live mode - keep the index current until this thread is interrupted or the crawl is cancelled
+            if (run.maxWatchedDirectories > 0 && !completion.isCancelled()) {
+                watch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            completion.producerDone();
+        }
+    }
+
+    /**
+     * watch - registers the crawled tree with a DirectoryWatcher and feeds its events into the queue
+     *
+     * @throws InterruptedException if thread interrupted (stops live mode)
+     */
+    private void watch() throws InterruptedException {
+        final DirectoryWatcher watcher;
+        try {
+            watcher = new DirectoryWatcher(fileQueue, run.maxWatchedDirectories, run.pathFilter);
+        } catch (IOException e) {
+            System.out.println("W: Live mode not available: " + e.getMessage());
+            return;
+        }
+        // cancelling the crawl closes the watcher, which ends watch()
+        completion.future().whenComplete((total, e) -> watcher.close());
+        try {
+            watcher.registerTree(root);
+            System.out.println("W: Watching " + watcher.watchedDirectories() + " directories below " + root);
+            watcher.watch();
+        } finally {
+            watcher.close();
+        }
+    }
+
+    /**
+     * crawl recursive method goes through all directories inside root and adds files to queue
+     *
+     * @param root  root file to start from
+     * @param attrs attributes of root read by the parent listing (null for the first root)
+     * @param scope filter scope of root (excluded sub directories are not crawled)
+     * @throws InterruptedException if thread interrupted, throws exception
+     */
+    private void crawl(final File root, BasicFileAttributes attrs, final PathFilter.Scope scope) throws InterruptedException {
+        // crawl cancelled - nothing more is listed
+        if (fileQueue.isCancelled()) {
+            return;
+        }
+        // directory already entered (same root given twice, or symlink pointing back into the tree) - skip it
+        if (!run.visitedIndex.markDirectory(root, attrs)) {
+            System.out.println("P: Skipping already crawled directory (possible symlink loop): " + root);
+            return;
+        }
+        final PersistentIndex index = run.persistentIndex;
+        // directory not changed since the last crawl - its files are queued as unchanged, its sub directories visited
+        List<File> knownFiles = new ArrayList<>();
+        List<File> knownSubDirs = (index == null) ? null : index.unchangedSubDirectories(root, attrs, knownFiles);
+        if (knownSubDirs != null) {
+            for (File file : knownFiles) {
+                // same file reachable twice (hard link, duplicate root) is queued once, as in a listed directory
+                if (scope.accept(file, null) && run.visitedIndex.markFile(file)) {
+                    batch.add(file);
+                }
+            }
+            for (File subDir : knownSubDirs) {
+                PathFilter.Scope subScope = scope.enter(subDir);
+                if (subScope != null) {
+                    crawl(subDir, null, subScope);
+                }
+            }
+            return;
+        }
+        // sub directories are crawled after the listing is closed (keeps one open directory stream at a time)
+        final List<File> subDirs = new ArrayList<>(), files = new ArrayList<>();
+        final List<BasicFileAttributes> subDirAttrs = new ArrayList<>();
+        try {
+            lister.list(root, fileFilter, new DirectoryLister.EntryVisitor() {
+                public void visit(File entry, BasicFileAttributes entryAttrs, boolean isDirectory) throws InterruptedException {
+                    if (isDirectory) {
+                        subDirs.add(entry);
+                        subDirAttrs.add(entryAttrs);
+                    }
+                    else if (scope.accept(entry, entryAttrs) && !alreadyIndexed(entry, entryAttrs)) {
+                        files.add(entry);
+                        // unchanged since the last crawl - queued all the same, the consumer takes its recorded terms
+                        if (index != null) {
+                            index.fileUnchanged(entry, entryAttrs);
+                        }
+                        batch.add(entry);
+                    }
+                }
+            });
+            if (index != null) {
+                index.recordDirectory(root, attrs, subDirs, files);
+            }
+        } catch (IOException e) {
+            // directory can not be read - skip it
+            return;
+        }
+        // if entry is directory - recursion call for files
+        for (int i = 0; i < subDirs.size(); i++) {
+            PathFilter.Scope subScope = scope.enter(subDirs.get(i));
+            if (subScope != null) {
+                crawl(subDirs.get(i), subDirAttrs.get(i), subScope);
+            }
+        }
+    }
+}
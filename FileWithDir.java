@@ -2,31 +2,57 @@ import java.io.File;
 
 /**
  * FileWithDir class representing File with having possible future properties related to file
- *          - currently only storing File file
+ *          - currently only storing File file (found files are kept as IDs in a PathArena, a FileWithDir is created
+ *            when they are handed out)
  */
 public class FileWithDir {
-    public File file;
+    public final File file;
 
 
     public FileWithDir(File file) {
         this.file = file;
     }
 
+    /**
+     * Constructor creating the file from a path store
+     * @param paths path store holding the file
+     * @param id    ID of the file in it
+     */
+    public FileWithDir(PathArena paths, int id) {
+        this(paths.fileOf(id));
+    }
+
+    /**
+     * @return file
+     */
+    public File getFile() {
+        return file;
+    }
+
     /**
      * Overriding equals method for comparing 2 files (in contains())
      * @param other other file
-     * @return true if both files are same or false
+     * @return true if both files have the same path or false
      */
     @Override
     public boolean equals(Object other) {
         if (other != null && other.getClass() == this.getClass()) {
-            if (this.file == ((FileWithDir) other).file) {
+            if (this.file.equals(((FileWithDir) other).file)) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Overriding hashCode method - consistent with equals, so FileWithDir can be used in hash based collections
+     * @return hash of file path
+     */
+    @Override
+    public int hashCode() {
+        return file.hashCode();
+    }
+
     /**
      * Overriding toString method
      * @return file
@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class - lock free log-linear histogram of durations (HdrHistogram style, no dependency)
+ *          - every power of two range is split into SUB_BUCKETS linear buckets, so the relative error stays
+ *            below 1 / SUB_BUCKETS (12.5%) from nanoseconds up to hours with a fixed 512 counters
+ *          - record is one atomic increment, many threads can record at once
+ */
+public class LatencyHistogram {
+    /**
+     * Bits of the linear sub buckets per power of two
+     */
+    private static final int SUB_BITS = 3;
+    /**
+     * Num of linear buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Counts per bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    /**
+     * Num of recorded values and their sum
+     */
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+    /**
+     * Largest recorded value
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record - adds one duration
+     *
+     * @param nanos duration in nanoseconds (negative values count as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @return num of recorded values
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return mean of recorded values in nanoseconds
+     */
+    public double mean() {
+        long n = count.sum();
+        return (n == 0) ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return largest recorded value in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * percentile - value below which the given share of the recorded values lie
+     *
+     * @param percent 0 - 100
+     * @return upper bound of the bucket holding the percentile, in nanoseconds (0 if nothing was recorded)
+     */
+    public long percentile(double percent) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * reset - forgets all recorded values (not atomic with concurrent record calls)
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * summary - text form for snapshots
+     *
+     * @return count, p50, p90, p99 and max in microseconds
+     */
+    public String summary() {
+        return String.format("n=%d p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+                count(), percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, max() / 1e3);
+    }
+
+    /**
+     * bucketOf - index of the bucket holding the value
+     *
+     * @param value non negative value
+     * @return bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * upperBound - largest value that falls into the bucket
+     *
+     * @param bucket bucket index
+     * @return upper bound of the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
@@ -0,0 +1,472 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ListingCache class - directory listings kept between crawls (DirectoryLister.cached)
+ *          - directory path -> mtime of the directory, names of its entries and their attributes as the lister read them
+ *          - a listing is reused while the directory mtime is the same (one stat instead of readdir + a stat per entry),
+ *            so overlapping roots and repeated crawls of an unchanged tree hardly touch the file system
+ *          - the directory mtime only changes when entries are added, removed or renamed - size and mtime of the
+ *            files may be older than the listing, that is what the TTL bounds
+ *          - bounded LRU on the num of entries (files + directories), listings older than the TTL are listed again
+ *          - a directory changed less than RACY_MILLIS before it was listed is not cached (a change in the same mtime
+ *            tick would not be noticed)
+ *          - optionally spilled to a local file when a crawl ends and loaded by the next process (same format rules as
+ *            the checkpoint: magic, version, written to a temp file and renamed)
+ *          - one cache per JVM is shared by all crawls with the same settings
+ *          - entries carry the file system key as the lister read it, the same key VisitedIndex builds for roots
+ *          - the spill file keeps names and types only (a file system key can not be read back), entries of a loaded
+ *            listing are handed without attributes until the directory is listed again
+ *          - size and mtime of an entry may be up to the TTL old - a crawl comparing them (persistent index, size / mtime
+ *            limits) is handed no cached attributes, the entries are read again
+ */
+public class ListingCache {
+    /**
+     * First int of the spill file and its format version
+     */
+    private static final int MAGIC = 0x4C535443, VERSION = 2;
+    /**
+     * Directories modified this recently when listed are not cached
+     */
+    static final long RACY_MILLIS = 2000;
+    /**
+     * Attribute flags of an entry
+     */
+    private static final byte DIRECTORY = 1, REGULAR = 2, OTHER = 4;
+
+    /**
+     * Cache shared by the crawls of this JVM (replaced when the settings change)
+     */
+    private static ListingCache shared;
+
+    /**
+     * Max num of entries kept (all listings together)
+     */
+    private final int maxEntries;
+    /**
+     * Max age of a listing in millis
+     */
+    private final long ttlMillis;
+    /**
+     * Spill file (null - memory only)
+     */
+    private final File spillFile;
+    /**
+     * Directory path -> listing, in access order (guarded by this)
+     */
+    private final LinkedHashMap<String, Listing> listings = new LinkedHashMap<>(256, 0.75f, true);
+    /**
+     * Num of entries of all listings (guarded by this)
+     */
+    private long entries = 0;
+    /**
+     * Listings reused, listed (not cached / changed / expired) and evicted
+     */
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), changed = new LongAdder(), expired = new LongAdder(),
+            evicted = new LongAdder();
+
+    /**
+     * Constructor initializing the limits
+     *
+     * @param maxEntries max num of entries kept
+     * @param ttlMillis  max age of a listing in millis
+     * @param spillFile  spill file (null - memory only)
+     */
+    public ListingCache(int maxEntries, long ttlMillis, File spillFile) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * open - cache of the crawl: the shared one if it has the same settings, otherwise a new one loaded from the spill file
+     *
+     * @param config listingCacheSize, listingCacheTtl and listingCacheFile
+     * @return cache
+     */
+    public static synchronized ListingCache open(CrawlConfig config) {
+        ListingCache cache = shared;
+        long ttlMillis = config.listingCacheTtl * 1000L;
+        if (cache == null || cache.maxEntries != config.listingCacheSize || cache.ttlMillis != ttlMillis
+                || !Objects.equals(cache.spillFile, config.listingCacheFile)) {
+            cache = new ListingCache(config.listingCacheSize, ttlMillis, config.listingCacheFile);
+            if (cache.spillFile != null && cache.spillFile.exists()) {
+                try {
+                    cache.load();
+                } catch (IOException e) {
+                    System.out.println("Listing cache could not be loaded, starting empty: " + e.getMessage());
+                    cache = new ListingCache(config.listingCacheSize, ttlMillis, config.listingCacheFile);
+                }
+            }
+            shared = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * get - listing of the directory if it is still valid
+     *
+     * @param directory directory about to be listed
+     * @param mtime     current mtime of the directory in millis
+     * @return listing, null - list the directory
+     */
+    public synchronized Listing get(File directory, long mtime) {
+        String path = directory.getPath();
+        Listing listing = listings.get(path);
+        if (listing == null) {
+            misses.increment();
+            return null;
+        }
+        if (listing.mtime != mtime) {
+            changed.increment();
+        } else if (System.currentTimeMillis() - listing.listedAt > ttlMillis) {
+            expired.increment();
+        } else {
+            hits.increment();
+            return listing;
+        }
+        remove(path);
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * put - keeps a complete listing, evicts the least recently used ones over maxEntries
+     *
+     * @param directory directory listed
+     * @param listing   its listing
+     */
+    public synchronized void put(File directory, Listing listing) {
+        // changed just before it was listed - a change in the same mtime tick would not be noticed
+        if (listing.listedAt - listing.mtime < RACY_MILLIS || listing.size() > maxEntries) {
+            return;
+        }
+        String path = directory.getPath();
+        remove(path);
+        listings.put(path, listing);
+        entries += listing.size();
+        Iterator<Map.Entry<String, Listing>> eldest = listings.entrySet().iterator();
+        while (entries > maxEntries && eldest.hasNext()) {
+            entries -= eldest.next().getValue().size();
+            eldest.remove();
+            evicted.increment();
+        }
+    }
+
+    /**
+     * save - writes the listings to the spill file (nothing without one), oldest first so the LRU order survives
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save() throws IOException {
+        if (spillFile == null) {
+            return;
+        }
+        File temp = new File(spillFile.getPath() + ".tmp");
+        long now = System.currentTimeMillis();
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // access order iteration does not count as access
+            List<Map.Entry<String, Listing>> valid = new ArrayList<>();
+            for (Map.Entry<String, Listing> e : listings.entrySet()) {
+                if (now - e.getValue().listedAt <= ttlMillis) {
+                    valid.add(e);
+                }
+            }
+            out.writeInt(valid.size());
+            for (Map.Entry<String, Listing> e : valid) {
+                out.writeUTF(e.getKey());
+                e.getValue().write(out);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), spillFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * finish - prints the summary and spills the cache (called when a crawl ends, also when cancelled - the cached
+     *          listings are complete)
+     */
+    public void finish() {
+        System.out.println(summary());
+        try {
+            save();
+        } catch (IOException e) {
+            System.out.println("Listing cache could not be saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * summary - hits since the last summary and size of the cache
+     *
+     * @return text summary
+     */
+    public synchronized String summary() {
+        return String.format("Listing cache: %d reused, %d listed (%d changed, %d expired), %d directories / %d entries cached, %d evicted",
+                hits.sumThenReset(), misses.sumThenReset(), changed.sumThenReset(), expired.sumThenReset(), listings.size(), entries,
+                evicted.sumThenReset());
+    }
+
+    /**
+     * load - reads the spill file, expired listings are dropped
+     *
+     * @throws IOException if the file can not be read or is not a listing cache
+     */
+    private synchronized void load() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(spillFile + " is not a listing cache of this version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Listing listing = Listing.read(in);
+                if (now - listing.listedAt <= ttlMillis) {
+                    put(new File(path), listing);
+                }
+            }
+        }
+    }
+
+    /**
+     * remove - drops a listing
+     *
+     * @param path directory path
+     */
+    private void remove(String path) {
+        Listing old = listings.remove(path);
+        if (old != null) {
+            entries -= old.size();
+        }
+    }
+
+    /**
+     * Listing class - entries of one directory (read only once built)
+     */
+    public static class Listing {
+        /**
+         * Mtime of the directory when listed and time of the listing (epoch millis)
+         */
+        final long mtime, listedAt;
+        /**
+         * Names of the entries
+         */
+        private final String[] names;
+        /**
+         * True for sub directories
+         */
+        private final boolean[] directories;
+        /**
+         * Attributes of the entries (null - the backend did not read them)
+         */
+        private final CachedAttributes[] attributes;
+
+        private Listing(long mtime, long listedAt, String[] names, boolean[] directories, CachedAttributes[] attributes) {
+            this.mtime = mtime;
+            this.listedAt = listedAt;
+            this.names = names;
+            this.directories = directories;
+            this.attributes = attributes;
+        }
+
+        /**
+         * @return num of entries
+         */
+        int size() {
+            return names.length;
+        }
+
+        /**
+         * visit - hands the entries to the visitor like the lister did (files only if the filter accepts them)
+         *
+         * @param directory  listed directory
+         * @param fileFilter filter of the files
+         * @param visitor    visitor of the crawl
+         * @param attributes false - entries are handed without attributes (the visitor reads size and mtime again)
+         * @throws InterruptedException if the visitor was interrupted
+         */
+        void visit(File directory, java.io.FileFilter fileFilter, DirectoryLister.EntryVisitor visitor, boolean attributes) throws InterruptedException {
+            for (int i = 0; i < names.length; i++) {
+                File entry = new File(directory, names[i]);
+                if (directories[i] || fileFilter.accept(entry)) {
+                    visitor.visit(entry, attributes ? this.attributes[i] : null, directories[i]);
+                }
+            }
+        }
+
+        /**
+         * write - one listing of the spill file (names and types, attributes are not kept)
+         *
+         * @param out spill file
+         * @throws IOException if it can not be written
+         */
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(mtime);
+            out.writeLong(listedAt);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+                out.writeBoolean(directories[i]);
+            }
+        }
+
+        /**
+         * read - one listing of the spill file
+         *
+         * @param in spill file
+         * @return listing
+         * @throws IOException if it can not be read
+         */
+        private static Listing read(DataInputStream in) throws IOException {
+            long mtime = in.readLong(), listedAt = in.readLong();
+            int count = in.readInt();
+            Builder builder = new Builder(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                builder.add(name, (CachedAttributes) null, in.readBoolean());
+            }
+            return builder.build(mtime, listedAt);
+        }
+    }
+
+    /**
+     * Builder class - collects the entries of a directory while it is listed
+     */
+    static class Builder {
+        private String[] names;
+        private boolean[] directories;
+        private CachedAttributes[] attributes;
+        private int size = 0;
+
+        Builder(int capacity) {
+            names = new String[Math.max(1, capacity)];
+            directories = new boolean[names.length];
+            attributes = new CachedAttributes[names.length];
+        }
+
+        /**
+         * add - adds an entry read by the lister
+         *
+         * @param name        name of the entry
+         * @param attrs       attributes read by the lister (null - not read)
+         * @param isDirectory true for a sub directory
+         */
+        void add(String name, BasicFileAttributes attrs, boolean isDirectory) {
+            add(name, (attrs == null) ? null : CachedAttributes.of(attrs), isDirectory);
+        }
+
+        private void add(String name, CachedAttributes attrs, boolean isDirectory) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                directories = Arrays.copyOf(directories, size * 2);
+                attributes = Arrays.copyOf(attributes, size * 2);
+            }
+            names[size] = name;
+            directories[size] = isDirectory;
+            attributes[size] = attrs;
+            size++;
+        }
+
+        /**
+         * build - listing of the entries added
+         *
+         * @param mtime    mtime of the directory before it was listed
+         * @param listedAt time the listing started
+         * @return listing
+         */
+        Listing build(long mtime, long listedAt) {
+            return new Listing(mtime, listedAt, Arrays.copyOf(names, size), Arrays.copyOf(directories, size),
+                    Arrays.copyOf(attributes, size));
+        }
+    }
+
+    /**
+     * CachedAttributes class - the part of BasicFileAttributes the crawl uses (type, size, mtime, file key), small enough
+     *          to be kept per entry and written to the spill file
+     *          - access and creation time are not kept (mtime is returned)
+     *          - file key is the object of the file system as read (VisitedIndex dedupes hard links and detects symlink
+     *            loops across fresh and cached entries)
+     */
+    static class CachedAttributes implements BasicFileAttributes {
+        final byte flags;
+        final long size, modified;
+        final Object key;
+
+        CachedAttributes(byte flags, long size, long modified, Object key) {
+            this.flags = flags;
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+        }
+
+        /**
+         * of - copies attributes read by a lister
+         *
+         * @param attrs attributes
+         * @return cached attributes
+         */
+        static CachedAttributes of(BasicFileAttributes attrs) {
+            byte flags = attrs.isDirectory() ? DIRECTORY : attrs.isRegularFile() ? REGULAR : OTHER;
+            return new CachedAttributes(flags, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey());
+        }
+
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(modified);
+        }
+
+        public FileTime lastAccessTime() {
+            return FileTime.fromMillis(modified);
+        }
+
+        public FileTime creationTime() {
+            return FileTime.fromMillis(modified);
+        }
+
+        public boolean isRegularFile() {
+            return (flags & REGULAR) != 0;
+        }
+
+        public boolean isDirectory() {
+            return (flags & DIRECTORY) != 0;
+        }
+
+        public boolean isSymbolicLink() {
+            // attributes are read following links
+            return false;
+        }
+
+        public boolean isOther() {
+            return (flags & OTHER) != 0;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public Object fileKey() {
+            return key;
+        }
+    }
+}
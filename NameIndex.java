@@ -0,0 +1,368 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NameIndex class - in-memory index of the file names of one crawl, answers repeated searches without crawling again
+ *          - every lower case name is split into trigrams (3 consecutive characters), trigram -> sorted IDs of the
+ *            files whose name contains it
+ *          - a literal term of 3+ characters only checks the files in the intersection of its trigram lists (rarest
+ *            list first), a glob uses its longest literal part, shorter terms and regex scan all names
+ *          - candidates are checked with the same NameMatcher as the crawl, so results equal a Task2 search of the term
+ *          - posting lists are delta + varint encoded byte arrays once built (1-2 bytes per entry instead of 4),
+ *            paths are IDs of a shared PathArena
+ *          - built like the other aggregates: every consumer fills its own partial, partials are merged and frozen once
+ *            at the end - a frozen index is read only and can be queried by many threads
+ */
+public class NameIndex {
+    /**
+     * Paths of the files - shared by all partials
+     */
+    private final PathArena paths;
+    /**
+     * Files added (path IDs)
+     */
+    private final PathArena.IdList files = new PathArena.IdList();
+    /**
+     * Trigram -> IDs of the files whose name contains it, while building (null once frozen)
+     */
+    private Map<Long, PathArena.IdList> building = new HashMap<>();
+
+    /**
+     * Frozen index: trigrams (sorted), encoded posting list and num of IDs per trigram, all file IDs (sorted)
+     */
+    private long[] trigrams;
+    private byte[][] postings;
+    private int[] postingSizes;
+    private int[] fileIds;
+    /**
+     * Bytes of the encoded posting lists
+     */
+    private long postingBytes = 0;
+
+    /**
+     * Constructor initializing path store
+     *
+     * @param paths path store shared by all partials of a crawl
+     */
+    public NameIndex(PathArena paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * add - adds file taken from the queue (partial of one consumer, not thread safe)
+     *
+     * @param file file
+     */
+    public void add(File file) {
+        int id = paths.idOf(file);
+        files.add(id);
+        String name = file.getName();
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            Long key = trigram(name, i);
+            PathArena.IdList list = building.get(key);
+            if (list == null) {
+                list = new PathArena.IdList();
+                building.put(key, list);
+            }
+            // the same trigram twice in one name - listed once
+            if (list.size() == 0 || list.get(list.size() - 1) != id) {
+                list.add(id);
+            }
+        }
+    }
+
+    /**
+     * merge - adds files of another consumer to this one
+     *
+     * @param other partial of another consumer
+     */
+    public void merge(NameIndex other) {
+        files.addAll(other.files);
+        for (Map.Entry<Long, PathArena.IdList> e : other.building.entrySet()) {
+            PathArena.IdList list = building.get(e.getKey());
+            if (list == null) {
+                building.put(e.getKey(), e.getValue());
+            } else {
+                list.addAll(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * mergeAll - merges the partials of all consumers into the first one and freezes it (called once, after all
+     *            consumers are done)
+     *
+     * @param partials partials (not empty)
+     * @return frozen index
+     */
+    public static NameIndex mergeAll(List<NameIndex> partials) {
+        NameIndex merged = partials.get(0);
+        for (int i = 1; i < partials.size(); i++) {
+            merged.merge(partials.get(i));
+        }
+        merged.freeze();
+        return merged;
+    }
+
+    /**
+     * freeze - sorts and encodes the posting lists, no more files can be added
+     */
+    void freeze() {
+        trigrams = new long[building.size()];
+        int k = 0;
+        for (Long key : building.keySet()) {
+            trigrams[k++] = key;
+        }
+        Arrays.sort(trigrams);
+        postings = new byte[trigrams.length][];
+        postingSizes = new int[trigrams.length];
+        for (int t = 0; t < trigrams.length; t++) {
+            int[] ids = toSortedArray(building.get(trigrams[t]));
+            postings[t] = encode(ids);
+            postingSizes[t] = ids.length;
+            postingBytes += postings[t].length;
+        }
+        fileIds = toSortedArray(files);
+        building = null;
+    }
+
+    /**
+     * query - files whose name matches the term, same rules as a Task2 search (literal substring, glob or regex:)
+     *
+     * @param term     search term
+     * @param maxFiles max num of files added to found
+     * @param found    list the first maxFiles matching files are added to
+     * @return num of matching files
+     */
+    public int query(String term, int maxFiles, List<File> found) {
+        NameMatcher matcher = NameMatcher.compile(term);
+        String literal = requiredLiteral(term);
+        int[] candidates = (literal == null) ? fileIds : candidates(literal);
+        int count = 0;
+        for (int id : candidates) {
+            if (matcher.matches(paths.nameOf(id))) {
+                if (count < maxFiles) {
+                    found.add(paths.fileOf(id));
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return num of files indexed
+     */
+    public int size() {
+        return fileIds.length;
+    }
+
+    /**
+     * summary - size of the index
+     *
+     * @return num of files, trigrams and bytes of the posting lists
+     */
+    public String summary() {
+        return String.format("Name index: %d files, %d trigrams, %s of posting lists, %s", fileIds.length, trigrams.length,
+                FileAggregates.human(postingBytes), paths.summary());
+    }
+
+    /**
+     * candidates - files whose lower case name contains every trigram of the literal
+     *
+     * @param literal lower case literal of 3+ characters
+     * @return sorted file IDs (a superset of the matches)
+     */
+    private int[] candidates(String literal) {
+        List<Integer> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= literal.length(); i++) {
+            int t = Arrays.binarySearch(trigrams, trigram(literal, i));
+            if (t < 0) {
+                // a trigram no name has - nothing can match
+                return new int[0];
+            }
+            if (!lists.contains(t)) {
+                lists.add(t);
+            }
+        }
+        // rarest list first - the intersection never grows
+        lists.sort((a, b) -> Integer.compare(postingSizes[a], postingSizes[b]));
+        int[] result = decode(lists.get(0));
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, decode(lists.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * requiredLiteral - longest part of the term every matching name contains (lower case)
+     *
+     * @param term search term
+     * @return literal of 3+ characters, null if there is none (short term, regex) - all names are scanned
+     */
+    static String requiredLiteral(String term) {
+        if (term.startsWith("regex:")) {
+            return null;
+        }
+        String literal = term;
+        boolean glob = term.startsWith("glob:");
+        if (glob || term.indexOf('*') >= 0 || term.indexOf('?') >= 0 || term.indexOf('[') >= 0) {
+            literal = longestLiteral(glob ? term.substring("glob:".length()) : term);
+        }
+        if (literal.length() < 3) {
+            return null;
+        }
+        char[] lower = new char[literal.length()];
+        for (int i = 0; i < lower.length; i++) {
+            lower[i] = Character.toLowerCase(literal.charAt(i));
+        }
+        return new String(lower);
+    }
+
+    /**
+     * longestLiteral - longest run of plain characters of a glob outside [...] and {...}
+     *
+     * @param glob glob
+     * @return literal part (may be empty)
+     */
+    private static String longestLiteral(String glob) {
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char ch = glob.charAt(i);
+            boolean plain = false;
+            switch (ch) {
+                case '[':
+                case '{':
+                    depth++;
+                    break;
+                case ']':
+                case '}':
+                    depth = Math.max(0, depth - 1);
+                    break;
+                case '*':
+                case '?':
+                case '\\':
+                    break;
+                default:
+                    plain = depth == 0;
+            }
+            if (plain) {
+                run.append(ch);
+            } else {
+                if (run.length() > longest.length()) {
+                    longest = run.toString();
+                }
+                run.setLength(0);
+            }
+        }
+        return (run.length() > longest.length()) ? run.toString() : longest;
+    }
+
+    /**
+     * trigram - three lower case characters packed into a long
+     *
+     * @param text text
+     * @param i    position of the first character
+     * @return key
+     */
+    private static long trigram(String text, int i) {
+        return ((long) Character.toLowerCase(text.charAt(i)) << 32) | ((long) Character.toLowerCase(text.charAt(i + 1)) << 16)
+                | Character.toLowerCase(text.charAt(i + 2));
+    }
+
+    /**
+     * toSortedArray - sorted IDs without duplicates
+     *
+     * @param list IDs
+     * @return sorted array
+     */
+    private static int[] toSortedArray(PathArena.IdList list) {
+        int[] ids = new int[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.get(i);
+        }
+        Arrays.sort(ids);
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (n == 0 || ids[i] != ids[n - 1]) {
+                ids[n++] = ids[i];
+            }
+        }
+        return (n == ids.length) ? ids : Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * encode - sorted IDs as varint encoded gaps
+     *
+     * @param ids sorted IDs
+     * @return encoded list
+     */
+    private static byte[] encode(int[] ids) {
+        byte[] bytes = new byte[ids.length * 5];
+        int pos = 0, previous = 0;
+        for (int id : ids) {
+            int gap = id - previous;
+            previous = id;
+            while ((gap & ~0x7F) != 0) {
+                bytes[pos++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[pos++] = (byte) gap;
+        }
+        return Arrays.copyOf(bytes, pos);
+    }
+
+    /**
+     * decode - IDs of a posting list
+     *
+     * @param t index of the trigram
+     * @return sorted IDs
+     */
+    private int[] decode(int t) {
+        byte[] bytes = postings[t];
+        int[] ids = new int[postingSizes[t]];
+        int pos = 0, previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int gap = 0, shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += gap;
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    /**
+     * intersect - IDs in both sorted arrays
+     *
+     * @param a sorted IDs
+     * @param b sorted IDs
+     * @return sorted IDs in both
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
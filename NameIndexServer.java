@@ -0,0 +1,149 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NameIndexServer class - answers searches from a NameIndex over a local socket
+ *          - listens on the loopback address only, every connection is served by its own daemon thread
+ *          - line protocol (UTF-8): one search term per line, the answer is one path per line followed by
+ *            "# <num> files in <millis> ms" (e.g. "printf 'report\n' | nc localhost 7070")
+ *          - the answer format is shared with the interactive prompt of Task2_Main (answer method)
+ */
+public class NameIndexServer implements Runnable {
+    /**
+     * Max num of paths in one answer (the count is always complete)
+     */
+    static final int MAX_FILES = 1000;
+
+    /**
+     * Index searched (frozen - read only)
+     */
+    private final NameIndex index;
+    /**
+     * Listening socket
+     */
+    private final ServerSocket server;
+
+    /**
+     * Constructor binding the socket
+     *
+     * @param index frozen index
+     * @param port  port on the loopback address (0 - any free port)
+     * @throws IOException port can not be bound
+     */
+    public NameIndexServer(NameIndex index, int port) throws IOException {
+        this.index = index;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * start - accepts connections on a daemon thread
+     */
+    public void start() {
+        Thread thread = new Thread(this, "name-index-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * close - stops accepting connections
+     */
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    /**
+     * run - accepts connections until closed
+     */
+    public void run() {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                Thread client = new Thread(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "name-index-client");
+                client.setDaemon(true);
+                client.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.out.println("Name index server: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * serve - answers the terms of one connection until it is closed
+     *
+     * @param socket connection
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String term;
+            while ((term = in.readLine()) != null) {
+                if (term.isEmpty()) {
+                    continue;
+                }
+                answer(index, term, MAX_FILES, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    /**
+     * answer - writes the matching paths and a count line
+     *
+     * @param index    frozen index
+     * @param term     search term (literal, glob or regex:)
+     * @param maxFiles max num of paths written
+     * @param out      output
+     * @return num of matching files
+     */
+    static int answer(NameIndex index, String term, int maxFiles, PrintWriter out) {
+        long start = System.nanoTime();
+        List<File> found = new ArrayList<>();
+        int count;
+        try {
+            count = index.query(term, maxFiles, found);
+        } catch (IllegalArgumentException e) {
+            // invalid glob / regex
+            out.println("# invalid term: " + e.getMessage());
+            return 0;
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        for (File file : found) {
+            out.println(file.getPath());
+        }
+        if (count > found.size()) {
+            out.println("# first " + found.size() + " shown");
+        }
+        out.println(String.format("# %d files in %.3f ms", count, millis));
+        return count;
+    }
+}
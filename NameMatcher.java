@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * NameMatcher interface - search term compiled once, then matched against every file name by the Indexer
+ *          - "regex:..."              - explicit regular expression, found anywhere in the name (case insensitive)
+ *          - "glob:..." or * ? [ used - glob matched against the whole file name (PathMatcher glob syntax, case insensitive)
+ *          - anything else            - literal case insensitive substring (Boyer-Moore-Horspool, no allocation per name)
+ */
+public interface NameMatcher {
+
+    /**
+     * matches - checks file name against the compiled search term
+     *
+     * @param name file name (without directory)
+     * @return true if name matches
+     */
+    boolean matches(String name);
+
+    /**
+     * compile - picks the fastest strategy for the search term
+     *
+     * @param query search term entered by the user
+     * @return compiled matcher
+     */
+    static NameMatcher compile(String query) {
+        if (query.startsWith("regex:")) {
+            return new RegexMatcher(query.substring("regex:".length()));
+        }
+        if (query.startsWith("glob:")) {
+            return new GlobMatcher(query.substring("glob:".length()));
+        }
+        if (query.indexOf('*') >= 0 || query.indexOf('?') >= 0 || query.indexOf('[') >= 0) {
+            return new GlobMatcher(query);
+        }
+        return new SubstringMatcher(query);
+    }
+
+    /**
+     * SubstringMatcher class - case insensitive substring search using Boyer-Moore-Horspool
+     *          - pattern is lower cased once, name characters are lower cased while comparing (no String created)
+     *          - regex metacharacters in the search term are plain characters here
+     */
+    class SubstringMatcher implements NameMatcher {
+        /**
+         * Lower case pattern (same per character folding as used for names)
+         */
+        private final char[] pattern;
+        /**
+         * Shift table for characters below 256 - other characters are looked up in the pattern (shiftOf)
+         */
+        private final int[] shift = new int[256];
+        /**
+         * True if the pattern has characters above 255 (before its last one)
+         */
+        private final boolean wide;
+
+        /**
+         * Constructor builds shift table
+         *
+         * @param term literal search term
+         */
+        SubstringMatcher(String term) {
+            this.pattern = new char[term.length()];
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = Character.toLowerCase(term.charAt(i));
+            }
+            Arrays.fill(shift, pattern.length);
+            boolean wide = false;
+            for (int i = 0; i < pattern.length - 1; i++) {
+                if (pattern[i] < 256) {
+                    shift[pattern[i]] = pattern.length - 1 - i;
+                } else {
+                    wide = true;
+                }
+            }
+            this.wide = wide;
+        }
+
+        public boolean matches(String name) {
+            int m = pattern.length;
+            int n = name.length();
+            if (m == 0) {
+                return true;
+            }
+            int pos = 0;
+            while (pos <= n - m) {
+                int j = m - 1;
+                while (j >= 0 && Character.toLowerCase(name.charAt(pos + j)) == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return true;
+                }
+                pos += shiftOf(Character.toLowerCase(name.charAt(pos + m - 1)));
+            }
+            return false;
+        }
+
+        /**
+         * shiftOf - distance from the last occurrence of ch in the pattern (without its last character) to the end
+         *
+         * @param ch lower case character of the name under the end of the pattern
+         * @return shift, pattern length if ch is not in the pattern
+         */
+        private int shiftOf(char ch) {
+            if (ch < 256) {
+                return shift[ch];
+            }
+            if (wide) {
+                for (int i = pattern.length - 2; i >= 0; i--) {
+                    if (pattern[i] == ch) {
+                        return pattern.length - 1 - i;
+                    }
+                }
+            }
+            return pattern.length;
+        }
+    }
+
+    /**
+     * GlobMatcher class - glob matched against the whole file name
+     *          - same syntax as PathMatcher globs (* ? [...] [!...] {a,b}), translated to a regular expression once
+     *          - case insensitive like the other strategies (*.TXT matches file.txt)
+     *          - names are matched as strings, so a name the platform charset can not encode as Path still matches
+     */
+    class GlobMatcher implements NameMatcher {
+        /**
+         * Compiled glob
+         */
+        private final Pattern pattern;
+
+        /**
+         * Constructor compiles the glob
+         *
+         * @param glob glob pattern, e.g. *.txt
+         */
+        GlobMatcher(String glob) {
+            this.pattern = Pattern.compile(toRegex(glob), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+
+        public boolean matches(String name) {
+            return pattern.matcher(name).matches();
+        }
+
+        /**
+         * toRegex - translates glob to regular expression
+         *
+         * @param glob glob pattern
+         * @return regular expression matching the whole name
+         */
+        static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            boolean inGroup = false;
+            for (int i = 0; i < glob.length(); i++) {
+                char ch = glob.charAt(i);
+                switch (ch) {
+                    case '*':
+                        regex.append("[^/]*");
+                        break;
+                    case '?':
+                        regex.append("[^/]");
+                        break;
+                    case '[': {
+                        int end = glob.indexOf(']', i + 2);
+                        if (end < 0) {
+                            regex.append("\\[");
+                            break;
+                        }
+                        String set = glob.substring(i + 1, end);
+                        regex.append('[');
+                        if (set.startsWith("!")) {
+                            regex.append('^');
+                            set = set.substring(1);
+                        }
+                        regex.append(set.replace("\\", "\\\\").replace("[", "\\[").replace("&", "\\&")).append(']');
+                        i = end;
+                        break;
+                    }
+                    case '{':
+                        regex.append("(?:");
+                        inGroup = true;
+                        break;
+                    case '}':
+                        regex.append(inGroup ? ")" : "\\}");
+                        inGroup = false;
+                        break;
+                    case ',':
+                        regex.append(inGroup ? "|" : ",");
+                        break;
+                    case '\\':
+                        if (i + 1 < glob.length()) {
+                            regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                        }
+                        break;
+                    default:
+                        regex.append(Pattern.quote(String.valueOf(ch)));
+                }
+            }
+            if (inGroup) {
+                regex.append(')');
+            }
+            return regex.toString();
+        }
+    }
+
+    /**
+     * RegexMatcher class - explicit regular expression compiled once, found anywhere in the name
+     */
+    class RegexMatcher implements NameMatcher {
+        /**
+         * Compiled pattern
+         */
+        private final Pattern pattern;
+
+        /**
+         * Constructor compiles the pattern
+         *
+         * @param regex regular expression
+         */
+        RegexMatcher(String regex) {
+            this.pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+
+        public boolean matches(String name) {
+            return pattern.matcher(name).find();
+        }
+    }
+}
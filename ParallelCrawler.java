@@ -0,0 +1,392 @@
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelCrawler class - work-stealing traversal engine used by FileCrawler (producer)
+ *          - every sub directory becomes a DirectoryTask (RecursiveAction) which idle workers of the ForkJoinPool can steal
+ *          - several roots (and several FileCrawlers) can share one pool
+ *          - with a thread-per-task executor (virtual threads) every directory listing runs on its own thread instead
+ *          - found files are put into the same FileBatchQueue as the recursive crawler, so Indexer (consumer) classes do not change
+ *          - every task carries the PathFilter scope of its directory - excluded sub directories get no task at all
+ */
+public class ParallelCrawler {
+    /**
+     * Pool running the directory tasks (ForkJoinPool or thread-per-task executor) - can be shared between crawlers
+     */
+    private final ExecutorService pool;
+    /**
+     * FileQueue adding files into
+     */
+    private final FileBatchQueue fileQueue;
+    /**
+     * FileFilter - directories are always accepted
+     */
+    private final FileFilter fileFilter;
+    /**
+     * Backend listing the directories
+     */
+    private final DirectoryLister lister;
+    /**
+     * visitedIndex to check the file / directory is already indexed or not
+     */
+    private final VisitedIndex visitedIndex;
+    /**
+     * Index of the last crawl - unchanged files are queued but not read again (null - full crawl)
+     */
+    private PersistentIndex persistentIndex;
+    /**
+     * Checkpoint told which directories are discovered and listed (null - no checkpoints)
+     */
+    private CrawlCheckpoint checkpoint;
+    /**
+     * Filter evaluated while listing (excluded sub directories are pruned)
+     */
+    private PathFilter pathFilter = PathFilter.NONE;
+
+    /**
+     * Constructor initializing pool, fileQueue, fileFilter, visitedIndex, lister
+     *
+     * @param pool         ForkJoinPool or thread-per-task executor to run directory tasks on
+     * @param fileQueue    batched queue shared with consumers
+     * @param fileFilter   filter to accept file's pathname
+     * @param visitedIndex index shared by all crawlers
+     * @param lister       backend listing the directories
+     */
+    public ParallelCrawler(ExecutorService pool, FileBatchQueue fileQueue, FileFilter fileFilter, VisitedIndex visitedIndex, DirectoryLister lister) {
+        this.pool = pool;
+        this.fileQueue = fileQueue;
+        this.fileFilter = fileFilter;
+        this.visitedIndex = visitedIndex;
+        this.lister = lister;
+    }
+
+    /**
+     * setPersistentIndex - enables incremental crawl
+     *
+     * @param persistentIndex index of the last crawl (null - full crawl)
+     */
+    public void setPersistentIndex(PersistentIndex persistentIndex) {
+        this.persistentIndex = persistentIndex;
+    }
+
+    /**
+     * setCheckpoint - enables checkpoints of the traversal
+     *
+     * @param checkpoint checkpoint of the crawl (null - no checkpoints)
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * setPathFilter - enables pruning and filtering while listing
+     *
+     * @param pathFilter filter of the crawl (NONE - everything is crawled)
+     */
+    public void setPathFilter(PathFilter pathFilter) {
+        this.pathFilter = pathFilter;
+    }
+
+    /**
+     * newPool - creates pool for crawling
+     *
+     * @param parallelism number of worker threads listing directories (values below 1 use available processors)
+     * @return new ForkJoinPool
+     */
+    public static ForkJoinPool newPool(int parallelism) {
+        if (parallelism < 1) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * crawl - crawls all roots and waits until all of them (and their sub directories) are done
+     *          - ForkJoinPool: one DirectoryTask per directory (work stealing)
+     *          - other executors (virtual threads): one task per directory, the blocking listing gets its own thread
+     *
+     * @param roots root directories to crawl (or directories below a root of the PathFilter - resumed crawl)
+     * @throws InterruptedException if calling thread interrupted - running tasks are cancelled
+     */
+    public void crawl(File... roots) throws InterruptedException {
+        // scope of every root, null - excluded by the filter
+        PathFilter.Scope[] scopes = new PathFilter.Scope[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            scopes[i] = pathFilter.scopeOf(roots[i]);
+            if (scopes[i] != null && checkpoint != null) {
+                checkpoint.discovered(roots[i]);
+            }
+        }
+        if (!(pool instanceof ForkJoinPool)) {
+            new ThreadPerDirectoryCrawl().crawl(roots, scopes);
+            return;
+        }
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < roots.length; i++) {
+            if (scopes[i] != null) {
+                tasks.add(((ForkJoinPool) pool).submit(new DirectoryTask(roots[i], null, scopes[i])));
+            }
+        }
+        try {
+            for (ForkJoinTask<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            for (ForkJoinTask<Void> task : tasks) {
+                task.cancel(true);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * listDirectory - lists one directory, puts its files into queue and hands every sub directory to the handler
+     *          - files of the directory are collected into batches, the last partial batch is flushed after listing
+     *          - the checkpoint sees a sub directory before its task starts, and the directory as listed only once all
+     *            its files are handed over (a cancelled or interrupted listing stays in the frontier)
+     *
+     * @param directory directory to list
+     * @param attrs     attributes of the directory read by the parent listing (null for roots)
+     * @param scope     filter scope of the directory
+     * @param subDirHandler called once per sub directory not pruned by the filter (starts its task)
+     */
+    private void listDirectory(File directory, BasicFileAttributes attrs, final PathFilter.Scope scope, final SubDirectoryHandler subDirHandler) {
+        // crawl cancelled - nothing more is listed
+        if (fileQueue.isCancelled()) {
+            return;
+        }
+        // directory already entered (duplicate root or symlink loop) - skip it
+        if (!visitedIndex.markDirectory(directory, attrs)) {
+            return;
+        }
+
+        final PersistentIndex index = persistentIndex;
+        final CrawlCheckpoint checkpoint = this.checkpoint;
+        final FileBatchQueue.Batch batch = fileQueue.newBatch();
+        // directory not changed since the last crawl - its files are queued as unchanged, its sub directories visited
+        List<File> knownFiles = new ArrayList<>();
+        List<File> knownSubDirs = (index == null) ? null : index.unchangedSubDirectories(directory, attrs, knownFiles);
+        if (knownSubDirs != null) {
+            try {
+                for (File file : knownFiles) {
+                    // same file reachable twice (hard link, duplicate root) is queued once, as in a listed directory
+                    if (scope.accept(file, null) && visitedIndex.markFile(file)) {
+                        batch.add(file);
+                    }
+                }
+                batch.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (File subDir : knownSubDirs) {
+                PathFilter.Scope subScope = scope.enter(subDir);
+                if (subScope == null) {
+                    continue;
+                }
+                if (checkpoint != null) {
+                    checkpoint.discovered(subDir);
+                }
+                subDirHandler.handle(subDir, null, subScope);
+            }
+            if (checkpoint != null) {
+                checkpoint.listed(directory);
+            }
+            return;
+        }
+
+        final List<File> subDirs = new ArrayList<>(), files = new ArrayList<>();
+        try {
+            lister.list(directory, fileFilter, new DirectoryLister.EntryVisitor() {
+                public void visit(File entry, BasicFileAttributes entryAttrs, boolean isDirectory) throws InterruptedException {
+                    if (isDirectory) {
+                        subDirs.add(entry);
+                        // excluded - pruned here, never listed
+                        PathFilter.Scope subScope = scope.enter(entry);
+                        if (subScope == null) {
+                            return;
+                        }
+                        if (checkpoint != null) {
+                            checkpoint.discovered(entry);
+                        }
+                        subDirHandler.handle(entry, entryAttrs, subScope);
+                    } else if (scope.accept(entry, entryAttrs) && visitedIndex.markFile(entry, entryAttrs)) {
+                        files.add(entry);
+                        // unchanged since the last crawl - queued all the same, the consumer takes its recorded terms
+                        if (index != null) {
+                            index.fileUnchanged(entry, entryAttrs);
+                        }
+                        batch.add(entry);
+                    }
+                }
+            });
+            batch.flush();
+            if (index != null) {
+                index.recordDirectory(directory, attrs, subDirs, files);
+            }
+            // chunks dropped by cancel() are not handed over - the directory is listed again on resume
+            if (checkpoint != null && !fileQueue.isCancelled()) {
+                checkpoint.listed(directory);
+            }
+        } catch (IOException e) {
+            // directory can not be read (permissions, removed while crawling) - skip it
+            if (checkpoint != null) {
+                checkpoint.listed(directory);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * SubDirectoryHandler interface - starts the task of a sub directory found by listDirectory
+     */
+    private interface SubDirectoryHandler {
+        /**
+         * handle - starts crawling the sub directory
+         *
+         * @param directory sub directory
+         * @param attrs     its attributes or null
+         * @param scope     its filter scope
+         */
+        void handle(File directory, BasicFileAttributes attrs, PathFilter.Scope scope);
+    }
+
+    /**
+     * DirectoryTask class - lists one directory, forks a task for each sub directory and puts files into queue
+     */
+    private class DirectoryTask extends RecursiveAction {
+        /**
+         * Serialization version (RecursiveAction is Serializable, tasks are never serialized)
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Directory listed by this task
+         */
+        private final File directory;
+        /**
+         * Attributes of the directory read by the parent listing (null for roots)
+         */
+        private final BasicFileAttributes attrs;
+        /**
+         * Filter scope of the directory
+         */
+        private final PathFilter.Scope scope;
+
+        /**
+         * Constructor initializes directory
+         *
+         * @param directory directory to list
+         * @param attrs     attributes of the directory or null
+         * @param scope     filter scope of the directory
+         */
+        DirectoryTask(File directory, BasicFileAttributes attrs, PathFilter.Scope scope) {
+            this.directory = directory;
+            this.attrs = attrs;
+            this.scope = scope;
+        }
+
+        /**
+         * compute - lists directory, forks sub directories and waits for them (joining thread helps other tasks meanwhile)
+         */
+        @Override
+        protected void compute() {
+            final List<DirectoryTask> subTasks = new ArrayList<>();
+            listDirectory(directory, attrs, scope, new SubDirectoryHandler() {
+                public void handle(File subDir, BasicFileAttributes subDirAttrs, PathFilter.Scope subScope) {
+                    DirectoryTask subTask = new DirectoryTask(subDir, subDirAttrs, subScope);
+                    subTask.fork();
+                    subTasks.add(subTask);
+                }
+            });
+            for (DirectoryTask subTask : subTasks) {
+                subTask.join();
+            }
+        }
+    }
+
+    /**
+     * ThreadPerDirectoryCrawl class - one crawl on a thread-per-task executor (virtual threads)
+     *          - every directory is a separate task, nobody waits for its sub directories
+     *          - a counter of pending directories tells when the whole tree is done
+     */
+    private class ThreadPerDirectoryCrawl implements SubDirectoryHandler {
+        /**
+         * Num of started but not finished directory tasks (+1 while roots are being submitted)
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        /**
+         * Released when pending drops to 0
+         */
+        private final CountDownLatch done = new CountDownLatch(1);
+        /**
+         * Set when the crawling thread was interrupted - tasks not started yet do nothing
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * crawl - starts a task per root and waits for the whole tree
+         *
+         * @param roots  root directories
+         * @param scopes their filter scopes (null - excluded)
+         * @throws InterruptedException if calling thread interrupted
+         */
+        void crawl(File[] roots, PathFilter.Scope[] scopes) throws InterruptedException {
+            for (int i = 0; i < roots.length; i++) {
+                if (scopes[i] != null) {
+                    handle(roots[i], null, scopes[i]);
+                }
+            }
+            finished();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                cancelled = true;
+                throw e;
+            }
+        }
+
+        public void handle(final File directory, final BasicFileAttributes attrs, final PathFilter.Scope scope) {
+            pending.incrementAndGet();
+            try {
+                pool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (!cancelled) {
+                                listDirectory(directory, attrs, scope, ThreadPerDirectoryCrawl.this);
+                            }
+                        } finally {
+                            finished();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // executor shut down - directory is skipped
+                finished();
+            }
+        }
+
+        /**
+         * finished - one directory (or the root submission) is done
+         */
+        private void finished() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,521 @@
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PathArena class - compact store of crawled paths, one int ID per file / directory
+ *          - an entry is its parent ID plus its name, so a directory prefix is stored once however many entries it has
+ *            (a File keeps its own copy of the whole absolute path)
+ *          - names are UTF-8 bytes appended to shared chunks (up to 1 MB) - on the heap or off-heap (direct buffers), so
+ *            most of the path data of a large crawl can live outside the Java heap
+ *          - per entry: parent (int) and name location (long) in paged primitive arrays, plus a slot of the open
+ *            addressing (parent, name) -> ID table - no object per entry
+ *          - IDs are dense (0, 1, 2, ...), so callers can keep per entry data in int arrays
+ *          - thread safe: the table is split into STRIPES by hash, each with its own lock, table and name chunk, so
+ *            consumers adding names rarely wait for each other; reading an entry (pathOf, nameOf, parentOf) takes no lock
+ *          - idOf(File) remembers the parent directory of the last file per thread - the files of a chunk come from one
+ *            listing, so the directory is resolved once and each file costs one (parent, name) lookup
+ *          - ancestors of a path get IDs as well
+ */
+public class PathArena {
+    /**
+     * Parent of a root entry
+     */
+    static final int NO_PARENT = -1;
+    /**
+     * Size of the largest name chunk, the first chunk of a stripe is FIRST_CHUNK_BYTES (small arenas stay small)
+     */
+    private static final int CHUNK_BYTES = 1 << 20, FIRST_CHUNK_BYTES = 16 * 1024;
+    /**
+     * Longest name in bytes (length is packed into 16 bits of the location)
+     */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+    /**
+     * Num of independently locked stripes (power of 2)
+     */
+    private static final int STRIPES = 16;
+    /**
+     * Entries per page of the entry arrays
+     */
+    private static final int PAGE_BITS = 12, PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * If true, name chunks are direct buffers (off-heap)
+     */
+    private final boolean offHeap;
+    /**
+     * Stripes of the (parent, name) -> ID table
+     */
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    /**
+     * Name chunks of all stripes (replaced when a chunk is added - readers never lock)
+     */
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    /**
+     * Pages of parent ID and name location per entry: chunk (27 bits) | position in chunk (21 bits) | length (16 bits)
+     *          (replaced when a page is added)
+     */
+    private volatile AtomicIntegerArray[] parents = new AtomicIntegerArray[0];
+    private volatile AtomicLongArray[] names = new AtomicLongArray[0];
+    /**
+     * Guards adding chunks and pages
+     */
+    private final Object growLock = new Object();
+    /**
+     * Next ID
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    /**
+     * Num of name bytes stored
+     */
+    private final LongAdder nameBytes = new LongAdder();
+    /**
+     * Parent directory of the last file given to idOf(File), per thread
+     */
+    private final ThreadLocal<LastParent> lastParent = ThreadLocal.withInitial(LastParent::new);
+
+    /**
+     * Constructor - names on the heap
+     */
+    public PathArena() {
+        this(false);
+    }
+
+    /**
+     * Constructor initializing where names are stored
+     *
+     * @param offHeap true - names in direct buffers (outside the Java heap)
+     */
+    public PathArena(boolean offHeap) {
+        this.offHeap = offHeap;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * idOf - ID of the path, added (with its missing ancestors) if not stored yet
+     *
+     * @param file file or directory
+     * @return ID
+     */
+    public int idOf(File file) {
+        String path = file.getPath();
+        int separator = path.lastIndexOf(File.separatorChar);
+        LastParent last = lastParent.get();
+        // same directory as the last file of this thread - no walk over the ancestors
+        if (separator > 0 && last.path != null && separator == last.path.length() && path.startsWith(last.path)) {
+            return idOf(last.id, path.substring(separator + 1));
+        }
+        File parentFile = file.getParentFile();
+        if (parentFile == null) {
+            return idOf(NO_PARENT, path);
+        }
+        int parent = directoryIdOf(parentFile);
+        last.path = parentFile.getPath();
+        last.id = parent;
+        return idOf(parent, file.getName());
+    }
+
+    /**
+     * directoryIdOf - ID of a directory and its ancestors (walked up to the root)
+     *
+     * @param directory directory
+     * @return ID
+     */
+    private int directoryIdOf(File directory) {
+        File parentFile = directory.getParentFile();
+        if (parentFile == null) {
+            return idOf(NO_PARENT, directory.getPath());
+        }
+        return idOf(directoryIdOf(parentFile), directory.getName());
+    }
+
+    /**
+     * idOf - ID of the child, added if not stored yet
+     *
+     * @param parent parent ID or NO_PARENT
+     * @param name   name in the parent (whole path for a root)
+     * @return ID
+     */
+    public int idOf(int parent, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(parent, bytes);
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            int slot = stripe.slotOf(parent, bytes, hash);
+            if (stripe.table[slot] != 0) {
+                return stripe.table[slot] - 1;
+            }
+            int id = add(stripe, parent, bytes);
+            stripe.put(slot, id, hash);
+            return id;
+        }
+    }
+
+    /**
+     * find - ID of a stored path, nothing is added
+     *
+     * @param file file or directory
+     * @return ID, or -1 if the path (or one of its ancestors) is not stored
+     */
+    public int find(File file) {
+        File parentFile = file.getParentFile();
+        int parent = NO_PARENT;
+        if (parentFile != null) {
+            parent = find(parentFile);
+            if (parent < 0) {
+                return -1;
+            }
+        }
+        byte[] bytes = ((parentFile == null) ? file.getPath() : file.getName()).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(parent, bytes);
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            return stripe.table[stripe.slotOf(parent, bytes, hash)] - 1;
+        }
+    }
+
+    /**
+     * pathOf - rebuilds the path of an entry
+     *
+     * @param id ID
+     * @return path as given to idOf
+     */
+    public String pathOf(int id) {
+        int depth = 0;
+        for (int i = id; i != NO_PARENT; i = parentOf(i)) {
+            depth++;
+        }
+        int[] chain = new int[depth];
+        for (int i = id; i != NO_PARENT; i = parentOf(i)) {
+            chain[--depth] = i;
+        }
+        StringBuilder path = new StringBuilder(64);
+        for (int i = 0; i < chain.length; i++) {
+            if (i > 0 && path.charAt(path.length() - 1) != File.separatorChar) {
+                path.append(File.separatorChar);
+            }
+            path.append(nameOf(chain[i]));
+        }
+        return path.toString();
+    }
+
+    /**
+     * fileOf - File of an entry (created on demand, not kept)
+     *
+     * @param id ID
+     * @return file
+     */
+    public File fileOf(int id) {
+        return new File(pathOf(id));
+    }
+
+    /**
+     * isWithin - checks if an entry is the ancestor entry or below it
+     *
+     * @param id       ID
+     * @param ancestor ID of a directory
+     * @return true if id is ancestor or one of its descendants
+     */
+    public boolean isWithin(int id, int ancestor) {
+        for (int i = id; i != NO_PARENT; i = parentOf(i)) {
+            if (i == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return num of stored paths (including ancestors)
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * summary - memory used by the arena
+     *
+     * @return num of entries, name bytes (heap / off-heap) and bytes of the primitive tables
+     */
+    public String summary() {
+        long tables = (4L + 8L) * PAGE_SIZE * parents.length;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                tables += 8L * stripe.table.length;
+            }
+        }
+        return String.format("%d paths, %s of names (%s, %d chunks), %s of tables", size(), FileAggregates.human(nameBytes.sum()),
+                offHeap ? "off-heap" : "heap", chunks.length, FileAggregates.human(tables));
+    }
+
+    /**
+     * add - appends entry (caller holds the lock of the stripe)
+     *
+     * @param stripe stripe the entry belongs to
+     * @param parent parent ID or NO_PARENT
+     * @param bytes  UTF-8 name
+     * @return new ID
+     */
+    private int add(Stripe stripe, int parent, byte[] bytes) {
+        if (bytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Name longer than " + MAX_NAME_BYTES + " bytes");
+        }
+        if (stripe.chunk == null || stripe.chunk.capacity() - stripe.position < bytes.length) {
+            newChunk(stripe, bytes.length);
+        }
+        long location = ((long) stripe.chunkIndex << 37) | ((long) stripe.position << 16) | bytes.length;
+        stripe.chunk.put(stripe.position, bytes);
+        stripe.position += bytes.length;
+        nameBytes.add(bytes.length);
+        int id = size.getAndIncrement();
+        int page = id >>> PAGE_BITS;
+        if (page >= parents.length) {
+            addPages(page);
+        }
+        parents[page].set(id & (PAGE_SIZE - 1), parent);
+        // written last - a reader that sees the location sees the name bytes
+        names[page].set(id & (PAGE_SIZE - 1), location);
+        return id;
+    }
+
+    /**
+     * newChunk - gives the stripe a new name chunk (twice the size of its last one, up to CHUNK_BYTES)
+     *
+     * @param stripe    stripe (its lock is held)
+     * @param minLength length of the name that did not fit
+     */
+    private void newChunk(Stripe stripe, int minLength) {
+        int capacity = (stripe.chunk == null) ? FIRST_CHUNK_BYTES : Math.min(CHUNK_BYTES, stripe.chunk.capacity() * 2);
+        capacity = Math.max(capacity, minLength);
+        ByteBuffer chunk = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        synchronized (growLock) {
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = chunk;
+            stripe.chunkIndex = chunks.length;
+            chunks = grown;
+        }
+        stripe.chunk = chunk;
+        stripe.position = 0;
+    }
+
+    /**
+     * addPages - adds entry pages up to the given page
+     *
+     * @param page page needed
+     */
+    private void addPages(int page) {
+        synchronized (growLock) {
+            if (page < parents.length) {
+                return;
+            }
+            AtomicIntegerArray[] grownParents = Arrays.copyOf(parents, page + 1);
+            AtomicLongArray[] grownNames = Arrays.copyOf(names, page + 1);
+            for (int i = parents.length; i <= page; i++) {
+                grownParents[i] = new AtomicIntegerArray(PAGE_SIZE);
+                grownNames[i] = new AtomicLongArray(PAGE_SIZE);
+            }
+            // names first - a reader that finds a page of parents finds its page of names
+            names = grownNames;
+            parents = grownParents;
+        }
+    }
+
+    /**
+     * nameBytes - stored name of an entry
+     *
+     * @param id ID
+     * @return UTF-8 bytes
+     */
+    private byte[] nameBytes(int id) {
+        long location = names[id >>> PAGE_BITS].get(id & (PAGE_SIZE - 1));
+        byte[] bytes = new byte[(int) (location & 0xFFFF)];
+        chunks[(int) (location >>> 37)].get((int) ((location >>> 16) & 0x1FFFFF), bytes);
+        return bytes;
+    }
+
+    /**
+     * nameOf - stored name of an entry
+     *
+     * @param id ID
+     * @return name (whole path for a root)
+     */
+    public String nameOf(int id) {
+        return new String(nameBytes(id), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * parentOf - parent of an entry
+     *
+     * @param id ID
+     * @return parent ID or NO_PARENT
+     */
+    public int parentOf(int id) {
+        return parents[id >>> PAGE_BITS].get(id & (PAGE_SIZE - 1));
+    }
+
+    /**
+     * stripeOf - stripe of a (parent, name) hash (high bits - the low bits pick the slot)
+     *
+     * @param hash hash of (parent, name)
+     * @return stripe
+     */
+    private Stripe stripeOf(int hash) {
+        return stripes[(hash * 0x9E3779B9) >>> 28 & (STRIPES - 1)];
+    }
+
+    /**
+     * hash - hash of (parent, name), spread over the low bits
+     *
+     * @param parent parent ID
+     * @param bytes  UTF-8 name
+     * @return hash
+     */
+    private static int hash(int parent, byte[] bytes) {
+        int h = 31 * parent + Arrays.hashCode(bytes);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * LastParent class - parent directory path and ID of the last file of a thread
+     */
+    private static class LastParent {
+        String path;
+        int id;
+    }
+
+    /**
+     * Stripe class - part of the (parent, name) -> ID table with its own name chunk, guarded by its own lock
+     */
+    private class Stripe {
+        /**
+         * Open addressing table ID + 1 (0 - empty slot) and the hash of each slot, at most half full
+         */
+        int[] table = new int[64], hashes = new int[64];
+        /**
+         * Num of IDs in the table
+         */
+        int count = 0;
+        /**
+         * Chunk names are appended to, its index in chunks and the next free position
+         */
+        ByteBuffer chunk;
+        int chunkIndex, position;
+
+        /**
+         * slotOf - slot of (parent, name) - holding its ID + 1, or the empty slot to put it in
+         *
+         * @param parent parent ID
+         * @param bytes  UTF-8 name
+         * @param hash   hash of (parent, name)
+         * @return slot
+         */
+        int slotOf(int parent, byte[] bytes, int hash) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0) {
+                int id = table[slot] - 1;
+                if (hashes[slot] == hash && parentOf(id) == parent && Arrays.equals(nameBytes(id), bytes)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * put - stores a new ID in an empty slot, doubles the table when half full
+         *
+         * @param slot empty slot from slotOf
+         * @param id   ID
+         * @param hash hash of its (parent, name)
+         */
+        void put(int slot, int id, int hash) {
+            table[slot] = id + 1;
+            hashes[slot] = hash;
+            if (++count * 2 > table.length) {
+                int[] oldTable = table, oldHashes = hashes;
+                table = new int[oldTable.length * 2];
+                hashes = new int[oldTable.length * 2];
+                int mask = table.length - 1;
+                for (int i = 0; i < oldTable.length; i++) {
+                    if (oldTable[i] != 0) {
+                        int s = oldHashes[i] & mask;
+                        while (table[s] != 0) {
+                            s = (s + 1) & mask;
+                        }
+                        table[s] = oldTable[i];
+                        hashes[s] = oldHashes[i];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * IdList class - growable int array of IDs (not thread safe)
+     */
+    public static class IdList {
+        /**
+         * IDs
+         */
+        private int[] ids = new int[8];
+        /**
+         * Num of IDs
+         */
+        private int size = 0;
+
+        /**
+         * add - appends ID
+         *
+         * @param id ID
+         */
+        public void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * addAll - appends IDs of another list
+         *
+         * @param other list
+         */
+        public void addAll(IdList other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + other.size));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * @param index position
+         * @return ID at the position
+         */
+        public int get(int index) {
+            return ids[index];
+        }
+
+        /**
+         * @return num of IDs
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * clear - removes all IDs (capacity is kept)
+         */
+        public void clear() {
+            size = 0;
+        }
+    }
+}
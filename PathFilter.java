@@ -0,0 +1,538 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * PathFilter class - filter engine of the crawler, evaluated while listing (not on the queued files)
+ *          - exclude rules in .gitignore syntax (name, anchored path, ** , trailing / for directories only, ! to
+ *            re-include, the last matching rule wins) from the config, from a rule file and from per directory rule files
+ *            (e.g. .gitignore - rules of a deeper file win over the ones above it)
+ *          - an excluded directory is pruned when it is found: it is never listed, nothing below it is read
+ *          - include globs, max depth, size and mtime predicates on files (size / mtime from the attributes the lister read)
+ *          - compiled once: literal names compare as strings, name globs match the name only, only rules with a
+ *            directory part need the relative path
+ *          - every listed directory has a Scope (its depth, relative path and the rule files in effect), a sub directory
+ *            gets its Scope from its parent's - the crawler hands it to the task of the sub directory
+ *          - nothing configured: a single Scope accepts everything, no work per entry
+ */
+public class PathFilter {
+    /**
+     * Filter accepting everything
+     */
+    public static final PathFilter NONE = new PathFilter(new ArrayList<Rule>(), new ArrayList<Rule>(), null, 0, 0, 0, 0, 0, new File[0]);
+
+    /**
+     * Exclude rules of the config and the rule file (lowest priority)
+     */
+    private final List<Rule> excludes;
+    /**
+     * Include globs - a file must match one of them (empty - all files)
+     */
+    private final List<Rule> includes;
+    /**
+     * Name of the per directory rule files, null - none read
+     */
+    private final String ignoreFileName;
+    /**
+     * Max depth of files below a root (entries of a root have depth 1), 0 - no limit
+     */
+    private final int maxDepth;
+    /**
+     * File size limits in bytes, 0 - no limit
+     */
+    private final long minSize, maxSize;
+    /**
+     * File mtime limits in epoch millis, 0 - no limit
+     */
+    private final long modifiedAfter, modifiedBefore;
+    /**
+     * Roots of the crawl - scopeOf finds the root of a directory
+     */
+    private final File[] roots;
+    /**
+     * False if nothing is configured (every Scope accepts everything)
+     */
+    private final boolean active;
+    /**
+     * Num of directories pruned and files rejected
+     */
+    private final LongAdder prunedDirectories = new LongAdder(), rejectedFiles = new LongAdder();
+
+    /**
+     * Constructor initializing rules and predicates
+     *
+     * @param excludes       exclude rules (lowest priority)
+     * @param includes       include globs
+     * @param ignoreFileName name of per directory rule files or null
+     * @param maxDepth       max depth of files, 0 - no limit
+     * @param minSize        min file size, 0 - no limit
+     * @param maxSize        max file size, 0 - no limit
+     * @param modifiedAfter  files modified before this are rejected, 0 - no limit
+     * @param modifiedBefore files modified after this are rejected, 0 - no limit
+     * @param roots          roots of the crawl
+     */
+    private PathFilter(List<Rule> excludes, List<Rule> includes, String ignoreFileName, int maxDepth, long minSize, long maxSize,
+                       long modifiedAfter, long modifiedBefore, File[] roots) {
+        this.excludes = excludes;
+        this.includes = includes;
+        this.ignoreFileName = ignoreFileName;
+        this.maxDepth = Math.max(0, maxDepth);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modifiedAfter = modifiedAfter;
+        this.modifiedBefore = modifiedBefore;
+        this.roots = roots;
+        this.active = !excludes.isEmpty() || !includes.isEmpty() || ignoreFileName != null || maxDepth > 0
+                || minSize > 0 || maxSize > 0 || modifiedAfter > 0 || modifiedBefore > 0;
+    }
+
+    /**
+     * compile - builds the filter of a crawl from the config
+     *
+     * @param config exclude / include rules, rule files, max depth, size and mtime limits
+     * @param roots  roots of the crawl
+     * @return filter (NONE if nothing is configured)
+     * @throws IOException if the rule file can not be read
+     */
+    public static PathFilter compile(CrawlConfig config, File[] roots) throws IOException {
+        List<Rule> excludes = new ArrayList<>(), includes = new ArrayList<>();
+        for (String line : config.exclude) {
+            addRule(excludes, line);
+        }
+        if (config.excludeFile != null) {
+            for (String line : readLines(config.excludeFile)) {
+                addRule(excludes, line);
+            }
+        }
+        for (String glob : config.include) {
+            addRule(includes, glob);
+        }
+        PathFilter filter = new PathFilter(excludes, includes, config.ignoreFileName, config.maxDepth, config.minFileSize,
+                config.maxFileSize, config.modifiedAfter, config.modifiedBefore, roots.clone());
+        return filter.active ? filter : NONE;
+    }
+
+    /**
+     * scopeOf - scope of a directory to crawl: a root, or a directory below one (resumed crawl) - the rule files between
+     *           the root and the directory are read
+     *
+     * @param directory directory to list
+     * @return scope, null if the directory is excluded
+     */
+    public Scope scopeOf(File directory) {
+        if (!active) {
+            return Scope.ALL;
+        }
+        for (File root : roots) {
+            String prefix = root.getPath().endsWith(File.separator) ? root.getPath() : root.getPath() + File.separator;
+            if (directory.equals(root) || directory.getPath().startsWith(prefix)) {
+                Scope scope = new Scope(this, null, root, "", 0);
+                File current = root;
+                String below = directory.equals(root) ? "" : directory.getPath().substring(prefix.length());
+                for (String name : below.split(Pattern.quote(File.separator))) {
+                    if (name.isEmpty()) {
+                        continue;
+                    }
+                    current = new File(current, name);
+                    scope = scope.enter(current);
+                    if (scope == null) {
+                        return null;
+                    }
+                }
+                return scope;
+            }
+        }
+        return new Scope(this, null, directory, "", 0);
+    }
+
+    /**
+     * @return true if something is filtered (false for NONE)
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return true if files are filtered by size or mtime (attributes handed with an entry are compared)
+     */
+    public boolean hasAttributeLimits() {
+        return minSize > 0 || maxSize > 0 || modifiedAfter > 0 || modifiedBefore > 0;
+    }
+
+    /**
+     * summary - what the filter skipped
+     *
+     * @return num of directories pruned and files rejected
+     */
+    public String summary() {
+        return String.format("Filter: %d directories pruned, %d files rejected", prunedDirectories.sum(), rejectedFiles.sum());
+    }
+
+    /**
+     * addRule - compiles one line of .gitignore syntax (blank lines and # comments are skipped)
+     *
+     * @param rules list to add to
+     * @param line  rule
+     */
+    private static void addRule(List<Rule> rules, String line) {
+        Rule rule = Rule.compile(line);
+        if (rule != null) {
+            rules.add(rule);
+        }
+    }
+
+    /**
+     * readLines - reads a rule file (bytes not valid UTF-8 are replaced)
+     *
+     * @param file rule file
+     * @return lines
+     * @throws IOException if the file can not be read
+     */
+    private static String[] readLines(File file) throws IOException {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).split("\r?\n");
+        } catch (InvalidPathException e) {
+            throw new IOException("Can not read " + file, e);
+        }
+    }
+
+    /**
+     * readRules - rules of the rule file of a directory
+     *
+     * @param directory directory
+     * @return compiled rules, null if the directory has no (readable) rule file
+     */
+    private List<Rule> readRules(File directory) {
+        File ruleFile = new File(directory, ignoreFileName);
+        if (!ruleFile.isFile()) {
+            return null;
+        }
+        List<Rule> rules = new ArrayList<>();
+        try {
+            for (String line : readLines(ruleFile)) {
+                addRule(rules, line);
+            }
+        } catch (IOException e) {
+            // not readable - the directory is crawled without it
+            return null;
+        }
+        return rules.isEmpty() ? null : rules;
+    }
+
+    /**
+     * decide - applies rules in .gitignore order (the last matching rule wins)
+     *
+     * @param rules     rules
+     * @param parent    relative path of the parent directory (to the base of the rules)
+     * @param name      name of the entry
+     * @param directory true if the entry is a directory
+     * @return TRUE - excluded, FALSE - re-included, null - no rule matches
+     */
+    private static Boolean decide(List<Rule> rules, String parent, String name, boolean directory) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (rule.matches(parent, name, directory)) {
+                return !rule.negated;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scope class - a directory being listed: its depth, relative path and rule file, linked to its parent's scope
+     */
+    public static class Scope {
+        /**
+         * Scope of a filter accepting everything (enter returns it again)
+         */
+        static final Scope ALL = new Scope(NONE, null, null, "", 0);
+
+        /**
+         * Filter the scope belongs to
+         */
+        private final PathFilter filter;
+        /**
+         * Scope of the parent directory, null for a root
+         */
+        private final Scope parent;
+        /**
+         * Directory of the scope
+         */
+        private final File directory;
+        /**
+         * Path relative to the root ("" for the root, '/' separated)
+         */
+        private final String relative;
+        /**
+         * Depth below the root (0 for the root)
+         */
+        private final int depth;
+        /**
+         * Rules of the rule file in this directory, null - none
+         */
+        private final List<Rule> rules;
+
+        /**
+         * Constructor initializing the scope (reads the rule file of the directory)
+         *
+         * @param filter    filter
+         * @param parent    scope of the parent or null
+         * @param directory directory
+         * @param relative  path relative to the root
+         * @param depth     depth below the root
+         */
+        private Scope(PathFilter filter, Scope parent, File directory, String relative, int depth) {
+            this.filter = filter;
+            this.parent = parent;
+            this.directory = directory;
+            this.relative = relative;
+            this.depth = depth;
+            this.rules = (filter.ignoreFileName == null || directory == null) ? null : filter.readRules(directory);
+        }
+
+        /**
+         * enter - scope of a sub directory found while listing this one
+         *
+         * @param subDirectory sub directory
+         * @return its scope, null if it is pruned (not listed at all)
+         */
+        public Scope enter(File subDirectory) {
+            if (!filter.active) {
+                return this;
+            }
+            // nothing below maxDepth can be accepted - the directory is not listed
+            if (filter.maxDepth > 0 && depth + 1 >= filter.maxDepth) {
+                filter.prunedDirectories.increment();
+                return null;
+            }
+            String name = subDirectory.getName();
+            if (excluded(name, true)) {
+                filter.prunedDirectories.increment();
+                return null;
+            }
+            return new Scope(filter, this, subDirectory, relative.isEmpty() ? name : relative + "/" + name, depth + 1);
+        }
+
+        /**
+         * accept - checks a file found while listing this directory
+         *
+         * @param file  file
+         * @param attrs attributes read by the lister, null - read here if a size / mtime limit needs them
+         * @return true if the file is crawled
+         */
+        public boolean accept(File file, BasicFileAttributes attrs) {
+            if (!filter.active) {
+                return true;
+            }
+            String name = file.getName();
+            if (excluded(name, false) || !included(name) || !withinLimits(file, attrs)) {
+                filter.rejectedFiles.increment();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * excluded - rule files from this directory up to the root, then the rules of the config
+         *
+         * @param name      name of an entry of this directory
+         * @param directory true if the entry is a directory
+         * @return true if excluded
+         */
+        private boolean excluded(String name, boolean directory) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                if (scope.rules != null) {
+                    // path of this directory relative to the directory of the rule file
+                    String base = scope.relative.isEmpty() ? relative
+                            : (relative.length() == scope.relative.length()) ? "" : relative.substring(scope.relative.length() + 1);
+                    Boolean decision = decide(scope.rules, base, name, directory);
+                    if (decision != null) {
+                        return decision;
+                    }
+                }
+            }
+            Boolean decision = decide(filter.excludes, relative, name, directory);
+            return decision != null && decision;
+        }
+
+        /**
+         * included - include globs
+         *
+         * @param name name of a file of this directory
+         * @return true if there are no include globs or one matches
+         */
+        private boolean included(String name) {
+            if (filter.includes.isEmpty()) {
+                return true;
+            }
+            for (Rule rule : filter.includes) {
+                if (rule.matches(relative, name, false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * withinLimits - depth, size and mtime limits
+         *
+         * @param file  file
+         * @param attrs attributes or null
+         * @return true if within all limits
+         */
+        private boolean withinLimits(File file, BasicFileAttributes attrs) {
+            if (filter.maxDepth > 0 && depth + 1 > filter.maxDepth) {
+                return false;
+            }
+            if (!filter.hasAttributeLimits()) {
+                return true;
+            }
+            if (attrs == null) {
+                try {
+                    attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                } catch (IOException | InvalidPathException e) {
+                    return false;
+                }
+            }
+            long size = attrs.size(), modified = attrs.lastModifiedTime().toMillis();
+            return (filter.minSize <= 0 || size >= filter.minSize) && (filter.maxSize <= 0 || size <= filter.maxSize)
+                    && (filter.modifiedAfter <= 0 || modified >= filter.modifiedAfter)
+                    && (filter.modifiedBefore <= 0 || modified <= filter.modifiedBefore);
+        }
+    }
+
+    /**
+     * Rule class - one compiled line of .gitignore syntax
+     */
+    static class Rule {
+        /**
+         * How the rule is matched
+         *          - LITERAL: name equals (no wildcards, no directory part)
+         *          - NAME:    glob on the name (no directory part - matches at any depth)
+         *          - PATH:    glob on the path relative to the rule base (has a directory part - anchored)
+         */
+        enum Kind {
+            LITERAL, NAME, PATH
+        }
+
+        /**
+         * How the rule is matched
+         */
+        private final Kind kind;
+        /**
+         * Name (LITERAL)
+         */
+        private final String literal;
+        /**
+         * Compiled glob (NAME, PATH)
+         */
+        private final Pattern pattern;
+        /**
+         * True for ! rules (re-include)
+         */
+        final boolean negated;
+        /**
+         * True for rules ending with / (directories only)
+         */
+        private final boolean directoryOnly;
+
+        Rule(Kind kind, String literal, Pattern pattern, boolean negated, boolean directoryOnly) {
+            this.kind = kind;
+            this.literal = literal;
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+        }
+
+        /**
+         * compile - compiles one line
+         *
+         * @param line line of .gitignore syntax
+         * @return rule, null for blank lines and comments
+         */
+        static Rule compile(String line) {
+            String glob = line.trim();
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                return null;
+            }
+            boolean negated = glob.startsWith("!");
+            if (negated || glob.startsWith("\\!") || glob.startsWith("\\#")) {
+                glob = glob.substring(1);
+            }
+            boolean directoryOnly = glob.endsWith("/");
+            while (glob.endsWith("/")) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            if (glob.isEmpty()) {
+                return null;
+            }
+            // a / at the start or in the middle anchors the rule to its base directory
+            if (glob.indexOf('/') >= 0) {
+                if (glob.startsWith("/")) {
+                    glob = glob.substring(1);
+                }
+                return new Rule(Kind.PATH, null, Pattern.compile(toRegex(glob)), negated, directoryOnly);
+            }
+            if (glob.indexOf('*') < 0 && glob.indexOf('?') < 0 && glob.indexOf('[') < 0 && glob.indexOf('\\') < 0) {
+                return new Rule(Kind.LITERAL, glob, null, negated, directoryOnly);
+            }
+            return new Rule(Kind.NAME, null, Pattern.compile(toRegex(glob)), negated, directoryOnly);
+        }
+
+        /**
+         * matches - checks an entry
+         *
+         * @param parent    relative path of its directory to the rule base ("" - the base itself)
+         * @param name      name of the entry
+         * @param directory true if the entry is a directory
+         * @return true if the rule matches
+         */
+        boolean matches(String parent, String name, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            switch (kind) {
+                case LITERAL:
+                    return literal.equals(name);
+                case NAME:
+                    return pattern.matcher(name).matches();
+                default:
+                    return pattern.matcher(parent.isEmpty() ? name : parent + "/" + name).matches();
+            }
+        }
+
+        /**
+         * toRegex - translates a glob with ** (any num of directories) to a regular expression, the rest of the syntax as
+         *           NameMatcher globs (* and ? do not cross /)
+         *
+         * @param glob glob
+         * @return regular expression
+         */
+        static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int start = 0, i;
+            while ((i = glob.indexOf("**", start)) >= 0) {
+                regex.append(NameMatcher.GlobMatcher.toRegex(glob.substring(start, i)));
+                if (glob.startsWith("**/", i)) {
+                    // leading / middle **/ - zero or more directories
+                    regex.append("(?:.*/)?");
+                    i += 3;
+                } else {
+                    // trailing /** or ** inside a name - anything
+                    regex.append(".*");
+                    i += 2;
+                }
+                start = i;
+            }
+            regex.append(NameMatcher.GlobMatcher.toRegex(glob.substring(start)));
+            return regex.toString();
+        }
+    }
+}
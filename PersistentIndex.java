@@ -0,0 +1,627 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PersistentIndex class - on-disk record of the last crawl, used to re-crawl incrementally
+ *          - paths.dict:  compact path dictionary, one (parent ID, name) entry per file / directory - kept in a
+ *                         PathArena in memory, a directory prefix is stored once, however many entries it has
+ *          - segment.dat: append-only log of file records (size, mtime, terms of the file) and directory records
+ *                         (mtime, sub directories, files); the last record of an ID wins, deletions are logged as well
+ *          - a file with the same size and mtime as last time is "unchanged" - it is still queued (counted, aggregated),
+ *            but the consumer takes its terms from here instead of reading it again (cachedTerms)
+ *          - with trustDirectoryMtime, a directory with the same mtime is not listed at all - its sub directories
+ *            and files are taken from the index (its files are queued as unchanged, without a stat)
+ *          - a run that did not crawl everything (cancelled, resumed) keeps the records of entries it did not reach
+ *          - the log is compacted (rewritten to temp files and renamed) when it holds mostly old records, live entries
+ *            get new IDs then, so names of deleted entries are dropped from paths.dict as well
+ */
+public class PersistentIndex {
+    /**
+     * Record types of segment.dat (FILE - terms not known, FILE_TERMS - with the terms of the file)
+     */
+    private static final byte FILE = 'F', FILE_TERMS = 'T', DIRECTORY = 'D', DELETED = 'X';
+    /**
+     * Terms of a binary file (not indexed) - compared by identity
+     */
+    static final String[] BINARY = new String[0];
+
+    /**
+     * Directory holding paths.dict and segment.dat
+     */
+    private final File storage;
+    /**
+     * If true, directories with unchanged mtime are not listed
+     */
+    private final boolean trustDirectoryMtime;
+
+    /**
+     * Dictionary: absolute path <-> ID (parent ID + name per entry) - replaced by compact() with the live entries
+     * only (save runs after the crawl, no crawler or consumer holds an ID then)
+     */
+    private PathArena paths = new PathArena();
+    /**
+     * Num of dictionary entries already written to paths.dict
+     */
+    private int savedNames = 0;
+
+    /**
+     * File ID -> state
+     */
+    private final ConcurrentHashMap<Integer, FileState> fileState = new ConcurrentHashMap<>();
+    /**
+     * Directory ID -> state
+     */
+    private final ConcurrentHashMap<Integer, DirState> dirState = new ConcurrentHashMap<>();
+    /**
+     * IDs whose records changed in this run (to append) and IDs seen in this run (others are deleted on save)
+     */
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet(), seen = ConcurrentHashMap.newKeySet();
+    /**
+     * IDs of files found unchanged in this run and not taken by a consumer yet
+     */
+    private final Set<Integer> unchanged = ConcurrentHashMap.newKeySet();
+    /**
+     * One String per distinct term (the terms of all files share them)
+     */
+    private final ConcurrentHashMap<String, String> termPool = new ConcurrentHashMap<>();
+    /**
+     * Num of records in segment.dat (live and old)
+     */
+    private long segmentRecords = 0;
+    /**
+     * Counters of this run
+     */
+    private final LongAdder unchangedFiles = new LongAdder(), changedFiles = new LongAdder(), skippedDirectories = new LongAdder();
+
+    /**
+     * FileState class - a file at the last crawl
+     */
+    private static class FileState {
+        /**
+         * Size and last modified time of the file
+         */
+        final long size, mtime;
+        /**
+         * Terms of the file (BINARY - binary file), null - not indexed yet
+         */
+        volatile String[] terms;
+
+        FileState(long size, long mtime, String[] terms) {
+            this.size = size;
+            this.mtime = mtime;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * DirState class - what a directory contained at the last crawl
+     */
+    private static class DirState {
+        /**
+         * Last modified time of the directory
+         */
+        final long mtime;
+        /**
+         * IDs of sub directories and files
+         */
+        final int[] subDirs, files;
+
+        DirState(long mtime, int[] subDirs, int[] files) {
+            this.mtime = mtime;
+            this.subDirs = subDirs;
+            this.files = files;
+        }
+    }
+
+    /**
+     * Constructor initializing storage (use open() to also load it)
+     *
+     * @param storage             directory of the index files
+     * @param trustDirectoryMtime skip listing of directories with unchanged mtime
+     */
+    private PersistentIndex(File storage, boolean trustDirectoryMtime) {
+        this.storage = storage;
+        this.trustDirectoryMtime = trustDirectoryMtime;
+    }
+
+    /**
+     * open - loads index from storage directory (creates empty index if it does not exist yet)
+     *
+     * @param storage             directory of the index files
+     * @param trustDirectoryMtime skip listing of directories with unchanged mtime
+     * @return loaded index
+     * @throws IOException if index files can not be read
+     */
+    public static PersistentIndex open(File storage, boolean trustDirectoryMtime) throws IOException {
+        PersistentIndex index = new PersistentIndex(storage, trustDirectoryMtime);
+        index.load();
+        return index;
+    }
+
+    /**
+     * fileUnchanged - compares file with its last record and stores the new state (the file is queued either way,
+     *                 an unchanged one is indexed from its recorded terms)
+     *
+     * @param file  crawled file
+     * @param attrs attributes of the file, null - attributes are read here
+     * @return true if size and mtime are the same as at the last crawl
+     */
+    public boolean fileUnchanged(File file, BasicFileAttributes attrs) {
+        attrs = readIfNull(file, attrs);
+        if (attrs == null) {
+            return false;
+        }
+        int id = idOf(file);
+        seen.add(id);
+        long size = attrs.size(), mtime = attrs.lastModifiedTime().toMillis();
+        FileState before = fileState.get(id);
+        if (before != null && before.size == size && before.mtime == mtime) {
+            unchanged.add(id);
+            unchangedFiles.increment();
+            return true;
+        }
+        fileState.put(id, new FileState(size, mtime, null));
+        dirty.add(id);
+        changedFiles.increment();
+        return false;
+    }
+
+    /**
+     * cachedTerms - terms of a file found unchanged in this run, so the consumer does not read it again (once per
+     *               file - a later change reported by the watcher is read)
+     *
+     * @param file file taken from the queue
+     * @return recorded terms (BINARY - binary file), null - the file has to be read
+     */
+    public String[] cachedTerms(File file) {
+        int id = paths.find(file.getAbsoluteFile());
+        if (id < 0 || !unchanged.remove(id)) {
+            return null;
+        }
+        FileState state = fileState.get(id);
+        return (state == null) ? null : state.terms;
+    }
+
+    /**
+     * indexed - records the terms of a file read by a consumer (stored with its record on save)
+     *
+     * @param file  indexed file
+     * @param terms unique terms of the file, null - binary file
+     */
+    public void indexed(File file, Set<String> terms) {
+        int id = paths.find(file.getAbsoluteFile());
+        FileState state = (id < 0) ? null : fileState.get(id);
+        if (state == null) {
+            // not crawled in this run (e.g. created while watching) - read again by the next run
+            return;
+        }
+        String[] pooled = BINARY;
+        if (terms != null) {
+            pooled = new String[terms.size()];
+            int i = 0;
+            for (String term : terms) {
+                pooled[i++] = pooled(term);
+            }
+        }
+        state.terms = pooled;
+        dirty.add(id);
+    }
+
+    /**
+     * unchangedSubDirectories - if trustDirectoryMtime is on and directory mtime did not change, returns its sub
+     * directories from the index (the caller does not list it), files of the directory are added to files and taken
+     * as unchanged
+     *
+     * @param directory crawled directory
+     * @param attrs     attributes of the directory, null - attributes are read here
+     * @param files     files of the directory from the last crawl are added here (to be queued)
+     * @return sub directories from the last crawl, or null if the directory has to be listed
+     */
+    public List<File> unchangedSubDirectories(File directory, BasicFileAttributes attrs, List<File> files) {
+        if (!trustDirectoryMtime) {
+            return null;
+        }
+        attrs = readIfNull(directory, attrs);
+        if (attrs == null) {
+            return null;
+        }
+        int id = idOf(directory);
+        DirState state = dirState.get(id);
+        if (state == null || state.mtime != attrs.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        seen.add(id);
+        for (int fileId : state.files) {
+            seen.add(fileId);
+            unchanged.add(fileId);
+            files.add(paths.fileOf(fileId));
+        }
+        unchangedFiles.add(state.files.length);
+        skippedDirectories.increment();
+        List<File> subDirs = new ArrayList<>();
+        for (int subId : state.subDirs) {
+            subDirs.add(paths.fileOf(subId));
+        }
+        return subDirs;
+    }
+
+    /**
+     * recordDirectory - stores what a listed directory contains
+     *
+     * @param directory listed directory
+     * @param attrs     attributes of the directory, null - attributes are read here
+     * @param subDirs   sub directories found
+     * @param files     files found
+     */
+    public void recordDirectory(File directory, BasicFileAttributes attrs, List<File> subDirs, List<File> files) {
+        attrs = readIfNull(directory, attrs);
+        if (attrs == null) {
+            return;
+        }
+        int id = idOf(directory);
+        seen.add(id);
+        DirState now = new DirState(attrs.lastModifiedTime().toMillis(), idsOf(subDirs), idsOf(files));
+        DirState before = dirState.put(id, now);
+        // only appended to the log if something changed
+        if (before == null || before.mtime != now.mtime || !Arrays.equals(before.subDirs, now.subDirs) || !Arrays.equals(before.files, now.files)) {
+            dirty.add(id);
+        }
+    }
+
+    /**
+     * @return num of files found unchanged in this run
+     */
+    public long unchangedFiles() {
+        return unchangedFiles.sum();
+    }
+
+    /**
+     * summary - text summary of this run
+     *
+     * @return changed / unchanged files and directories not listed
+     */
+    public String summary() {
+        return changedFiles.sum() + " new or changed files, " + unchangedFiles.sum() + " unchanged files, "
+                + skippedDirectories.sum() + " unchanged directories not listed";
+    }
+
+    /**
+     * save - appends changed records and deletions of entries not seen in this run, compacts if needed
+     *
+     * @param complete true if the run crawled every root completely - entries not seen are deleted, false - only
+     *                 the records of this run are stored (cancelled or resumed run)
+     * @throws IOException if index files can not be written
+     */
+    public synchronized void save(boolean complete) throws IOException {
+        if (!storage.isDirectory() && !storage.mkdirs()) {
+            throw new IOException("Can not create " + storage);
+        }
+        List<Integer> deleted = new ArrayList<>();
+        if (complete) {
+            for (Integer id : fileState.keySet()) {
+                if (!seen.contains(id)) {
+                    deleted.add(id);
+                }
+            }
+            for (Integer id : dirState.keySet()) {
+                if (!seen.contains(id)) {
+                    deleted.add(id);
+                }
+            }
+        }
+        for (Integer id : deleted) {
+            fileState.remove(id);
+            dirState.remove(id);
+        }
+
+        long live = fileState.size() + dirState.size();
+        if (segmentRecords + dirty.size() + deleted.size() > 2 * live + 1024) {
+            compact();
+        } else {
+            try (DataOutputStream dict = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(storage, "paths.dict"), true)));
+                 DataOutputStream segment = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(storage, "segment.dat"), true)))) {
+                writeNames(dict, savedNames);
+                for (Integer id : dirty) {
+                    writeRecord(segment, id);
+                }
+                for (Integer id : deleted) {
+                    segment.writeByte(DELETED);
+                    segment.writeInt(id);
+                }
+                segmentRecords += dirty.size() + deleted.size();
+            }
+        }
+        savedNames = paths.size();
+        dirty.clear();
+    }
+
+    /**
+     * compact - rewrites dictionary and log with live records only (temp files renamed over the old ones)
+     *          - live entries and their ancestors are copied to a new dictionary, every ID held here is mapped to
+     *            its new ID - the names of deleted entries are not written again
+     *
+     * @throws IOException if index files can not be written
+     */
+    private void compact() throws IOException {
+        PathArena live = new PathArena();
+        int[] newIds = new int[paths.size()];
+        Arrays.fill(newIds, -1);
+        Map<Integer, FileState> files = new HashMap<>();
+        for (Map.Entry<Integer, FileState> entry : fileState.entrySet()) {
+            files.put(remap(live, newIds, entry.getKey()), entry.getValue());
+        }
+        Map<Integer, DirState> dirs = new HashMap<>();
+        for (Map.Entry<Integer, DirState> entry : dirState.entrySet()) {
+            DirState dir = entry.getValue();
+            dirs.put(remap(live, newIds, entry.getKey()), new DirState(dir.mtime, remap(live, newIds, dir.subDirs), remap(live, newIds, dir.files)));
+        }
+        fileState.clear();
+        fileState.putAll(files);
+        dirState.clear();
+        dirState.putAll(dirs);
+        remap(newIds, seen);
+        remap(newIds, unchanged);
+        paths = live;
+        // files on disk still use the old IDs until both are renamed - if writing fails, the next save compacts again
+        segmentRecords = Long.MAX_VALUE / 2;
+
+        File dictTmp = new File(storage, "paths.dict.tmp");
+        File segmentTmp = new File(storage, "segment.dat.tmp");
+        try (DataOutputStream dict = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dictTmp)));
+             DataOutputStream segment = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentTmp)))) {
+            writeNames(dict, 0);
+            for (Integer id : fileState.keySet()) {
+                writeRecord(segment, id);
+            }
+            for (Integer id : dirState.keySet()) {
+                writeRecord(segment, id);
+            }
+        }
+        Files.move(dictTmp.toPath(), new File(storage, "paths.dict").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(segmentTmp.toPath(), new File(storage, "segment.dat").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segmentRecords = fileState.size() + dirState.size();
+    }
+
+    /**
+     * remap - new ID of an entry, copies the entry (and its ancestors, parents first) to the new dictionary if needed
+     *
+     * @param live   new dictionary
+     * @param newIds old ID -> new ID (-1 - not copied yet)
+     * @param id     old ID
+     * @return new ID
+     */
+    private int remap(PathArena live, int[] newIds, int id) {
+        if (newIds[id] < 0) {
+            int parent = paths.parentOf(id);
+            newIds[id] = live.idOf((parent == PathArena.NO_PARENT) ? PathArena.NO_PARENT : remap(live, newIds, parent), paths.nameOf(id));
+        }
+        return newIds[id];
+    }
+
+    /**
+     * remap - new IDs of a list of entries
+     */
+    private int[] remap(PathArena live, int[] newIds, int[] ids) {
+        int[] result = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = remap(live, newIds, ids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * remap - replaces the IDs of a set by their new IDs, IDs of entries not copied are dropped
+     */
+    private static void remap(int[] newIds, Set<Integer> ids) {
+        List<Integer> mapped = new ArrayList<>();
+        for (Integer id : ids) {
+            if (newIds[id] >= 0) {
+                mapped.add(newIds[id]);
+            }
+        }
+        ids.clear();
+        ids.addAll(mapped);
+    }
+
+    /**
+     * writeNames - writes dictionary entries from the given ID on
+     *
+     * @param out  dictionary stream
+     * @param from first ID to write
+     * @throws IOException if writing fails
+     */
+    private void writeNames(DataOutputStream out, int from) throws IOException {
+        for (int id = from; id < paths.size(); id++) {
+            out.writeInt(paths.parentOf(id));
+            out.writeUTF(paths.nameOf(id));
+        }
+    }
+
+    /**
+     * writeRecord - writes current state of an ID (file or directory record)
+     *
+     * @param out segment stream
+     * @param id  file or directory ID
+     * @throws IOException if writing fails
+     */
+    private void writeRecord(DataOutputStream out, int id) throws IOException {
+        FileState file = fileState.get(id);
+        if (file != null) {
+            String[] terms = file.terms;
+            out.writeByte((terms == null) ? FILE : FILE_TERMS);
+            out.writeInt(id);
+            out.writeLong(file.size);
+            out.writeLong(file.mtime);
+            if (terms != null) {
+                out.writeInt((terms == BINARY) ? -1 : terms.length);
+                for (String term : terms) {
+                    out.writeUTF(term);
+                }
+            }
+            return;
+        }
+        DirState dir = dirState.get(id);
+        if (dir != null) {
+            out.writeByte(DIRECTORY);
+            out.writeInt(id);
+            out.writeLong(dir.mtime);
+            writeIds(out, dir.subDirs);
+            writeIds(out, dir.files);
+        }
+    }
+
+    /**
+     * writeIds - writes count and IDs
+     */
+    private static void writeIds(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * readIds - reads count and IDs
+     */
+    private static int[] readIds(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * readTerms - reads count and terms of a FILE_TERMS record
+     */
+    private String[] readTerms(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return BINARY;
+        }
+        String[] terms = new String[count];
+        for (int i = 0; i < count; i++) {
+            terms[i] = pooled(in.readUTF());
+        }
+        return terms;
+    }
+
+    /**
+     * load - reads dictionary and replays log (a truncated last record, e.g. after a crash, is ignored)
+     *
+     * @throws IOException if index files can not be read
+     */
+    private void load() throws IOException {
+        File dictFile = new File(storage, "paths.dict");
+        File segmentFile = new File(storage, "segment.dat");
+        if (!dictFile.exists() || !segmentFile.exists()) {
+            return;
+        }
+        try (DataInputStream dict = new DataInputStream(new BufferedInputStream(new FileInputStream(dictFile)))) {
+            while (true) {
+                int parent = dict.readInt();
+                String name = dict.readUTF();
+                // entries are written in ID order, every parent before its children
+                int expected = paths.size();
+                if (parent >= expected || paths.idOf(parent, name) != expected) {
+                    throw new IOException("Corrupt path dictionary " + dictFile);
+                }
+            }
+        } catch (EOFException e) {
+            // end of dictionary
+        }
+        savedNames = paths.size();
+        try (DataInputStream segment = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)))) {
+            while (true) {
+                byte type = segment.readByte();
+                int id = segment.readInt();
+                if (type == FILE || type == FILE_TERMS) {
+                    long size = segment.readLong(), mtime = segment.readLong();
+                    fileState.put(id, new FileState(size, mtime, (type == FILE_TERMS) ? readTerms(segment) : null));
+                } else if (type == DIRECTORY) {
+                    long mtime = segment.readLong();
+                    dirState.put(id, new DirState(mtime, readIds(segment), readIds(segment)));
+                } else if (type == DELETED) {
+                    fileState.remove(id);
+                    dirState.remove(id);
+                } else {
+                    throw new IOException("Corrupt index record in " + segmentFile);
+                }
+                segmentRecords++;
+            }
+        } catch (EOFException e) {
+            // end of log
+        }
+    }
+
+    /**
+     * idOf - ID of the file in the dictionary, adds it (and its parents) if needed
+     *
+     * @param file file or directory
+     * @return ID
+     */
+    private int idOf(File file) {
+        return paths.idOf(file.getAbsoluteFile());
+    }
+
+    /**
+     * idsOf - IDs of a list of files
+     *
+     * @param files files
+     * @return IDs in the same order
+     */
+    private int[] idsOf(List<File> files) {
+        int[] result = new int[files.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = idOf(files.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * pooled - shared instance of a term
+     *
+     * @param term term
+     * @return the first instance of an equal term
+     */
+    private String pooled(String term) {
+        String first = termPool.putIfAbsent(term, term);
+        return (first == null) ? term : first;
+    }
+
+    /**
+     * readIfNull - reads attributes if the caller has none
+     *
+     * @param file  file or directory
+     * @param attrs attributes or null
+     * @return attributes, or null if they can not be read
+     */
+    private static BasicFileAttributes readIfNull(File file, BasicFileAttributes attrs) {
+        if (attrs != null) {
+            return attrs;
+        }
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * PipelineMetrics class - counters and latency histograms of the crawl -> queue -> index pipeline, shared by all stages
+ *          - crawl:  directories / files listed, listing latency (DirectoryLister.measured)
+ *          - queue:  depth, time producers spent blocked on put, time consumers spent idle on take (FileBatchQueue)
+ *          - index:  names checked / matched (Task2), files indexed, bytes read, indexFile latency (ContentIndex)
+ *          - exposed as JMX MBean, as a text snapshot (optionally printed periodically) and as JFR events
+ *            (DirectoryListed, FileIndexed - record with -XX:StartFlightRecording)
+ *          - reading the numbers: producers blocked on put -> consumers (index I/O or CPU) are the bottleneck,
+ *            consumers idle on take -> the crawl (directory I/O) is, neither -> queue bound / batch size
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+    /**
+     * Metrics of this JVM (one pipeline runs at a time)
+     */
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    /**
+     * Thread printing periodic snapshots
+     */
+    private static final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        INSTANCE.register();
+    }
+
+    /**
+     * Counters (LongAdder - updated by many threads)
+     */
+    private final LongAdder directories = new LongAdder(), files = new LongAdder(),
+            putBlockedNanos = new LongAdder(), takeIdleNanos = new LongAdder(),
+            namesChecked = new LongAdder(), namesMatched = new LongAdder(),
+            filesIndexed = new LongAdder(), bytesRead = new LongAdder();
+    /**
+     * Per phase latencies
+     */
+    private final LatencyHistogram listLatency = new LatencyHistogram(), indexLatency = new LatencyHistogram(),
+            putBlockedLatency = new LatencyHistogram(), takeIdleLatency = new LatencyHistogram();
+    /**
+     * Queue of the running pipeline (for depth), null if none
+     */
+    private volatile FileBatchQueue queue;
+    /**
+     * Start of the current run
+     */
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * @return metrics of this JVM (registered as MBean when the class is loaded)
+     */
+    public static PipelineMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * start - resets all numbers for a new run and watches its queue
+     *
+     * @param queue queue of the run
+     */
+    public void start(FileBatchQueue queue) {
+        reset();
+        this.queue = queue;
+    }
+
+    /**
+     * directoryListed - one directory listed
+     *
+     * @param nanos   listing time (includes handing its files to the queue)
+     * @param entries num of files in it
+     */
+    public void directoryListed(long nanos, int entries) {
+        directories.increment();
+        files.add(entries);
+        listLatency.record(nanos);
+    }
+
+    /**
+     * putBlocked - a producer waited for space in the queue
+     *
+     * @param nanos waiting time
+     */
+    public void putBlocked(long nanos) {
+        putBlockedNanos.add(nanos);
+        putBlockedLatency.record(nanos);
+    }
+
+    /**
+     * takeIdle - a consumer waited for a chunk
+     *
+     * @param nanos waiting time
+     */
+    public void takeIdle(long nanos) {
+        takeIdleNanos.add(nanos);
+        takeIdleLatency.record(nanos);
+    }
+
+    /**
+     * namesChecked - Task2 consumer checked names of a chunk
+     *
+     * @param checked num of names checked
+     * @param matched num of them matching the search term
+     */
+    public void namesChecked(int checked, int matched) {
+        namesChecked.add(checked);
+        namesMatched.add(matched);
+    }
+
+    /**
+     * fileIndexed - Task1 consumer read one file
+     *
+     * @param nanos time of indexFile
+     * @param bytes bytes read
+     */
+    public void fileIndexed(long nanos, long bytes) {
+        filesIndexed.increment();
+        bytesRead.add(bytes);
+        indexLatency.record(nanos);
+    }
+
+    public long getDirectoriesCrawled() {
+        return directories.sum();
+    }
+
+    public long getFilesCrawled() {
+        return files.sum();
+    }
+
+    public double getDirectoriesPerSecond() {
+        return perSecond(directories.sum());
+    }
+
+    public double getFilesPerSecond() {
+        return perSecond(files.sum());
+    }
+
+    public int getQueueDepth() {
+        FileBatchQueue current = queue;
+        return (current == null) ? 0 : current.size();
+    }
+
+    public long getPutBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(putBlockedNanos.sum());
+    }
+
+    public long getTakeIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(takeIdleNanos.sum());
+    }
+
+    public long getNamesChecked() {
+        return namesChecked.sum();
+    }
+
+    public long getNamesMatched() {
+        return namesMatched.sum();
+    }
+
+    public double getMatchRate() {
+        long checked = namesChecked.sum();
+        return (checked == 0) ? 0 : (double) namesMatched.sum() / checked;
+    }
+
+    public long getFilesIndexed() {
+        return filesIndexed.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public double getListLatencyP99Micros() {
+        return listLatency.percentile(99) / 1e3;
+    }
+
+    public double getIndexLatencyP99Micros() {
+        return indexLatency.percentile(99) / 1e3;
+    }
+
+    public String getSnapshot() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("[metrics %.1fs] crawl: %d dirs (%.0f/s), %d files (%.0f/s) | queue: depth %d, put blocked %d ms, take idle %d ms"
+                        + " | match: %d of %d names (%.2f%%) | index: %d files, %.1f MB%n"
+                        + "  list   %s%n  index  %s%n  put    %s%n  take   %s",
+                seconds, getDirectoriesCrawled(), getDirectoriesPerSecond(), getFilesCrawled(), getFilesPerSecond(),
+                getQueueDepth(), getPutBlockedMillis(), getTakeIdleMillis(),
+                getNamesMatched(), getNamesChecked(), getMatchRate() * 100, getFilesIndexed(), getBytesRead() / (1024.0 * 1024.0),
+                listLatency.summary(), indexLatency.summary(), putBlockedLatency.summary(), takeIdleLatency.summary());
+    }
+
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{directories, files, putBlockedNanos, takeIdleNanos, namesChecked, namesMatched, filesIndexed, bytesRead}) {
+            adder.reset();
+        }
+        for (LatencyHistogram histogram : new LatencyHistogram[]{listLatency, indexLatency, putBlockedLatency, takeIdleLatency}) {
+            histogram.reset();
+        }
+        queue = null;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * report - prints a snapshot every interval until the returned future is cancelled
+     *
+     * @param intervalSeconds seconds between snapshots
+     * @param out             stream to print to
+     * @return cancel it to stop reporting
+     */
+    public ScheduledFuture<?> report(long intervalSeconds, final PrintStream out) {
+        return reporter.scheduleAtFixedRate(() -> out.println(getSnapshot()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * perSecond - rate since start of the run
+     *
+     * @param value counter
+     * @return value per second
+     */
+    private double perSecond(long value) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return (seconds > 0) ? value / seconds : 0;
+    }
+
+    /**
+     * register - registers this object with the platform MBean server (failures only disable JMX)
+     */
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("DiskCrawler:type=PipelineMetrics"));
+        } catch (JMException | SecurityException e) {
+            System.out.println("Metrics not available over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * DirectoryListedEvent class - JFR event around one directory listing
+     */
+    @Name("DiskCrawler.DirectoryListed")
+    @Label("Directory Listed")
+    @Category("Disk Crawler")
+    static class DirectoryListedEvent extends Event {
+        @Label("Directory")
+        String directory;
+        @Label("Files")
+        int files;
+    }
+
+    /**
+     * FileIndexedEvent class - JFR event around one indexFile call
+     */
+    @Name("DiskCrawler.FileIndexed")
+    @Label("File Indexed")
+    @Category("Disk Crawler")
+    static class FileIndexedEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+        @Label("Binary")
+        boolean binary;
+    }
+}
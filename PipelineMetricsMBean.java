@@ -0,0 +1,37 @@
+/**
+ * PipelineMetricsMBean interface - JMX view of PipelineMetrics (jconsole / VisualVM: DiskCrawler:type=PipelineMetrics)
+ */
+public interface PipelineMetricsMBean {
+
+    long getDirectoriesCrawled();
+
+    long getFilesCrawled();
+
+    double getDirectoriesPerSecond();
+
+    double getFilesPerSecond();
+
+    int getQueueDepth();
+
+    long getPutBlockedMillis();
+
+    long getTakeIdleMillis();
+
+    long getNamesChecked();
+
+    long getNamesMatched();
+
+    double getMatchRate();
+
+    long getFilesIndexed();
+
+    long getBytesRead();
+
+    double getListLatencyP99Micros();
+
+    double getIndexLatencyP99Micros();
+
+    String getSnapshot();
+
+    void reset();
+}
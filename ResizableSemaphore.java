@@ -0,0 +1,50 @@
+import java.util.concurrent.Semaphore;
+
+/**
+ * ResizableSemaphore class - semaphore whose num of permits can be changed while permits are held
+ *          - growing releases the extra permits at once
+ *          - shrinking removes permits (available ones may go below zero), holders are not interrupted - the new
+ *            limit holds as soon as enough of them have released
+ */
+public class ResizableSemaphore extends Semaphore {
+    /**
+     * Serialization version (Semaphore is Serializable)
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Current num of permits (held and available)
+     */
+    private int limit;
+
+    /**
+     * Constructor initializing num of permits
+     *
+     * @param limit num of permits
+     */
+    public ResizableSemaphore(int limit) {
+        super(limit);
+        this.limit = limit;
+    }
+
+    /**
+     * resize - changes num of permits
+     *
+     * @param newLimit new num of permits (at least 1)
+     */
+    public synchronized void resize(int newLimit) {
+        newLimit = Math.max(1, newLimit);
+        if (newLimit > limit) {
+            release(newLimit - limit);
+        } else if (newLimit < limit) {
+            reducePermits(limit - newLimit);
+        }
+        limit = newLimit;
+    }
+
+    /**
+     * @return current num of permits (held and available)
+     */
+    public synchronized int limit() {
+        return limit;
+    }
+}
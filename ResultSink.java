@@ -0,0 +1,81 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * ResultSink interface - receives files found by the Indexer (consumer) threads
+ *          - accept must not do I/O or take a shared lock on the consumer thread - it may only wait for space when
+ *            the output falls behind (backpressure)
+ *          - close is called once after the last consumer is done and writes everything still pending
+ */
+public interface ResultSink {
+
+    /**
+     * accept - hands one found file over
+     *
+     * @param index running num of the found file (1, 2, ...)
+     * @param file  found file
+     */
+    void accept(long index, File file);
+
+    /**
+     * close - writes pending results and releases the output
+     *
+     * @throws IOException if results could not be written
+     */
+    void close() throws IOException;
+
+    /**
+     * Format enum - line format of written results
+     *          - TEXT:  "N. Found path" (original console output)
+     *          - JSONL: one JSON object per line {"index":N,"path":"..."}
+     *          - CSV:   header line, then index,path (path quoted when needed)
+     */
+    enum Format {
+        TEXT, JSONL, CSV;
+
+        /**
+         * header - first line of the output
+         *
+         * @return header line or null
+         */
+        String header() {
+            return (this == CSV) ? "index,path" : null;
+        }
+
+        /**
+         * append - formats one result as a line
+         *
+         * @param line  builder to append to (without line separator)
+         * @param index running num of the file
+         * @param path  path of the file
+         */
+        void append(StringBuilder line, long index, String path) {
+            switch (this) {
+                case JSONL:
+                    line.append("{\"index\":").append(index).append(",\"path\":\"");
+                    for (int i = 0; i < path.length(); i++) {
+                        char ch = path.charAt(i);
+                        if (ch == '"' || ch == '\\') {
+                            line.append('\\').append(ch);
+                        } else if (ch < 0x20) {
+                            line.append(String.format("\\u%04x", (int) ch));
+                        } else {
+                            line.append(ch);
+                        }
+                    }
+                    line.append("\"}");
+                    break;
+                case CSV:
+                    line.append(index).append(',');
+                    if (path.indexOf(',') >= 0 || path.indexOf('"') >= 0 || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                        line.append('"').append(path.replace("\"", "\"\"")).append('"');
+                    } else {
+                        line.append(path);
+                    }
+                    break;
+                default:
+                    line.append(index).append(". Found ").append(path);
+            }
+        }
+    }
+}
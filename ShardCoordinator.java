@@ -0,0 +1,527 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardCoordinator class - splits a Task2 search across worker processes (CrawlConfig.shardWorkers)
+ *          - the top of the tree is split into shards: a directory is expanded breadth first (its own files become a
+ *            shard of depth 1, its sub directories new shards) until there are SHARDS_PER_WORKER shards per worker,
+ *            excluded directories are pruned with the same PathFilter the workers use
+ *          - every worker is a JVM running ShardWorker (or CrawlConfig.shardWorkerCommand, e.g. ssh to a machine with
+ *            the same paths), talking the ShardWorker protocol over its stdin / stdout
+ *          - a coordinator thread per worker hands out shards one at a time from a shared deque, results of a shard are
+ *            kept until its DONE arrives and then merged (count, found files, aggregates)
+ *          - a worker that dies or fails a shard is replaced, the shard goes back to the front of the deque and is
+ *            crawled again from scratch (its partial results are dropped) - up to MAX_ATTEMPTS times
+ *          - a worker that sends nothing (not even its heartbeat) for shardWorkerTimeoutMillis is hung - a watchdog
+ *            kills it, which ends the blocked read, and the shard is retried the same way
+ *          - each worker has its own VisitedIndex, the directories above its shard are marked in it (a symlink back to
+ *            the root is a loop there too), a directory reached through symlinks from two shards is crawled by both,
+ *            found files are merged by (file key, name) so a file is reported once per name, like in one process
+ */
+public class ShardCoordinator {
+    /**
+     * Num of shards aimed at per worker (small shards balance uneven trees)
+     */
+    static final int SHARDS_PER_WORKER = 4;
+    /**
+     * Num of times a shard is tried before it is reported as failed
+     */
+    static final int MAX_ATTEMPTS = 3;
+    /**
+     * Thread checking that the workers still reply
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shard-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Root of the crawl
+     */
+    private final File directory;
+    /**
+     * Search term
+     */
+    private final String term;
+    /**
+     * Settings of the crawl (forwarded to the workers)
+     */
+    private final CrawlConfig config;
+    /**
+     * Shards not crawled yet
+     */
+    private final LinkedBlockingDeque<Shard> shards = new LinkedBlockingDeque<>();
+    /**
+     * Shards given up after MAX_ATTEMPTS
+     */
+    private final List<Shard> failed = Collections.synchronizedList(new ArrayList<Shard>());
+    /**
+     * Running worker processes (destroyed on cancel)
+     */
+    private final List<Process> processes = Collections.synchronizedList(new ArrayList<Process>());
+    /**
+     * Output of the merged results
+     */
+    private final ResultSink sink;
+    /**
+     * Merged aggregates (null - none), guarded by this
+     */
+    private final FileAggregates aggregates;
+    /**
+     * (File key, name) of the found files (a file reached through symlinks from two shards is reported once, a hard
+     * link with another name is reported too), guarded by this
+     */
+    private final Set<String> foundKeys = new HashSet<>();
+    /**
+     * Num of files found in completed shards and num of duplicates dropped, guarded by this
+     */
+    private long found = 0, duplicates = 0;
+    /**
+     * Num of shards crawled again after a failure
+     */
+    private volatile int retries = 0;
+    /**
+     * Set by cancel - workers are killed, nothing is retried
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructor initializing the crawl
+     *
+     * @param directory root of the crawl
+     * @param term      search term
+     * @param config    settings of the crawl, shardWorkers workers
+     * @param sink      output of the merged results
+     */
+    public ShardCoordinator(File directory, String term, CrawlConfig config, ResultSink sink) {
+        this.directory = directory;
+        this.term = term;
+        this.config = config;
+        this.sink = sink;
+        this.aggregates = (config.aggregateTopK > 0) ? new FileAggregates(config.aggregateTopK, new File[]{directory}) : null;
+    }
+
+    /**
+     * start - splits the tree and runs the workers on their own threads
+     *
+     * @return completed with num of files found when all shards are done (cancel it to stop the workers)
+     */
+    public CompletableFuture<Integer> start() {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        result.whenComplete((total, e) -> {
+            if (result.isCancelled()) {
+                cancel();
+            }
+        });
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    result.complete(ShardCoordinator.this.run());
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                } catch (InterruptedException e) {
+                    result.completeExceptionally(e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "shard-coordinator");
+        thread.start();
+        return result;
+    }
+
+    /**
+     * run - splits the tree, crawls all shards and waits for them
+     *
+     * @return num of files found
+     * @throws IOException          if the path filter can not be compiled
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    int run() throws IOException, InterruptedException {
+        PathFilter pathFilter = PathFilter.compile(config, new File[]{directory});
+        split(pathFilter);
+        int workers = Math.max(1, Math.min(config.shardWorkers, shards.size()));
+        System.out.println("[shards] " + shards.size() + " shards for " + workers + " workers");
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    drive(worker);
+                }
+            }, "shard-worker-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // every worker could not be started - nothing took the shards left
+        failed.addAll(shards);
+        shards.clear();
+        return (int) found;
+    }
+
+    /**
+     * summary - shards retried and failed
+     *
+     * @return text summary
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder("Shards: " + config.shardWorkers + " workers, " + retries + " retried, " + failed.size()
+                + " failed, " + duplicates + " duplicates across shards dropped");
+        synchronized (failed) {
+            for (Shard shard : failed) {
+                summary.append(System.lineSeparator()).append("  not crawled: ").append(shard.directory);
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return merged aggregates of the found files (null - none)
+     */
+    public FileAggregates aggregates() {
+        return aggregates;
+    }
+
+    /**
+     * cancel - kills the workers, shards left are not crawled
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (processes) {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * split - expands the tree breadth first until there are enough shards
+     *          - directories are keyed like VisitedIndex does (device / inode, following links), a directory reached a
+     *            second time (symlink back into the tree) does not become a second shard
+     *
+     * @param pathFilter filter of the crawl (excluded directories are not shards)
+     */
+    private void split(PathFilter pathFilter) {
+        int target = Math.max(1, config.shardWorkers) * SHARDS_PER_WORKER;
+        Deque<Shard> open = new ArrayDeque<>();
+        PathFilter.Scope rootScope = pathFilter.scopeOf(directory);
+        if (rootScope == null) {
+            return;
+        }
+        VisitedIndex visited = new VisitedIndex();
+        visited.markDirectory(directory);
+        int nextId = 0;
+        open.add(new Shard(nextId++, directory, config.maxDepth, rootScope, 0));
+        while (!open.isEmpty() && shards.size() + open.size() < target) {
+            Shard expanded = open.poll();
+            File[] children = expanded.directory.listFiles();
+            if (children == null) {
+                continue;
+            }
+            // files of the directory only - a shard whose files are at depth + 1
+            int depth = expanded.depth;
+            if (config.maxDepth == 0 || depth + 1 <= config.maxDepth) {
+                shards.add(new Shard(nextId++, expanded.directory, depth + 1, null, depth));
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    PathFilter.Scope childScope = expanded.scope.enter(child);
+                    if (childScope != null && visited.markDirectory(child)) {
+                        open.add(new Shard(nextId++, child, config.maxDepth, childScope, depth + 1));
+                    }
+                }
+            }
+        }
+        shards.addAll(open);
+    }
+
+    /**
+     * drive - coordinator thread of one worker: starts it, hands out shards until none are left, replaces it when it fails
+     *
+     * @param worker num of the worker (for messages)
+     */
+    private void drive(int worker) {
+        WorkerConnection connection = null;
+        Shard shard;
+        while (!cancelled && (shard = shards.poll()) != null) {
+            try {
+                if (connection == null) {
+                    connection = new WorkerConnection();
+                }
+                List<Found> results = connection.crawl(shard);
+                merge(results);
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.kill();
+                    connection = null;
+                }
+                if (cancelled) {
+                    break;
+                }
+                if (++shard.attempts < MAX_ATTEMPTS) {
+                    retries++;
+                    System.out.println("[shards] worker " + worker + " failed on " + shard.directory + ", retrying: " + e.getMessage());
+                    shards.addFirst(shard);
+                } else {
+                    System.out.println("[shards] giving up on " + shard.directory + ": " + e.getMessage());
+                    failed.add(shard);
+                }
+            }
+        }
+        if (connection != null) {
+            connection.quit();
+        }
+    }
+
+    /**
+     * merge - adds the results of a completed shard
+     *
+     * @param results found files of the shard
+     */
+    private synchronized void merge(List<Found> results) {
+        for (Found result : results) {
+            if (!result.key.isEmpty() && !foundKeys.add(result.key + '/' + result.file.getName())) {
+                duplicates++;
+                continue;
+            }
+            sink.accept(++found, result.file);
+            if (aggregates != null && result.size >= 0) {
+                aggregates.add(result.file, result.size, result.modified);
+            }
+        }
+    }
+
+    /**
+     * Found class - a found file received from a worker
+     */
+    private static class Found {
+        /**
+         * Found file
+         */
+        final File file;
+        /**
+         * File key (device / inode), empty - not known
+         */
+        final String key;
+        /**
+         * Size (-1 - not sent or removed meanwhile) and mtime
+         */
+        final long size, modified;
+
+        Found(File file, String key, long size, long modified) {
+            this.file = file;
+            this.key = key;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Shard class - a directory crawled by one worker
+     */
+    static class Shard {
+        /**
+         * Shard ID (matches results to the shard)
+         */
+        final int id;
+        /**
+         * Directory of the shard
+         */
+        final File directory;
+        /**
+         * Max depth of files below the root of the crawl, 0 - no limit
+         */
+        final int maxDepth;
+        /**
+         * Filter scope and depth below the root (only used while splitting)
+         */
+        final PathFilter.Scope scope;
+        final int depth;
+        /**
+         * Num of failed attempts
+         */
+        int attempts = 0;
+
+        Shard(int id, File directory, int maxDepth, PathFilter.Scope scope, int depth) {
+            this.id = id;
+            this.directory = directory;
+            this.maxDepth = maxDepth;
+            this.scope = scope;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * WorkerConnection class - one worker process and its protocol streams
+     */
+    private class WorkerConnection {
+        /**
+         * Worker process
+         */
+        private final Process process;
+        /**
+         * Replies of the worker
+         */
+        private final DataInputStream in;
+        /**
+         * Requests to the worker
+         */
+        private final DataOutputStream out;
+        /**
+         * Time the shard was sent or the last message of the worker was read
+         */
+        private volatile long lastReplyNanos;
+        /**
+         * Set by the watchdog when it killed the worker for not replying
+         */
+        private volatile boolean timedOut = false;
+
+        /**
+         * Constructor starting the worker and sending the settings
+         *
+         * @throws IOException if the worker can not be started
+         */
+        WorkerConnection() throws IOException {
+            List<String> command = new ArrayList<>(config.shardWorkerCommand);
+            if (command.isEmpty()) {
+                command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add("ShardWorker");
+            }
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = builder.start();
+            processes.add(process);
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream(), 64 * 1024));
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            ShardWorker.writeSettings(out, term, directory, config, aggregates != null);
+            out.flush();
+        }
+
+        /**
+         * crawl - sends a shard and reads its results until DONE, the watchdog kills the worker if it stops replying
+         *
+         * @param shard shard
+         * @return found files
+         * @throws IOException if the worker died, did not reply in time or failed the shard
+         */
+        List<Found> crawl(Shard shard) throws IOException {
+            final long timeoutNanos = config.shardWorkerTimeoutMillis * 1_000_000L;
+            long period = Math.max(1, config.shardWorkerTimeoutMillis / 4);
+            lastReplyNanos = System.nanoTime();
+            ScheduledFuture<?> check = watchdog.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    if (System.nanoTime() - lastReplyNanos > timeoutNanos) {
+                        timedOut = true;
+                        process.destroyForcibly();
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+            try {
+                return readResults(shard);
+            } catch (IOException e) {
+                if (timedOut) {
+                    throw new IOException("no reply for " + config.shardWorkerTimeoutMillis + " ms", e);
+                }
+                throw e;
+            } finally {
+                check.cancel(false);
+            }
+        }
+
+        /**
+         * readResults - sends a shard and reads its results until DONE
+         *
+         * @param shard shard
+         * @return found files
+         * @throws IOException if the worker died or failed the shard
+         */
+        private List<Found> readResults(Shard shard) throws IOException {
+            out.writeByte(ShardWorker.SHARD);
+            out.writeInt(shard.id);
+            out.writeUTF(shard.directory.getPath());
+            out.writeInt(shard.maxDepth);
+            out.flush();
+            List<Found> results = new ArrayList<>();
+            boolean attributes = aggregates != null;
+            while (true) {
+                byte type = in.readByte();
+                lastReplyNanos = System.nanoTime();
+                int id = in.readInt();
+                if (id != shard.id) {
+                    throw new IOException("Result of shard " + id + " while crawling " + shard.id);
+                }
+                switch (type) {
+                    case ShardWorker.RESULTS:
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            File file = new File(shard.directory, in.readUTF());
+                            String key = in.readUTF();
+                            long size = attributes ? in.readLong() : -1;
+                            long modified = attributes ? in.readLong() : 0;
+                            results.add(new Found(file, key, size, modified));
+                        }
+                        break;
+                    case ShardWorker.HEARTBEAT:
+                        break;
+                    case ShardWorker.DONE:
+                        int total = in.readInt();
+                        if (total != results.size()) {
+                            throw new IOException("Shard " + shard.directory + ": " + results.size() + " of " + total + " results received");
+                        }
+                        return results;
+                    case ShardWorker.FAILED:
+                        throw new IOException(in.readUTF());
+                    default:
+                        throw new IOException("Unknown message " + type);
+                }
+            }
+        }
+
+        /**
+         * quit - tells the worker to stop and waits for it
+         */
+        void quit() {
+            try {
+                out.writeByte(ShardWorker.QUIT);
+                out.flush();
+                process.waitFor();
+            } catch (IOException e) {
+                kill();
+            } catch (InterruptedException e) {
+                kill();
+                Thread.currentThread().interrupt();
+            }
+            processes.remove(process);
+        }
+
+        /**
+         * kill - stops a failed worker
+         */
+        void kill() {
+            process.destroyForcibly();
+            processes.remove(process);
+        }
+    }
+}
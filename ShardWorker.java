@@ -0,0 +1,448 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardWorker class - worker process of a sharded crawl, started by the ShardCoordinator
+ *          - reads the settings of the crawl, then crawls one shard (directory) after the other with the Task2 pipeline
+ *            (FileCrawler / Indexer) until told to quit
+ *          - found files are streamed back in batches while the shard is crawled: path below the shard directory,
+ *            file key (device / inode - the coordinator drops a file found under the same name by two workers),
+ *            size and mtime (only when the coordinator builds aggregates)
+ *          - protocol is binary (DataInput / DataOutput) over stdin / stdout, anything printed by the pipeline is dropped,
+ *            so the worker can run over any stream pair (local pipe, ssh to another machine with the same paths)
+ *          - messages (coordinator -> worker): SETTINGS once, SHARD id path maxDepth, QUIT
+ *                     (worker -> coordinator): RESULTS id count (path key [size mtime])*, HEARTBEAT id, DONE id total,
+ *                                              FAILED id message
+ *          - while a shard is crawled, HEARTBEAT is sent when nothing else was sent for heartbeatMillis, so the
+ *            coordinator can tell a slow shard from a hung worker
+ */
+public class ShardWorker {
+    /**
+     * Message types
+     */
+    static final byte SETTINGS = 'C', SHARD = 'S', QUIT = 'Q', RESULTS = 'R', HEARTBEAT = 'H', DONE = 'D', FAILED = 'E';
+    /**
+     * Max num of files in one RESULTS message
+     */
+    static final int RESULT_BATCH = 256;
+    /**
+     * Queued to a result sink by close() after the last found file
+     */
+    private static final File END = new File("");
+
+    /**
+     * Requests from the coordinator
+     */
+    private final DataInputStream in;
+    /**
+     * Replies to the coordinator (guarded by itself - the result sender and the shard loop write)
+     */
+    private final DataOutputStream out;
+    /**
+     * Settings of the crawl (maxDepth, filterRoot and resultSink are set per shard)
+     */
+    private final CrawlConfig settings = new CrawlConfig();
+    /**
+     * Search term
+     */
+    private String term;
+    /**
+     * True if size and mtime of found files are sent
+     */
+    private boolean sendAttributes;
+    /**
+     * Max time between two messages while a shard is crawled
+     */
+    private long heartbeatMillis = 15_000;
+
+    /**
+     * Constructor initializing the streams
+     *
+     * @param in  requests from the coordinator
+     * @param out replies to the coordinator
+     */
+    public ShardWorker(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+
+    /**
+     * main - serves the coordinator over stdin / stdout, pipeline output is dropped (stderr is kept for errors)
+     */
+    public static void main(String[] args) {
+        OutputStream protocol = new FileOutputStream(FileDescriptor.out);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            new ShardWorker(new FileInputStream(FileDescriptor.in), protocol).serve();
+        } catch (IOException e) {
+            System.err.println("Shard worker: " + e.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * serve - crawls shards until QUIT or the coordinator goes away
+     *
+     * @throws IOException if the coordinator can not be read / written
+     */
+    public void serve() throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            switch (type) {
+                case SETTINGS:
+                    readSettings();
+                    break;
+                case SHARD:
+                    int id = in.readInt();
+                    File directory = new File(in.readUTF());
+                    int maxDepth = in.readInt();
+                    crawlShard(id, directory, maxDepth);
+                    break;
+                case QUIT:
+                    return;
+                default:
+                    throw new IOException("Unknown message " + type);
+            }
+        }
+    }
+
+    /**
+     * readSettings - settings of the crawl, same for every shard
+     *
+     * @throws IOException if the coordinator can not be read
+     */
+    private void readSettings() throws IOException {
+        term = in.readUTF();
+        settings.filterRoot = new File(in.readUTF());
+        settings.crawlerParallelism = in.readInt();
+        settings.consumers = in.readInt();
+        settings.batchSize = in.readInt();
+        settings.queueCapacity = in.readInt();
+        settings.exclude = readList();
+        settings.include = readList();
+        String excludeFile = in.readUTF();
+        settings.excludeFile = excludeFile.isEmpty() ? null : new File(excludeFile);
+        String ignoreFileName = in.readUTF();
+        settings.ignoreFileName = ignoreFileName.isEmpty() ? null : ignoreFileName;
+        settings.minFileSize = in.readLong();
+        settings.maxFileSize = in.readLong();
+        settings.modifiedAfter = in.readLong();
+        settings.modifiedBefore = in.readLong();
+        sendAttributes = in.readBoolean();
+        heartbeatMillis = in.readLong();
+    }
+
+    /**
+     * writeSettings - counterpart of readSettings (coordinator side)
+     *
+     * @param out        stream to the worker
+     * @param term       search term
+     * @param filterRoot root of the crawl (path filter rules are anchored at it)
+     * @param config     settings of the crawl
+     * @param attributes true if size and mtime of found files are wanted
+     * @throws IOException if the worker can not be written
+     */
+    static void writeSettings(DataOutputStream out, String term, File filterRoot, CrawlConfig config, boolean attributes) throws IOException {
+        out.writeByte(SETTINGS);
+        out.writeUTF(term);
+        out.writeUTF(filterRoot.getPath());
+        out.writeInt(config.crawlerParallelism);
+        out.writeInt(config.consumers);
+        out.writeInt(config.batchSize);
+        out.writeInt(config.queueCapacity);
+        writeList(out, config.exclude);
+        writeList(out, config.include);
+        out.writeUTF((config.excludeFile == null) ? "" : config.excludeFile.getAbsolutePath());
+        out.writeUTF((config.ignoreFileName == null) ? "" : config.ignoreFileName);
+        out.writeLong(config.minFileSize);
+        out.writeLong(config.maxFileSize);
+        out.writeLong(config.modifiedAfter);
+        out.writeLong(config.modifiedBefore);
+        out.writeBoolean(attributes);
+        out.writeLong(Math.max(1, config.shardWorkerTimeoutMillis / 4));
+    }
+
+    /**
+     * crawlShard - crawls one shard, results are streamed while crawling, DONE (or FAILED) ends it
+     *
+     * @param id        shard ID
+     * @param directory directory of the shard
+     * @param maxDepth  max depth of files below the root of the crawl, 0 - no limit
+     * @throws IOException if the coordinator can not be written
+     */
+    private void crawlShard(int id, File directory, int maxDepth) throws IOException {
+        settings.maxDepth = maxDepth;
+        ShardResultSink sink = new ShardResultSink(id, directory);
+        settings.resultSink = sink;
+        int total;
+        try {
+            total = Task2_ProducerConsumer.startIndexing(directory, new File(term), settings).join();
+        } catch (CompletionException e) {
+            sink.close();
+            synchronized (out) {
+                out.writeByte(FAILED);
+                out.writeInt(id);
+                out.writeUTF(String.valueOf(e.getCause()));
+                out.flush();
+            }
+            return;
+        }
+        // startIndexing closed the sink - all RESULTS are written before DONE
+        sink.close();
+        synchronized (out) {
+            out.writeByte(DONE);
+            out.writeInt(id);
+            out.writeInt(total);
+            out.flush();
+        }
+    }
+
+    /**
+     * readList - list of strings
+     *
+     * @return strings
+     * @throws IOException if the coordinator can not be read
+     */
+    private List<String> readList() throws IOException {
+        int size = in.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(in.readUTF());
+        }
+        return list;
+    }
+
+    /**
+     * writeList - list of strings
+     *
+     * @param out  stream
+     * @param list strings
+     * @throws IOException if the stream can not be written
+     */
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            out.writeUTF(s);
+        }
+    }
+
+    /**
+     * ShardResultSink class - ResultSink sending the found files of a shard to the coordinator
+     *          - consumers only add to a bounded queue (waiting for space when the coordinator falls behind), a sender
+     *            thread waits on it, stats the files (when asked for) and writes RESULTS messages of up to RESULT_BATCH
+     *            files (same pattern as AsyncResultWriter)
+     *          - the sender also writes the HEARTBEAT of the shard when nothing was sent for heartbeatMillis
+     */
+    private class ShardResultSink implements ResultSink {
+        /**
+         * Shard ID
+         */
+        private final int id;
+        /**
+         * Shard directory path with separator - sent paths are relative to it
+         */
+        private final String prefix;
+        /**
+         * Files waiting to be sent, END after the last one
+         */
+        private final BlockingQueue<File> pending = new ArrayBlockingQueue<>(AsyncResultWriter.CAPACITY);
+        /**
+         * Thread sending the results
+         */
+        private final Thread sender;
+        /**
+         * First send error (later files are taken from the queue and dropped), reported by close()
+         */
+        private volatile IOException error;
+        /**
+         * Time of the last message sent (sender thread only)
+         */
+        private long lastSentNanos = System.nanoTime();
+
+        /**
+         * Constructor starting the sender thread
+         *
+         * @param id        shard ID
+         * @param directory shard directory
+         */
+        ShardResultSink(int id, File directory) {
+            this.id = id;
+            this.prefix = directory.getPath().endsWith(File.separator) ? directory.getPath() : directory.getPath() + File.separator;
+            this.sender = new Thread(new Runnable() {
+                public void run() {
+                    sendLoop();
+                }
+            }, "shard-result-sender");
+            this.sender.setDaemon(true);
+            this.sender.start();
+        }
+
+        public void accept(long index, File file) {
+            if (error != null) {
+                return;
+            }
+            try {
+                pending.put(file);
+            } catch (InterruptedException e) {
+                // consumer interrupted (shard cancelled) - the file is dropped
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void close() throws IOException {
+            boolean interrupted = false;
+            // the sender drains the queue also after an error, so put waits briefly - closed twice, the sender is gone
+            while (sender.isAlive()) {
+                try {
+                    pending.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            while (sender.isAlive()) {
+                try {
+                    sender.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        /**
+         * sendLoop - sender thread: waits for found files and sends them in batches until END, sends the heartbeat
+         *            when nothing was sent for heartbeatMillis
+         */
+        private void sendLoop() {
+            List<File> round = new ArrayList<>(), batch = new ArrayList<>(RESULT_BATCH);
+            boolean last = false;
+            while (!last) {
+                try {
+                    long wait = heartbeatMillis * 1_000_000L - (System.nanoTime() - lastSentNanos);
+                    File first = pending.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        if (error == null) {
+                            heartbeat();
+                        }
+                        continue;
+                    }
+                    round.add(first);
+                } catch (InterruptedException e) {
+                    // nobody else interrupts the sender - keep waiting for END, close() waits for it
+                    continue;
+                } catch (IOException e) {
+                    error = e;
+                    continue;
+                }
+                pending.drainTo(round);
+                try {
+                    for (File file : round) {
+                        if (file == END) {
+                            last = true;
+                            break;
+                        }
+                        if (error != null) {
+                            continue;
+                        }
+                        batch.add(file);
+                        if (batch.size() == RESULT_BATCH) {
+                            send(batch);
+                        }
+                    }
+                    if (!batch.isEmpty() && error == null) {
+                        send(batch);
+                    }
+                } catch (IOException e) {
+                    error = e;
+                }
+                batch.clear();
+                round.clear();
+            }
+        }
+
+        /**
+         * send - writes one RESULTS message
+         *
+         * @param batch found files (cleared)
+         * @throws IOException if the coordinator can not be written
+         */
+        private void send(List<File> batch) throws IOException {
+            long[] sizes = new long[batch.size()], modified = new long[batch.size()];
+            String[] keys = new String[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(batch.get(i).toPath(), BasicFileAttributes.class);
+                    keys[i] = (attrs.fileKey() == null) ? "" : attrs.fileKey().toString();
+                    sizes[i] = attrs.size();
+                    modified[i] = attrs.lastModifiedTime().toMillis();
+                } catch (IOException | InvalidPathException e) {
+                    // removed meanwhile - no key, size -1 (not counted by the aggregates)
+                    keys[i] = "";
+                    sizes[i] = -1;
+                }
+            }
+            synchronized (out) {
+                out.writeByte(RESULTS);
+                out.writeInt(id);
+                out.writeInt(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    String path = batch.get(i).getPath();
+                    out.writeUTF(path.startsWith(prefix) ? path.substring(prefix.length()) : path);
+                    out.writeUTF(keys[i]);
+                    if (sendAttributes) {
+                        out.writeLong(sizes[i]);
+                        out.writeLong(modified[i]);
+                    }
+                }
+                out.flush();
+            }
+            lastSentNanos = System.nanoTime();
+            batch.clear();
+        }
+
+        /**
+         * heartbeat - tells the coordinator the shard is still being crawled
+         *
+         * @throws IOException if the coordinator can not be written
+         */
+        private void heartbeat() throws IOException {
+            synchronized (out) {
+                out.writeByte(HEARTBEAT);
+                out.writeInt(id);
+                out.flush();
+            }
+            lastSentNanos = System.nanoTime();
+        }
+    }
+}
@@ -1,9 +1,11 @@
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ProducerConsumer
@@ -14,198 +16,490 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class Task1_ProducerConsumer {
     /**
-     * FileCrawler class: producer class
-     * Adding/putting file to Blocking Queue if it's not directory
+     * Indexer class - CONSUMER. -> goes through the queue and take files out with keeping the count of total num of removed files
      */
-    static class FileCrawler implements Runnable {
+    static class Indexer implements Runnable {
         /**
          * FileQueue adding files into
          */
-        private final BlockingQueue<File> fileQueue;
+        private final FileBatchQueue queue;
+        /**
+         * Run this consumer belongs to - counter of the files removed from Queue, checkpoint and scheduler of the crawl
+         */
+        private final CrawlRun run;
+        /**
+         * Inverted index of file contents (term -> file IDs) shared by all consumers of the run
+         */
+        private final ContentIndex contentIndex;
+        /**
+         * Executor reading the files of a batch in parallel (virtual threads), null - files are read on the consumer thread
+         */
+        private final ExecutorService fileReaders;
         /**
-         * FileFilter
+         * Completion of the crawl - told when this consumer is done
          */
-        private final FileFilter fileFilter;
+        private final CrawlCompletion completion;
         /**
-         * Root of the file structure
+         * Aggregates of the files taken by this consumer (own partial, merged at the end), null - no aggregates
          */
-        private final File root;
+        private final FileAggregates aggregates;
         /**
-         * fileWithDirArrayList to check the file is already indexed or not
+         * Size groups of the files taken by this consumer in duplicate finder mode (own partial), null - files are indexed
          */
-        private static ArrayList<FileWithDir> fileWithDirArrayList = new ArrayList<>();
+        private final DuplicateFinder duplicates;
 
         /**
-         * Constructor initializing fileQueue, fileFilter, root
+         * Constructor initializes queue and the content index
          *
-         * @param fileQueue  Getting queue with specific bound
-         * @param fileFilter filter to accept file's pathname
-         * @param root       root file from file structure
-         */
-        public FileCrawler(BlockingQueue<File> fileQueue, final FileFilter fileFilter, File root) {
-            this.fileQueue = fileQueue;
-            this.root = root;
-            // not filtering using FileFilter. It returns true.
-            this.fileFilter = new FileFilter() {
-                public boolean accept(File f) {
-                    return f.isDirectory() || fileFilter.accept(f);
-                }
-            };
+         * @param queue        batched queue of Files
+         * @param completion   completion of the crawl
+         * @param run          run this consumer belongs to
+         * @param contentIndex content index of the run
+         */
+        public Indexer(FileBatchQueue queue, CrawlCompletion completion, CrawlRun run, ContentIndex contentIndex) {
+            this(queue, completion, run, contentIndex, null, null, null);
         }
 
         /**
-         * alreadyIndexed - check the file and directory is checked before or not (ArrayList)
-         * - adds to ArrayList if not indexed
-         * - working with files & directory to make the object unique (only one file can be found with that name in particular directory)
+         * Constructor initializes queue, content index, parallel reads, aggregates and duplicate finder mode
          *
-         * @param file      file to compare
-         * @param directory directory to compare file is from which directory as a
-         * @return true if file is already indexed or false
+         * @param queue        batched queue of Files
+         * @param completion   completion of the crawl
+         * @param run          run this consumer belongs to
+         * @param contentIndex content index of the run
+         * @param fileReaders  executor reading the files of a batch in parallel (null - read on the consumer thread)
+         * @param aggregates   partial aggregates owned by this consumer (null - no aggregates)
+         * @param duplicates   partial size groups owned by this consumer (null - files are indexed)
          */
-        private boolean alreadyIndexed(File file, File directory) {
-            FileWithDir newFileDir = new FileWithDir(file);
-            if (fileWithDirArrayList.contains(newFileDir)) {
-                System.out.println("P: Found the same item! <---------");
-                return true;
-            }
-            return false;
+        public Indexer(FileBatchQueue queue, CrawlCompletion completion, CrawlRun run, ContentIndex contentIndex, ExecutorService fileReaders,
+                       FileAggregates aggregates, DuplicateFinder duplicates) {
+            this.queue = queue;
+            this.completion = completion;
+            this.run = run;
+            this.contentIndex = contentIndex;
+            this.fileReaders = fileReaders;
+            this.aggregates = aggregates;
+            this.duplicates = duplicates;
         }
 
         /**
-         * Run method calls recursive crawl method with passing root, and adds poison objects
+         * Takes files until the queue is closed and drained (or the crawl is cancelled) and indexes them.
          */
         public void run() {
             try {
-                crawl(root);
-
-                // implemented exit logic - poison object with the count of N_CONSUMERS
-                for (int i = 0; i < N_CONSUMERS-1; i++) {
-                    fileQueue.put(new File("POISON"));
+                while (true) {
+                    // one take per chunk of files, null - no more files
+                    File[] batch = queue.take();
+                    if (batch == null) {
+                        return;
+                    }
+                    // delete events of live mode - removed from the index, not counted or aggregated
+                    File[] files = withoutDeleted(batch);
+                    if (aggregates != null) {
+                        for (File currFile : files) {
+                            aggregates.add(currFile);
+                        }
+                    }
+                    // duplicate finder mode - only the size is needed now, contents are hashed when the crawl is done
+                    if (duplicates != null) {
+                        for (File currFile : files) {
+                            run.counter.incrementAndGet();
+                            duplicates.add(currFile);
+                        }
+                        processed(batch);
+                        if (run.shouldRetire()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    final ExecutorService readers = fileReaders;
+                    if (readers == null) {
+                        for (File currFile : files) {
+                            indexFile(currFile);
+                        }
+                        processed(batch);
+                        if (run.shouldRetire()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    // one (virtual) thread per file - blocking reads overlap, open files are capped by ContentReader
+                    List<Callable<Void>> reads = new ArrayList<>();
+                    for (final File currFile : files) {
+                        reads.add(new Callable<Void>() {
+                            public Void call() {
+                                indexFile(currFile);
+                                return null;
+                            }
+                        });
+                    }
+                    readers.invokeAll(reads);
+                    processed(batch);
+                    if (run.shouldRetire()) {
+                        return;
+                    }
                 }
-                fileQueue.put(new File("FINALMSG"));
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+            } finally {
+                completion.consumerDone();
             }
         }
 
         /**
-         * crawl recursive method goes through all directories inside root and adds files to queue
+         * withoutDeleted - removes the files of delete events from the index and leaves them out of the chunk
          *
-         * @param root root file to start from
-         * @throws InterruptedException if thread interrupted, throws exception
+         * @param batch chunk taken from the queue
+         * @return files of the chunk still to index (the chunk itself if it has no delete events)
          */
-        private void crawl(File root) throws InterruptedException {
-            File[] entries = root.listFiles(fileFilter);
-
-            if (entries != null) {
-                for (File entry : entries) {
-                    // if entry is directory - recursion call for files
-                    if (entry.isDirectory()) {
-                        crawl(entry);
-                    }
-                    else if (!alreadyIndexed(entry, root)) {
-                        fileWithDirArrayList.add(new FileWithDir(entry));
-                        fileQueue.put(entry);
-                    }
-                    else if (alreadyIndexed(entry, root)) {
-                        //System.out.println("P: found same item");                        // for debug
+        private File[] withoutDeleted(File[] batch) {
+            List<File> files = null;
+            for (int i = 0; i < batch.length; i++) {
+                if (batch[i] instanceof DirectoryWatcher.DeletedFile) {
+                    if (files == null) {
+                        files = new ArrayList<>(Arrays.asList(batch).subList(0, i));
                     }
+                    contentIndex.removeFile(batch[i]);
+                } else if (files != null) {
+                    files.add(batch[i]);
                 }
-
             }
+            return (files == null) ? batch : files.toArray(new File[0]);
         }
-    }
 
-    /**
-     * Indexer class - CONSUMER. -> goes through the queue and take files out with keeping the count of total num of removed files
-     */
-    static class Indexer implements Runnable {
         /**
-         * FileQueue adding files into
-         */
-        private final BlockingQueue<File> queue;
-        /**
-         * For random generation
-         */
-        private Random random = new Random();
-        /**
-         * For count the number of files removed from Queue
-         *          AtomicInteger - because without using AtomicInteger, the counter was miss calculating because of multiple Threads.
-         */
-        public static AtomicInteger counter = new AtomicInteger();
-
-        /**
-         * Constructor initializes queue
+         * processed - tells the checkpoint (if any) a chunk is done
          *
-         * @param queue BlockingQueue of Files
+         * @param batch chunk taken from the queue
          */
-        public Indexer(BlockingQueue<File> queue) {
-            this.queue = queue;
+        private void processed(File[] batch) {
+            if (run.checkpoint != null) {
+                run.checkpoint.processed(batch, null);
+            }
         }
 
         /**
-         * Checks file is not poison and indexes it.
+         * saveIndex - stores the crawl in the persistent index (incremental mode only)
+         *
+         * @param index    persistent index of the run (null - nothing to save)
+         * @param complete true if every root was crawled completely (entries not seen are deleted from the index)
          */
-        public void run() {
-            while (true) {
-                try {
-                    File currFile = queue.take();
-                    if (!currFile.getName().equals("POISON") && !currFile.getName().equals("FINALMSG")) {
-                        indexFile();
-                    }
-                    else if (currFile.getName().equals("POISON")) {
-                        //System.out.println("C: Got POISON - exiting thread: " + Thread.currentThread().getName());            //for debug
-                        break;
-                    }
-                    else if (currFile.getName().equals("FINALMSG")) {
-                        // producer added "FINALMSG" as a possion for one last thread to print RESULTS
-                        System.out.println("\nTOTAL FILES received: " + counter.get());
-                        break;
-                    }
-
-                    Thread.sleep(random.nextInt(500));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+        static void saveIndex(PersistentIndex index, boolean complete) {
+            if (index == null) {
+                return;
+            }
+            try {
+                index.save(complete);
+                System.out.println("Persistent index: " + index.summary());
+            } catch (IOException e) {
+                System.out.println("Persistent index could not be saved: " + e.getMessage());
             }
-
         }
 
         /**
-         * indexFile increments the counter
+         * indexFile increments the counter and adds file contents to the inverted index
+         *
+         * @param currFile file taken from queue
          */
-        public void indexFile() {
-            counter.incrementAndGet();
+        public void indexFile(File currFile) {
+            run.counter.incrementAndGet();
+            // not readable - if it no longer exists (deleted after a modify event in live mode), remove it from the index
+            if (contentIndex.indexFile(currFile) < 0 && !currFile.exists()) {
+                contentIndex.removeFile(currFile);
+            }
         }
     }
 
     /**
-     * BOUND for blockingQueue
+     * startIndexing method starts threads for producer and consumer for crawling through files
+     *
+     * @param roots toor file to start from
+     * @return completed with total num of files when all consumers are done (cancel it to stop the crawl)
      */
-    private static final int BOUND = 10;
+    public static CompletableFuture<Integer> startIndexing(File[] roots) {
+        return startIndexing(roots, new CrawlConfig());
+    }
+
     /**
-     * Num of consumers based on the available processor
+     * startIndexing method starts threads for producer and consumer for crawling through files
+     *          - all roots share one ForkJoinPool, each sub directory is a stealable task
+     *
+     * @param roots  root files to start from
+     * @param config crawler parallelism (0 - crawl each root recursively on its own thread), num of consumers, listing backend, queue bound,
+     *               batch size, content read path, persistent index for incremental re-crawls, live mode,
+     *               execution mode (platform / virtual threads), limits of open directories and files, metrics snapshots
+     *               aggregates (top-K, size by extension / directory), duplicate finder mode, adaptive sizing, checkpoints,
+     *               the path filter (exclude rules, rule files, include globs, max depth, size / mtime limits) and the listing cache
+     * @return completed with total num of files when all consumers are done (cancel it to stop the crawl)
      */
-    private static final int N_CONSUMERS = Runtime.getRuntime().availableProcessors();
+    public static CompletableFuture<Integer> startIndexing(File[] roots, CrawlConfig config) {
+        return startCrawl(roots, config).future();
+    }
 
     /**
-     * startIndexing method starts threads for producer and consumer for crawling through files
+     * startCrawl - same as startIndexing(roots, config), the crawl returned also gives the content index it builds
      *
-     * @param roots toor file to start from
+     * @param roots  root files to start from
+     * @param config settings of the crawl (see startIndexing)
+     * @return crawl - its future completes with total num of files when all consumers are done
      */
-    public static void startIndexing(File[] roots) {
-        //using Blocking Queue with BOUND
-        BlockingQueue<File> queue = new LinkedBlockingQueue<File>(BOUND);
+    static Crawl startCrawl(File[] roots, CrawlConfig config) {
+        // every run has its own state (startIndexing can be called again in the same JVM, e.g. by the JMH benchmarks)
+        final Crawl crawl = new Crawl(config);
+        final CrawlRun run = crawl.run;
+        // incremental re-crawl - files unchanged since the last run are not read again
+        if (config.indexDirectory != null) {
+            try {
+                run.persistentIndex = PersistentIndex.open(config.indexDirectory, config.trustDirectoryMtime);
+            } catch (IOException e) {
+                System.out.println("Persistent index could not be loaded, doing a full crawl: " + e.getMessage());
+            }
+        }
+        run.maxWatchedDirectories = config.watch ? config.maxWatchedDirectories : 0;
+        // filter compiled once - excluded directories are pruned while listing
+        final PathFilter pathFilter;
+        try {
+            pathFilter = PathFilter.compile(config, roots);
+        } catch (IOException e) {
+            crawl.future = new CompletableFuture<>();
+            crawl.future.completeExceptionally(e);
+            return crawl;
+        }
+        run.pathFilter = pathFilter;
+        // checkpoints - a stopped run of the same roots resumes from its frontier and pending files
+        CrawlCheckpoint checkpoint = null;
+        CrawlCheckpoint.State resumed = null;
+        if (config.checkpointFile != null) {
+            String key = "task1:" + Arrays.toString(roots);
+            checkpoint = new CrawlCheckpoint(config.checkpointFile, key);
+            try {
+                resumed = checkpoint.load();
+            } catch (IOException e) {
+                System.out.println("Checkpoint could not be loaded, starting from scratch: " + e.getMessage());
+                checkpoint = new CrawlCheckpoint(config.checkpointFile, key);
+            }
+        }
+        run.checkpoint = checkpoint;
+        List<File> frontier = new ArrayList<>(), pending = new ArrayList<>();
+        if (resumed != null) {
+            // listed directories are not listed again, pending files are queued by their crawler (not by a relisting),
+            // files already processed are skipped when their directory is listed again
+            for (File directory : resumed.completed) {
+                run.visitedIndex.markDirectory(directory);
+            }
+            for (File file : resumed.pending) {
+                run.visitedIndex.markFile(file);
+            }
+            for (File file : resumed.partial) {
+                run.visitedIndex.markFile(file);
+            }
+            frontier.addAll(resumed.frontier);
+            pending.addAll(resumed.pending);
+            run.counter.set((int) resumed.processed);
+            System.out.println("Resuming from checkpoint: " + resumed.summary());
+        }
+        // content index reading files with the configured read path, one pooled buffer per file read at once
+        Semaphore openFiles = (config.maxOpenFiles > 0) ? new Semaphore(config.maxOpenFiles) : null;
+        int readers = (config.execution == ExecutionMode.VIRTUAL && openFiles != null) ? config.maxOpenFiles
+                : config.adaptive ? config.maxConsumers : config.consumers;
+        final ContentIndex contentIndex = new ContentIndex(new ContentReader(config.readMode, config.mmapThreshold, openFiles, readers),
+                new PathArena(config.offHeapPaths));
+        contentIndex.setPersistentIndex(run.persistentIndex);
+        crawl.contentIndex = contentIndex;
+        // without virtual threads the reads of all consumers share a fixed pool of consumers threads
+        final ExecutorService fileReaders = (config.execution == ExecutionMode.VIRTUAL) ? config.execution.newExecutor(config.consumers) : null;
+        //using batched queue with BOUND (in chunks)
+        FileBatchQueue queue = new FileBatchQueue(config.queueCapacity, config.batchSize);
+        queue.setCheckpoint(checkpoint);
+        final PipelineMetrics metrics = PipelineMetrics.get();
+        metrics.start(queue);
+        final ScheduledFuture<?> reporting = (config.metricsInterval > 0) ? metrics.report(config.metricsInterval, System.out) : null;
         // not filtering using FileFilter. It returns true.
         FileFilter filter = new FileFilter() {public boolean accept(File file) {  return true;  }   };
+        // every root has its own producer - the last one to finish closes the queue
+        int consumers = Math.max(1, config.consumers);
+        CrawlCompletion completion = new CrawlCompletion(queue, roots.length, consumers, () -> run.counter.get());
 
 
+        // pool shared by all roots (work stealing between their directories, or a virtual thread per directory)
+        ExecutorService crawlerPool = null;
+        // adaptive - the pool can use all permits, the permits (directories listed at once) are what the scheduler changes
+        boolean adaptive = config.adaptive && config.maxOpenDirectories > 0;
+        // checkpoints need the parallel crawler (it tells the checkpoint what is listed) - one thread if none was asked for
+        if ((config.crawlerParallelism > 0 || checkpoint != null) && roots.length > 0) {
+            int crawlers = Math.max(1, config.crawlerParallelism);
+            int parallelism = adaptive ? Math.max(crawlers, config.maxOpenDirectories) : crawlers;
+            crawlerPool = (config.execution == ExecutionMode.VIRTUAL) ? config.execution.newExecutor(parallelism) : ParallelCrawler.newPool(parallelism);
+        }
+        ResizableSemaphore openDirectories = null;
+        if (config.maxOpenDirectories > 0) {
+            int permits = adaptive ? Math.min(Math.max(1, config.crawlerParallelism), config.maxOpenDirectories) : config.maxOpenDirectories;
+            openDirectories = new ResizableSemaphore(permits);
+        }
+
+        // listing cache - unchanged directories (same mtime) are not listed again, also across runs and overlapping roots
+        final ListingCache listingCache = (config.listingCacheSize > 0) ? ListingCache.open(config) : null;
+
         //starting threads for producer and consumer
-        for (File root : roots)
-            new Thread(new FileCrawler(queue, filter, root)).start();
+        for (File root : roots) {
+            DirectoryLister backend = config.backend.create();
+            if (listingCache != null) {
+                backend = DirectoryLister.cached(backend, listingCache, run.persistentIndex != null || pathFilter.hasAttributeLimits());
+            }
+            DirectoryLister lister = DirectoryLister.measured(backend);
+            if (openDirectories != null) {
+                lister = DirectoryLister.limited(lister, openDirectories);
+            }
+            // resumed - only the directories and pending files of this root, otherwise the whole root
+            File[] startDirectories = (resumed == null) ? new File[]{root} : CrawlCheckpoint.State.takeBelow(frontier, root).toArray(new File[0]);
+            List<File> pendingFiles = (resumed == null) ? Collections.<File>emptyList() : CrawlCheckpoint.State.takeBelow(pending, root);
+            new Thread(new FileCrawler(queue, filter, root, startDirectories, pendingFiles, completion, crawlerPool, lister, run)).start();
+        }
+        if (checkpoint != null) {
+            checkpoint.start(config.checkpointInterval);
+        }
+
+        // aggregates and size groups of the duplicate finder - one partial per consumer, no shared lock while crawling
+        final List<FileAggregates> partials = Collections.synchronizedList(new ArrayList<FileAggregates>());
+        final List<DuplicateFinder> sizeGroups = Collections.synchronizedList(new ArrayList<DuplicateFinder>());
+        final PathArena duplicatePaths = config.findDuplicates ? new PathArena(config.offHeapPaths) : null;
+        Runnable startConsumer = () -> {
+            FileAggregates partial = (config.aggregateTopK > 0) ? new FileAggregates(config.aggregateTopK, roots) : null;
+            if (partial != null) {
+                partials.add(partial);
+            }
+            DuplicateFinder duplicates = config.findDuplicates ? new DuplicateFinder(config.duplicateMinSize, duplicatePaths) : null;
+            if (duplicates != null) {
+                sizeGroups.add(duplicates);
+            }
+            new Thread(new Indexer(queue, completion, run, contentIndex, fileReaders, partial, duplicates)).start();
+        };
+        for (int i = 0; i < consumers; i++) {
+            startConsumer.run();
+        }
+        final int aggregateGroups = config.aggregateGroups;
+
+        // adaptive - consumers, crawler permits and queue capacity follow the load (more consumers are registered first)
+        final AdaptiveScheduler scheduler = config.adaptive ? new AdaptiveScheduler(queue, adaptive ? openDirectories : null, () -> {
+            if (!completion.addConsumer()) {
+                return false;
+            }
+            startConsumer.run();
+            return true;
+        }, consumers, config) : null;
+        run.scheduler = scheduler;
+        if (scheduler != null) {
+            scheduler.start(config.adaptiveInterval);
+        }
+
+        // RESULTS - printed once, when the last consumer is done
+        final ExecutorService pool = crawlerPool;
+        final CrawlCheckpoint crawlCheckpoint = checkpoint;
+        // a resumed run does not see the directories listed before the stop
+        final boolean wholeTree = resumed == null;
+        crawl.future = completion.whenDone((total, e) -> {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            if (fileReaders != null) {
+                fileReaders.shutdown();
+            }
+            if (scheduler != null) {
+                scheduler.stop();
+                System.out.println(scheduler.summary());
+            }
+            if (reporting != null) {
+                reporting.cancel(false);
+                System.out.println(metrics.getSnapshot());
+            }
+            if (crawlCheckpoint != null) {
+                crawlCheckpoint.finish(e != null);
+            }
+            if (listingCache != null) {
+                listingCache.finish();
+            }
+            // also when cancelled (live mode only ends that way) - records not reached are kept then
+            Indexer.saveIndex(run.persistentIndex, wholeTree && run.rootsCrawled.get() == roots.length);
+            if (e != null) {
+                System.out.println("\nCrawl cancelled after " + run.counter.get() + " files");
+                return;
+            }
+            System.out.println("\nTOTAL FILES received: " + total);
+            if (pathFilter.isActive()) {
+                System.out.println(pathFilter.summary());
+            }
+            if (sizeGroups.isEmpty()) {
+                System.out.println("Content index: " + contentIndex.throughput());
+                System.out.println("Indexed paths: " + contentIndex.pathSummary());
+            }
+            if (!partials.isEmpty()) {
+                System.out.print(FileAggregates.mergeAll(partials).report(aggregateGroups));
+            }
+            if (!sizeGroups.isEmpty()) {
+                printDuplicates(DuplicateFinder.mergeAll(sizeGroups), config);
+            }
+        });
+        return crawl;
+    }
 
-        for (int i = 0; i < N_CONSUMERS; i++)
-            new Thread(new Indexer(queue)).start();
+    /**
+     * Crawl class - one crawl started by startCrawl: its run and the content index built by it (kept per crawl, so
+     *          crawls in one JVM do not overwrite each other's index)
+     */
+    static class Crawl {
+        /**
+         * Run of the crawl - visited index, counter of the files taken, filter, checkpoint, persistent index and scheduler
+         */
+        final CrawlRun run;
+        /**
+         * Inverted index of file contents built by the crawl, set by startCrawl before a consumer starts
+         */
+        private ContentIndex contentIndex;
+        /**
+         * Completed with total num of files when the crawl is done, set by startCrawl
+         */
+        private CompletableFuture<Integer> future;
 
+        /**
+         * Constructor initializing the run
+         *
+         * @param config settings of the crawl
+         */
+        Crawl(CrawlConfig config) {
+            this.run = new CrawlRun(config);
+        }
+
+        /**
+         * @return content index of the crawl, null - the crawl could not start
+         */
+        ContentIndex contentIndex() {
+            return contentIndex;
+        }
+
+        /**
+         * @return completed with total num of files when all consumers are done (cancel it to stop the crawl)
+         */
+        CompletableFuture<Integer> future() {
+            return future;
+        }
+    }
+
+    /**
+     * printDuplicates - hashes the candidates left by the size groups and prints the duplicate groups
+     *          - hashing runs on a pool with as many threads as the indexer (virtual threads in VIRTUAL mode)
+     *
+     * @param finder merged size groups
+     * @param config num of consumers, execution mode and max num of groups listed
+     */
+    private static void printDuplicates(DuplicateFinder finder, CrawlConfig config) {
+        ExecutorService hashers = config.execution.newExecutor(Math.max(1, config.consumers));
+        try {
+            System.out.print(finder.report(finder.find(hashers), config.duplicateGroups));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Duplicate search interrupted");
+        } finally {
+            hashers.shutdown();
+        }
     }
 }
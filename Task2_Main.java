@@ -1,10 +1,31 @@
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Scanner;
 
 public class Task2_Main {
+    /**
+     * One scanner for all input - a second scanner would lose what the first one buffered
+     */
+    private static final Scanner scanner = new Scanner(System.in);
+
     public static void main(String[] args) {
+        // optional: --index [port] - keep the crawled names and answer further searches from them (prompt, and
+        //           localhost:port if given). Checked before crawling - a bad argument must not cost a whole crawl
+        boolean nameIndex = false;
+        int port = -1;
+        if (args.length > 0) {
+            nameIndex = args[0].equals("--index");
+            if (nameIndex && args.length > 1) {
+                port = parsePort(args[1]);
+            }
+            if (!nameIndex || port == -2 || args.length > 2) {
+                System.out.println("Usage: Task2_Main [--index [port]]");
+                return;
+            }
+        }
+
         System.out.println("********************************  Disk File Crawler  ***************************************");
-        Task2_ProducerConsumer producerConsumer = new Task2_ProducerConsumer();
         System.out.println("-->Task 2<--");
 
         // Taking User input
@@ -12,7 +33,65 @@ public class Task2_Main {
         File searchFile = takeInput("file");
 
         // Calling startIndexing method which starts crawling to each file using search term and directory provided
-        producerConsumer.startIndexing(directory,searchFile);
+        //   with --index all crawled names are kept in a name index, further searches are answered from it without crawling again
+        CrawlConfig config = new CrawlConfig();
+        config.nameIndex = nameIndex;
+        Task2_ProducerConsumer.Search search = Task2_ProducerConsumer.startSearch(directory, searchFile, config);
+        search.future().join();
+        NameIndex index = search.nameIndex();
+        if (nameIndex && index != null) {
+            searchIndex(index, port);
+        }
+    }
+
+    /**
+     * parsePort method checks the port argument
+     * @param value port argument
+     * @return port (0 - any free port), -2 if the value is not a port
+     */
+    private static int parsePort(String value) {
+        try {
+            int port = Integer.parseInt(value);
+            return (port >= 0 && port <= 65535) ? port : -2;
+        } catch (NumberFormatException e) {
+            return -2;
+        }
+    }
+
+    /**
+     * searchIndex method answers search terms from the name index until an empty line
+     * @param index name index of the crawl
+     * @param port  port the index is also served on (localhost, line protocol), -1 - no server
+     */
+    private static void searchIndex(NameIndex index, int port) {
+        NameIndexServer server = null;
+        if (port >= 0) {
+            try {
+                server = new NameIndexServer(index, port);
+                server.start();
+                System.out.println("Name index served on localhost:" + server.port());
+            } catch (IOException e) {
+                System.out.println("Name index can not be served on port " + port + ": " + e.getMessage());
+            }
+        }
+        PrintWriter out = new PrintWriter(System.out, true);
+        if (scanner.hasNextLine()) {
+            scanner.nextLine();                                                             // rest of the line of the last input
+        }
+        while (true) {
+            System.out.print("Please enter file to search in the index (empty to quit) : ");
+            if (!scanner.hasNextLine()) {
+                break;
+            }
+            String term = scanner.nextLine().trim();
+            if (term.isEmpty()) {
+                break;
+            }
+            NameIndexServer.answer(index, term, NameIndexServer.MAX_FILES, out);
+        }
+        if (server != null) {
+            server.close();
+        }
     }
 
     /**
@@ -22,7 +101,6 @@ public class Task2_Main {
      */
     private static File takeInput(String value) {
 
-        Scanner scanner = new Scanner(System.in);                                           // for user input
         boolean validInput = false;                                                         // used in while loop
         String userInput = "";
 
@@ -1,14 +1,10 @@
-import com.sun.security.jgss.GSSUtil;
-
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static javafx.application.Platform.exit;
 
 /**
  * ProducerConsumer
@@ -19,216 +15,335 @@ import static javafx.application.Platform.exit;
  */
 public class Task2_ProducerConsumer {
     /**
-     * FileCrawler class: producer class
-     * Adding/putting files to Blocking Queue if it's not directory
+     * Indexer class - CONSUMER. -> goes through the queue and take files out. And
+     * -> keeping the count of total num of files found based on user's input director and search term
      */
-    static class FileCrawler implements Runnable {
+    static class Indexer implements Runnable {
         /**
          * FileQueue adding files into
          */
-        private final BlockingQueue<File> fileQueue;
+        private final FileBatchQueue queue;
+        /**
+         * Search this task belongs to - counter and output of the found files, checkpoint and scheduler of the crawl
+         */
+        private final Search search;
         /**
-         * FileFilter
+         * Search term compiled once (literal, glob or regex)
          */
-        private final FileFilter fileFilter;
+        private final NameMatcher matcher;
         /**
-         * Root of the file structure
+         * Completion of the crawl - told when this consumer is done
          */
-        private final File root;
+        private final CrawlCompletion completion;
         /**
-         * fileWithDirArrayList to check the file is already indexed or not
+         * Match rate is recorded here
          */
-        private static ArrayList<FileWithDir> fileWithDirArrayList = new ArrayList<>();
+        private final PipelineMetrics metrics = PipelineMetrics.get();
         /**
-         * Number of Consumer tasks - to add poison objects
+         * Aggregates of the files found by this task (own partial, merged at the end), null - no aggregates
          */
-        private final int nCTasks;
+        private final FileAggregates aggregates;
+        /**
+         * Partial name index of this task - every file taken is added (null - no name index)
+         */
+        private final NameIndex names;
 
         /**
-         * Constructor initializing fileQueue, fileFilter, root
+         * Constructor initializes values
          *
-         * @param fileQueue  Getting queue with specific bound
-         * @param fileFilter filter to accept file's pathname
-         * @param root       root file from file structure
-         * @param numCTasks  num of consumer tasks
+         * @param queue      batched queue of files
+         * @param searchFile File to search
+         * @param completion completion of the crawl
+         * @param search     search this task belongs to
          */
-        public FileCrawler(BlockingQueue<File> fileQueue, final FileFilter fileFilter, File root, int numCTasks) {
-            this.fileQueue = fileQueue;
-            this.root = root;
-            this.nCTasks = numCTasks;
-            // not filtering using FileFilter. It returns true.
-            this.fileFilter = new FileFilter() {
-                public boolean accept(File f) {
-                    return f.isDirectory() || fileFilter.accept(f);
-                }
-            };
+        public Indexer(FileBatchQueue queue, File searchFile, CrawlCompletion completion, Search search) {
+            this(queue, searchFile, completion, search, null, null);
         }
 
         /**
-         * alreadyIndexed - check the file and directory is checked before or not (ArrayList)
-         * - adds to ArrayList if not indexed
+         * Constructor initializes values, aggregates and name index
          *
-         * @param file file to compare
-         * @return true if file is already indexed or false
+         * @param queue      batched queue of files
+         * @param searchFile File to search
+         * @param completion completion of the crawl
+         * @param search     search this task belongs to
+         * @param aggregates partial aggregates owned by this task (null - no aggregates)
+         * @param names      partial name index owned by this task (null - no name index)
          */
-        private boolean alreadyIndexed(File file) {
-            FileWithDir newFileDir = new FileWithDir(file);
-            if (fileWithDirArrayList.contains(newFileDir)) {
-                System.out.println("P: Found the same item! <---------");
-                return true;
-            }
-            return false;
+        public Indexer(FileBatchQueue queue, File searchFile, CrawlCompletion completion, Search search, FileAggregates aggregates, NameIndex names) {
+            this.queue = queue;
+            this.completion = completion;
+            this.search = search;
+            this.aggregates = aggregates;
+            this.names = names;
+            this.matcher = NameMatcher.compile(searchFile.getName());
         }
 
         /**
-         * Run method calls recursive crawl method with passing root, and adds poison objects
-         * Poison objects used are : ">" and "<"  (these characters can not be found in file name or path, will not affect filtering)
+         * Run() takes files until the queue is closed and drained (or the crawl is cancelled),
+         *       if file matches giving searchTerm, indexes it
          */
         public void run() {
             try {
-                crawl(root);
-                for (int i = 0; i < nCTasks - 1; i++) {
-                    fileQueue.put(new File("<"));
-                    //System.out.println("P: Added POISON items name: \"<\"");         // for debug
+                while (true) {
+                    // one take per chunk of files, null - no more files
+                    File[] batch = queue.take();
+                    if (batch == null) {
+                        return;
+                    }
+                    int matched = 0;
+                    // found files of the chunk are kept for the checkpoint together with the chunk
+                    CrawlCheckpoint checkpoint = search.run.checkpoint;
+                    List<File> found = (checkpoint == null) ? null : new ArrayList<File>();
+                    for (File currFile : batch) {
+                        if (names != null) {
+                            names.add(currFile);
+                        }
+                        if (matcher.matches(currFile.getName())) {
+                            search.found(currFile);
+                            matched++;
+                            if (found != null) {
+                                found.add(currFile);
+                            }
+                            if (aggregates != null) {
+                                aggregates.add(currFile);
+                            }
+                        }
+                    }
+                    metrics.namesChecked(batch.length, matched);
+                    if (checkpoint != null) {
+                        checkpoint.processed(batch, found);
+                    }
+                    if (search.run.shouldRetire()) {
+                        return;
+                    }
                 }
-                fileQueue.put(new File(">"));
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-            }
-        }
-
-        /**
-         * crawl recursive method goes through all directories inside root and adds files to queue
-         *
-         * @param root root file to start from
-         * @throws InterruptedException if thread interrupted, throws exception
-         */
-        private void crawl(File root) throws InterruptedException {
-            File[] entries = root.listFiles(fileFilter);
-
-            if (entries != null) {
-                for (File entry : entries) {
-                    // if entry is directory - recursion call for files
-                    if (entry.isDirectory()) {
-                        crawl(entry);
-                    } else if (!alreadyIndexed(entry)) {
-                        fileWithDirArrayList.add(new FileWithDir(entry));
-                        fileQueue.put(entry);
-                        //System.out.println("P: Added items name: " + entry.getName());         // for debug
-                    } else if (alreadyIndexed(entry)) {
-                        // System.out.println("P: found same item!");                              // for debug
-                    }
-                }
+            } finally {
+                completion.consumerDone();
             }
         }
     }
 
     /**
-     * Indexer class - CONSUMER. -> goes through the queue and take files out. And
-     * -> keeping the count of total num of files found based on user's input director and search term
+     * Search class - one search started by startSearch: its run, the found files, their output and the name index
+     *          built by it (kept per search, so searches in one JVM do not overwrite each other's results)
      */
-    static class Indexer implements Runnable {
+    static class Search {
         /**
-         * FileQueue adding files into
+         * Run of the search - visited index, counter of the found files, filter, checkpoint and scheduler
          */
-        private final BlockingQueue<File> queue;
+        final CrawlRun run;
         /**
-         * For random generation
+         * Paths of the found files (compact - parent ID + name)
          */
-        private Random random = new Random();
+        private final PathArena foundPaths;
         /**
-         * For count the number of files removed from Queue
-         * AtomicInteger - because without using AtomicInteger, the counter was miss calculating because of multiple Threads.
+         * Found files - IDs in foundPaths (guarded by foundFiles)
          */
-        public static AtomicInteger counter = new AtomicInteger();
+        private final PathArena.IdList foundFiles = new PathArena.IdList();
         /**
-         * File we are searching
+         * Output of the found files (written on its own thread), set by startSearch before a consumer starts
          */
-        private final File SearchFile;
+        private ResultSink resultSink;
         /**
-         * Directory File into which we will search files
+         * Name index of the search (all partials merged when it is done), null - not built
          */
-        private final File Directory;
+        private volatile NameIndex nameIndex;
         /**
-         * fileWithDirArrayList to check the file is already indexed or not
+         * Completed with num of files found when the search is done, set by startSearch
          */
-        private static final ArrayList<FileWithDir> fileWithPathArrayList = new ArrayList<>();
+        private CompletableFuture<Integer> future;
 
         /**
-         * Constructor initializes values
+         * Constructor initializing the run
          *
-         * @param queue      queue of files
-         * @param searchFile File to search
-         * @param directory  Directory File to search into
+         * @param config settings of the search
          */
-        public Indexer(BlockingQueue<File> queue, File searchFile, File directory) {
-            this.queue = queue;
-            this.SearchFile = searchFile;
-            this.Directory = directory;
+        Search(CrawlConfig config) {
+            this.run = new CrawlRun(config, true);
+            this.foundPaths = new PathArena(config.offHeapPaths);
         }
 
         /**
-         * Run() Checks: if file matches giving searchTerm, indexes it
-         *               if file is poison object - breaks
-         *               if file is last poison object - shows results
+         * found - Adds matched file to foundFiles
+         *       - Increments the counter
+         *       - Hands the file found to the result sink (waits only while the output is full)
+         *
+         * @param currFile file matching the search term
          */
-        public void run() {
-            while (true) {
-                try {
-                    File currFile = queue.take();
-                    if (currFile.getName().toLowerCase().matches("(.*)" + SearchFile.getName().toLowerCase() + "(.*)")) {
-                        indexFile(currFile);
-                    }
-                    else if (currFile.getName().equals("<")) {
-                        //System.out.println("C: Got POISON - exiting thread: " + Thread.currentThread().getName());            //for debug
-                        break;
-                    }
-                    else if (currFile.getName().equals(">")) {
-                        // producer added ">" as a poison for one last thread to print RESULTS
-                        System.out.println("\nTOTAL FILES received for search term = \"" + SearchFile.getName() + "\" in directory = " + Directory.getAbsolutePath().toString() + "  : " + counter.get());
-                        if (counter.get() == 0) {
-                            System.out.println("Please try again with different values! Thank you :)");
-                        }
-                        break;
-                    }
-                    Thread.sleep(random.nextInt(500));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+        void found(File currFile) {
+            int id = foundPaths.idOf(currFile);
+            synchronized (foundFiles) {
+                foundFiles.add(id);
+            }
+            resultSink.accept(run.counter.incrementAndGet(), currFile);
+        }
+
+        /**
+         * foundFiles - found files of the search
+         *
+         * @return found files in compact form, in the order they were found
+         */
+        List<FileWithDir> foundFiles() {
+            List<FileWithDir> result = new ArrayList<>();
+            synchronized (foundFiles) {
+                for (int i = 0; i < foundFiles.size(); i++) {
+                    result.add(new FileWithDir(foundPaths, foundFiles.get(i)));
                 }
             }
+            return result;
+        }
+
+        /**
+         * @return name index of all crawled files (set when the search is done), null - not built
+         */
+        NameIndex nameIndex() {
+            return nameIndex;
         }
 
         /**
-         * indexFile - Adds matched file to ArrayList
-         *           - Increments the counter
-         *           - Prints the file found
+         * @return completed with num of files found when all consumers are done (cancel it to stop the crawl)
          */
-        public void indexFile(File currFile) {
-            fileWithPathArrayList.add(new FileWithDir(currFile));
-            System.out.println(counter.incrementAndGet() + ". Found " + currFile.toString());
+        CompletableFuture<Integer> future() {
+            return future;
+        }
+
+        /**
+         * failed - ends the search before it started
+         *
+         * @param e reason
+         * @return this search
+         */
+        private Search failed(Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return this;
         }
     }
 
     /**
-     * BOUND for blockingQueue
+     * number of consumer tasks
+     *
      */
-    private static final int BOUND = 10;
+    private static int N_CTASKS = 30;
+
     /**
-     * Num of consumers based on the available processor
+     * startIndexing method starts threads for producer and consumer for crawling through files and waits for the results
      */
-    private static final int N_CONSUMERS = Runtime.getRuntime().availableProcessors();
+    public static void startIndexing(File directory, File searchFile) {
+        startIndexing(directory, searchFile, new CrawlConfig()).join();
+    }
+
     /**
-     * number of consumer tasks
+     * startIndexing method starts threads for producer and consumer for crawling through files
+     *          - directories are listed by a ForkJoinPool, so listing is no longer limited to one thread
      *
+     * @param directory  directory to search into
+     * @param searchFile File to search
+     * @param config     crawler parallelism (0 - crawl recursively on the crawler thread), num of consumer threads, listing backend,
+     *                   queue bound, batch size,
+     *                   execution mode (platform / virtual threads), limit of open directories, metrics snapshots
+     *                   result output (file / stdout, TEXT / JSONL / CSV), aggregates of the found files, adaptive sizing, checkpoints,
+     *                   the path filter (exclude rules, rule files, include globs, max depth, size / mtime limits)
+     *                   the name index of all crawled files, sharding across worker processes and the listing cache
+     * @return completed with num of files found when all consumers are done (cancel it to stop the crawl)
      */
-    private static int N_CTASKS = 30;
+    public static CompletableFuture<Integer> startIndexing(final File directory, final File searchFile, CrawlConfig config) {
+        return startSearch(directory, searchFile, config).future();
+    }
 
     /**
-     * startIndexing method starts threads for producer and consumer for crawling through files
+     * startSearch - same as startIndexing(directory, searchFile, config), the search returned also gives the found files
+     *          and the name index once it is done
+     *
+     * @param directory  directory to search into
+     * @param searchFile File to search
+     * @param config     settings of the search (see startIndexing)
+     * @return search - its future completes with num of files found when all consumers are done
      */
-    public static void startIndexing(File directory, File searchFile) {
-        //using Blocking Queue with BOUND
-        BlockingQueue<File> queue = new LinkedBlockingQueue<File>(BOUND);
+    static Search startSearch(final File directory, final File searchFile, CrawlConfig config) {
+        // every search has its own state (startIndexing can be called again in the same JVM, e.g. by the JMH benchmarks)
+        final Search search = new Search(config);
+        final CrawlRun run = search.run;
+        // sharded - worker processes crawl the shards, this process merges their results
+        if (config.shardWorkers > 0) {
+            search.future = startSharded(directory, searchFile, config);
+            return search;
+        }
+        // filter compiled once - excluded directories are pruned while listing
+        final PathFilter pathFilter;
+        try {
+            pathFilter = PathFilter.compile(config, new File[]{(config.filterRoot != null) ? config.filterRoot : directory});
+        } catch (IOException e) {
+            return search.failed(e);
+        }
+        // shard of a worker - the directories above it up to filterRoot are listed by the coordinator, a symlink back
+        // into them (e.g. to the root) is a loop, not a part of this shard
+        if (config.filterRoot != null) {
+            File root = config.filterRoot.getAbsoluteFile();
+            List<File> above = new ArrayList<>();
+            for (File dir = directory.getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+                above.add(dir);
+                if (dir.equals(root)) {
+                    for (File ancestor : above) {
+                        run.visitedIndex.markDirectory(ancestor);
+                    }
+                    break;
+                }
+            }
+        }
+        run.pathFilter = pathFilter;
+        // results are written by their own thread in batches
+        final ResultSink sink;
+        try {
+            sink = (config.resultSink != null) ? config.resultSink : new AsyncResultWriter(config.resultFile, config.resultFormat);
+        } catch (IOException e) {
+            return search.failed(e);
+        }
+        search.resultSink = sink;
+        // checkpoints - a stopped search of the same directory and term resumes from its frontier, pending files and results
+        CrawlCheckpoint checkpoint = null;
+        CrawlCheckpoint.State resumed = null;
+        if (config.checkpointFile != null && !config.nameIndex) {
+            String key = "task2:" + directory.getPath() + ":" + searchFile.getName();
+            checkpoint = new CrawlCheckpoint(config.checkpointFile, key);
+            try {
+                resumed = checkpoint.load();
+            } catch (IOException e) {
+                System.out.println("Checkpoint could not be loaded, starting from scratch: " + e.getMessage());
+                checkpoint = new CrawlCheckpoint(config.checkpointFile, key);
+            }
+        }
+        run.checkpoint = checkpoint;
+        List<File> frontier = new ArrayList<>(), pending = new ArrayList<>();
+        if (resumed != null) {
+            // listed directories are not listed again, pending files are queued by the crawler, files found are
+            // reported again (and not matched a second time by a directory listed again)
+            for (File dir : resumed.completed) {
+                run.visitedIndex.markDirectory(dir);
+            }
+            for (File file : resumed.pending) {
+                run.visitedIndex.markFile(file);
+            }
+            for (File file : resumed.partial) {
+                run.visitedIndex.markFile(file);
+            }
+            for (File file : resumed.results) {
+                run.visitedIndex.markFile(file);
+                search.found(file);
+            }
+            frontier.addAll(resumed.frontier);
+            pending.addAll(resumed.pending);
+            System.out.println("Resuming from checkpoint: " + resumed.summary());
+        }
+        //using batched queue with BOUND (in chunks)
+        FileBatchQueue queue = new FileBatchQueue(config.queueCapacity, config.batchSize);
+        queue.setCheckpoint(checkpoint);
+        final PipelineMetrics metrics = PipelineMetrics.get();
+        metrics.start(queue);
+        final ScheduledFuture<?> reporting = (config.metricsInterval > 0) ? metrics.report(config.metricsInterval, System.out) : null;
         // not filtering using FileFilter. It returns true.
         FileFilter filter = new FileFilter() {public boolean accept(File file) {  return true;  }   };
         //starting threads for producer and consumer
@@ -236,23 +351,172 @@ public class Task2_ProducerConsumer {
         File[] roots = new File[1];
         roots[0] = directory;
 
-        //ExecutorService - ThreadPool
-        ExecutorService pool = Executors.newFixedThreadPool(N_CONSUMERS);
+        //ExecutorService - ThreadPool (PLATFORM: config.consumers threads for N_CTASKS tasks, VIRTUAL: a thread per task)
+        //   adaptive: a thread for each of up to maxConsumers tasks, config.consumers tasks to start with
+        boolean adaptive = config.adaptive;
+        int consumerTasks = adaptive ? Math.max(1, config.consumers) : N_CTASKS - 1;
+        final ExecutorService pool = config.execution.newExecutor(Math.max(1, adaptive ? Math.max(config.consumers, config.maxConsumers) : config.consumers));
+        // one producer, consumerTasks consumer tasks - the future completes when the last of them is done
+        final CrawlCompletion completion = new CrawlCompletion(queue, 1, consumerTasks, () -> run.counter.get());
 
-        // Here we have two options
-        //   1. Use FileFilter and crawl files and start(submit) tasks based on that count.  (If I use this concept, there will be no major part left for consumer class for assignment requirements)
-        //   2. Hard coded value based on possible average number of result. (Average of Max and Min possible outcome to make that number of accurate tasks which helps to use threadPool)
+        ExecutorService crawlerPool = null;
+        boolean adaptiveCrawl = adaptive && config.maxOpenDirectories > 0;
+        // checkpoints need the parallel crawler (it tells the checkpoint what is listed) - one thread if none was asked for
+        if (config.crawlerParallelism > 0 || checkpoint != null) {
+            int crawlers = Math.max(1, config.crawlerParallelism);
+            int parallelism = adaptiveCrawl ? Math.max(crawlers, config.maxOpenDirectories) : crawlers;
+            crawlerPool = (config.execution == ExecutionMode.VIRTUAL) ? config.execution.newExecutor(parallelism) : ParallelCrawler.newPool(parallelism);
+        }
+        // listing cache - unchanged directories (same mtime) are not listed again, also across runs
+        final ListingCache listingCache = (config.listingCacheSize > 0) ? ListingCache.open(config) : null;
+        DirectoryLister backend = config.backend.create();
+        if (listingCache != null) {
+            backend = DirectoryLister.cached(backend, listingCache, pathFilter.hasAttributeLimits());
+        }
+        DirectoryLister lister = DirectoryLister.measured(backend);
+        ResizableSemaphore openDirectories = null;
+        if (config.maxOpenDirectories > 0) {
+            int permits = adaptiveCrawl ? Math.min(Math.max(1, config.crawlerParallelism), config.maxOpenDirectories) : config.maxOpenDirectories;
+            openDirectories = new ResizableSemaphore(permits);
+            lister = DirectoryLister.limited(lister, openDirectories);
+        }
+        // producer on its own thread - consumer tasks waiting for a pool thread can not block it
+        File[] startDirectories = (resumed == null) ? roots : frontier.toArray(new File[0]);
+        new Thread(new FileCrawler(queue, filter, roots[0], startDirectories, pending, completion, crawlerPool, lister, run)).start();
+        if (checkpoint != null) {
+            checkpoint.start(config.checkpointInterval);
+        }
+        // aggregates of the found files - one partial per task, no shared lock while searching
+        final List<FileAggregates> partials = Collections.synchronizedList(new ArrayList<FileAggregates>());
+        // name index - one partial per task sharing one path store, merged when all tasks are done
+        final PathArena namePaths = config.nameIndex ? new PathArena(config.offHeapPaths) : null;
+        final List<NameIndex> nameParts = Collections.synchronizedList(new ArrayList<NameIndex>());
+        Runnable submitConsumer = () -> {
+            FileAggregates partial = (config.aggregateTopK > 0) ? new FileAggregates(config.aggregateTopK, roots) : null;
+            if (partial != null) {
+                partials.add(partial);
+            }
+            NameIndex names = (namePaths != null) ? new NameIndex(namePaths) : null;
+            if (names != null) {
+                nameParts.add(names);
+            }
+            pool.submit(new Indexer(queue, searchFile, completion, search, partial, names));
+        };
+        for (int i = 0; i < consumerTasks; i++) {
+            submitConsumer.run();
+        }
+        final int aggregateGroups = config.aggregateGroups;
 
-        pool.submit(new FileCrawler(queue, filter, roots[0], N_CTASKS - 1));
-        //pool.submit(new FileCrawler(queue, filter2, roots[0], N_TASKS-2));
-        for (int i = 0; i < N_CTASKS - 1; i++) {
-            pool.submit(new Indexer(queue, searchFile, directory));
+        // adaptive - consumer tasks, crawler permits and queue capacity follow the load (more tasks are registered first)
+        final AdaptiveScheduler scheduler = adaptive ? new AdaptiveScheduler(queue, adaptiveCrawl ? openDirectories : null, () -> {
+            if (!completion.addConsumer()) {
+                return false;
+            }
+            submitConsumer.run();
+            return true;
+        }, consumerTasks, config) : null;
+        run.scheduler = scheduler;
+        if (scheduler != null) {
+            scheduler.start(config.adaptiveInterval);
+        } else {
+            pool.shutdown();
         }
-        pool.shutdown();
+
+        // RESULTS - printed once, when the last consumer task is done
+        final ExecutorService listingPool = crawlerPool;
+        final CrawlCheckpoint crawlCheckpoint = checkpoint;
+        search.future = completion.whenDone((total, e) -> {
+            if (listingPool != null) {
+                listingPool.shutdown();
+            }
+            if (scheduler != null) {
+                scheduler.stop();
+                pool.shutdown();
+                System.out.println(scheduler.summary());
+            }
+            // all consumers are done - write what is still pending before the RESULTS line
+            try {
+                sink.close();
+            } catch (IOException ioe) {
+                System.out.println("Results could not be written: " + ioe.getMessage());
+            }
+            if (reporting != null) {
+                reporting.cancel(false);
+                System.out.println(metrics.getSnapshot());
+            }
+            if (crawlCheckpoint != null) {
+                crawlCheckpoint.finish(e != null);
+            }
+            if (listingCache != null) {
+                listingCache.finish();
+            }
+            if (e != null) {
+                System.out.println("\nSearch cancelled after " + run.counter.get() + " files found");
+                return;
+            }
+            System.out.println("\nTOTAL FILES received for search term = \"" + searchFile.getName() + "\" in directory = " + directory.getAbsolutePath().toString() + "  : " + total);
+            if (pathFilter.isActive()) {
+                System.out.println(pathFilter.summary());
+            }
+            if (!nameParts.isEmpty()) {
+                search.nameIndex = NameIndex.mergeAll(nameParts);
+                System.out.println(search.nameIndex.summary());
+            }
+            if (total == 0) {
+                System.out.println("Please try again with different values! Thank you :)");
+            } else if (!partials.isEmpty()) {
+                System.out.print(FileAggregates.mergeAll(partials).report(aggregateGroups));
+            }
+        });
+        return search;
+    }
+
+    /**
+     * startSharded - splits the search across config.shardWorkers worker processes (ShardCoordinator)
+     *
+     * @param directory  directory to search into
+     * @param searchFile File to search
+     * @param config     settings forwarded to the workers, result output and aggregates of the merged results
+     * @return completed with num of files found when all shards are done (cancel it to stop the workers)
+     */
+    private static CompletableFuture<Integer> startSharded(final File directory, final File searchFile, CrawlConfig config) {
+        final ResultSink sink;
         try {
-            pool.awaitTermination(15, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            sink = new AsyncResultWriter(config.resultFile, config.resultFormat);
+        } catch (IOException e) {
+            CompletableFuture<Integer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
+        final ShardCoordinator coordinator = new ShardCoordinator(directory, searchFile.getName(), config, sink);
+        final int aggregateGroups = config.aggregateGroups;
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        final CompletableFuture<Integer> crawl = coordinator.start();
+        crawl.whenComplete((total, e) -> {
+            try {
+                sink.close();
+            } catch (IOException ioe) {
+                System.out.println("Results could not be written: " + ioe.getMessage());
+            }
+            if (e != null) {
+                System.out.println("\nSearch cancelled: " + e);
+                done.completeExceptionally(e);
+                return;
+            }
+            System.out.println("\nTOTAL FILES received for search term = \"" + searchFile.getName() + "\" in directory = " + directory.getAbsolutePath().toString() + "  : " + total);
+            System.out.println(coordinator.summary());
+            if (total == 0) {
+                System.out.println("Please try again with different values! Thank you :)");
+            } else if (coordinator.aggregates() != null) {
+                System.out.print(coordinator.aggregates().report(aggregateGroups));
+            }
+            done.complete(total);
+        });
+        done.whenComplete((total, e) -> {
+            if (done.isCancelled()) {
+                crawl.cancel(true);
+            }
+        });
+        return done;
     }
 }
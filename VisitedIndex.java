@@ -0,0 +1,169 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * VisitedIndex class - concurrent visited-set shared by all crawlers
+ *          - replaces the linear ArrayList.contains() scan (O(n) per file, O(n^2) per crawl) with O(1) hash lookups
+ *          - files are keyed by (device, inode) from BasicFileAttributes.fileKey() when the file system provides one,
+ *            otherwise by the interned canonical path
+ *          - directories are tracked in a separate set, so a symlink pointing back into the tree is detected as a loop
+ *          - a name search keys files by (file key, name): hard links with other names are other results, a directory
+ *            is always keyed by its file key alone
+ */
+public class VisitedIndex {
+    /**
+     * Keys of files already handed to the queue
+     */
+    private final Set<Object> files = ConcurrentHashMap.newKeySet();
+    /**
+     * Keys of directories already entered - used for symlink loop detection
+     */
+    private final Set<Object> directories = ConcurrentHashMap.newKeySet();
+    /**
+     * If true, files are keyed by (file key, name) instead of the file key
+     */
+    private final boolean fileNames;
+
+    /**
+     * Constructor - files keyed by their file key (a hard link is the same file)
+     */
+    public VisitedIndex() {
+        this(false);
+    }
+
+    /**
+     * Constructor initializing how files are keyed
+     *
+     * @param fileNames true - files are keyed by (file key, name), a hard link with another name is another file
+     */
+    public VisitedIndex(boolean fileNames) {
+        this.fileNames = fileNames;
+    }
+
+    /**
+     * markFile - atomically checks and adds file to the index
+     *
+     * @param file file to add
+     * @return true if file was not indexed before (caller should process it) or false if it is a duplicate
+     */
+    public boolean markFile(File file) {
+        return markFile(file, null);
+    }
+
+    /**
+     * markFile - same as markFile(File) but reuses attributes already read by the caller (no extra stat call)
+     *
+     * @param file  file to add
+     * @param attrs attributes of the file, null - attributes are read here
+     * @return true if file was not indexed before or false
+     */
+    public boolean markFile(File file, BasicFileAttributes attrs) {
+        Object key = keyOf(file, attrs);
+        return files.add(fileNames ? new NamedKey(key, file.getName()) : key);
+    }
+
+    /**
+     * markDirectory - atomically checks and adds directory to the index
+     *          - attributes are read following symlinks, so a link to an already entered directory has the same key
+     *
+     * @param directory directory about to be crawled
+     * @return true if directory should be crawled or false if it was already entered (duplicate root or symlink loop)
+     */
+    public boolean markDirectory(File directory) {
+        return markDirectory(directory, null);
+    }
+
+    /**
+     * markDirectory - same as markDirectory(File) but reuses attributes already read by the caller
+     *
+     * @param directory directory about to be crawled
+     * @param attrs     attributes of the directory (following links), null - attributes are read here
+     * @return true if directory should be crawled or false
+     */
+    public boolean markDirectory(File directory, BasicFileAttributes attrs) {
+        return directories.add(keyOf(directory, attrs));
+    }
+
+    /**
+     * @return number of unique files indexed so far
+     */
+    public int fileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return number of unique directories entered so far
+     */
+    public int directoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * clear - removes all entries (used between independent runs)
+     */
+    public void clear() {
+        files.clear();
+        directories.clear();
+    }
+
+    /**
+     * NamedKey class - key of a file plus its name
+     */
+    private static final class NamedKey {
+        /**
+         * File key (or canonical path)
+         */
+        private final Object key;
+        /**
+         * Name of the file
+         */
+        private final String name;
+
+        NamedKey(Object key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof NamedKey && key.equals(((NamedKey) other).key) && name.equals(((NamedKey) other).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + name.hashCode();
+        }
+    }
+
+    /**
+     * keyOf - builds key of the file
+     *          - fileKey() is a small (device, inode) object on Unix file systems - much smaller than a path string
+     *          - if not available, the canonical path is used and interned so repeated lookups share one copy
+     *
+     * @param file  file to build key for
+     * @param attrs attributes, null - attributes are read here
+     * @return key object
+     */
+    static Object keyOf(File file, BasicFileAttributes attrs) {
+        try {
+            if (attrs == null) {
+                attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            }
+            if (attrs.fileKey() != null) {
+                return attrs.fileKey();
+            }
+        } catch (IOException | InvalidPathException e) {
+            // not readable, or name not representable as Path in the platform encoding - use path string instead
+        }
+        try {
+            return file.getCanonicalPath().intern();
+        } catch (IOException e) {
+            return file.getAbsolutePath().intern();
+        }
+    }
+}
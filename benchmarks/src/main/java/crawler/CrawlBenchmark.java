@@ -0,0 +1,112 @@
+package crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CrawlBenchmark class - crawl stage alone (ParallelCrawler, queue drained by a discarding thread) per tree,
+ *          listing backend and crawler parallelism
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrawlBenchmark {
+    /**
+     * Crawled tree
+     */
+    @Param({"wide", "deep", "tiny"})
+    public String tree;
+    /**
+     * Listing backend (DirectoryLister.Backend name)
+     */
+    @Param({"LEGACY", "NIO"})
+    public String backend;
+    /**
+     * ForkJoinPool parallelism
+     */
+    @Param({"1", "4", "16"})
+    public int parallelism;
+
+    /**
+     * Temp dir of the trial and root of the tree
+     */
+    private Path base;
+    private File root;
+    /**
+     * Selected listing backend
+     */
+    private DirectoryLister.Backend listing;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        base = Files.createTempDirectory("crawl-bench");
+        root = Trees.create(base, tree);
+        listing = DirectoryLister.Backend.valueOf(backend);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        Trees.delete(base);
+    }
+
+    /**
+     * crawl - runs ParallelCrawler on the tree while one thread drains the queue
+     *
+     * @return num of files crawled
+     * @throws InterruptedException if interrupted while waiting for the drain thread
+     */
+    @Benchmark
+    public long crawl() throws InterruptedException {
+        final FileBatchQueue queue = new FileBatchQueue(10, 64);
+        final long[] files = {0};
+        Thread drain = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    File[] chunk;
+                    while ((chunk = queue.take()) != null) {
+                        files[0] += chunk.length;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        drain.start();
+        ExecutorService pool = ParallelCrawler.newPool(parallelism);
+        try {
+            FileFilter all = new FileFilter() {
+                public boolean accept(File file) {
+                    return true;
+                }
+            };
+            new ParallelCrawler(pool, queue, all, new VisitedIndex(), listing.create()).crawl(root);
+        } finally {
+            queue.close();
+            pool.shutdown();
+        }
+        drain.join();
+        return files[0];
+    }
+}
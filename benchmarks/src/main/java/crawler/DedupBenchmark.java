@@ -0,0 +1,95 @@
+package crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DedupBenchmark class - alreadyIndexed check (VisitedIndex.markFile) on every file of the wide tree, with the
+ *          attributes read by the lister and with an extra stat per file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DedupBenchmark {
+    /**
+     * Temp dir of the trial
+     */
+    private Path base;
+    /**
+     * Files of the tree and their attributes from the lister
+     */
+    private final List<File> files = new ArrayList<>();
+    private final List<BasicFileAttributes> attrs = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void listTree() throws IOException, InterruptedException {
+        base = Files.createTempDirectory("dedup-bench");
+        File wide = Trees.create(base, "wide");
+        DirectoryLister.Backend.NIO.create().list(new File(wide, "d0"), new FileFilter() {
+            public boolean accept(File file) {
+                return true;
+            }
+        }, new DirectoryLister.EntryVisitor() {
+            public void visit(File entry, BasicFileAttributes entryAttrs, boolean isDirectory) {
+                files.add(entry);
+                attrs.add(entryAttrs);
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        Trees.delete(base);
+    }
+
+    /**
+     * attributesFromLister - marks every file with the attributes the lister read
+     *
+     * @return num of files marked
+     */
+    @Benchmark
+    public int attributesFromLister() {
+        VisitedIndex index = new VisitedIndex();
+        for (int i = 0; i < files.size(); i++) {
+            index.markFile(files.get(i), attrs.get(i));
+        }
+        return index.fileCount();
+    }
+
+    /**
+     * attributesReadPerFile - marks every file, VisitedIndex reads the attributes
+     *
+     * @return num of files marked
+     */
+    @Benchmark
+    public int attributesReadPerFile() {
+        VisitedIndex index = new VisitedIndex();
+        for (File file : files) {
+            index.markFile(file, null);
+        }
+        return index.fileCount();
+    }
+}
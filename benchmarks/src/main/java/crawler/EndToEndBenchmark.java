@@ -0,0 +1,96 @@
+package crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EndToEndBenchmark class - Task1 / Task2 startIndexing on the tiny tree under different consumer counts and
+ *          queue BOUNDs (console output of the tasks is muted during the trial)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+    /**
+     * Num of consumer threads
+     */
+    @Param({"1", "4", "8"})
+    public int consumers;
+    /**
+     * Queue BOUND in chunks
+     */
+    @Param({"1", "10", "100"})
+    public int bound;
+
+    /**
+     * Temp dir of the trial and root of the tree
+     */
+    private Path base;
+    private File root;
+    /**
+     * Settings of the runs
+     */
+    private CrawlConfig config;
+    /**
+     * Console restored after the trial
+     */
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        base = Files.createTempDirectory("pipeline-bench");
+        root = Trees.create(base, "tiny");
+        config = new CrawlConfig();
+        config.consumers = consumers;
+        config.queueCapacity = bound;
+        console = System.out;
+        System.setOut(Trees.MUTED);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        System.setOut(console);
+        Trees.delete(base);
+    }
+
+    /**
+     * task1 - content indexing of the tree
+     *
+     * @return num of files indexed
+     */
+    @Benchmark
+    public int task1() {
+        return Task1_ProducerConsumer.startIndexing(new File[]{root}, config).join();
+    }
+
+    /**
+     * task2 - name search of the tree (term found nowhere - only crawl and matching are measured)
+     *
+     * @return num of files found
+     */
+    @Benchmark
+    public int task2() {
+        return Task2_ProducerConsumer.startIndexing(root, new File("no-such-name"), config).join();
+    }
+}
@@ -0,0 +1,97 @@
+package crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MatchBenchmark class - Task2 name matching over the names of the tiny tree: the original regex built per name
+ *          against the compiled NameMatcher (substring, glob and regex strategies)
+ *          - names are generated like the tiny tree (d0..d19, file-0000.txt ..), nothing is read from disk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark {
+    /**
+     * Search term (plain terms are also matched with the original regex)
+     */
+    @Param({"f1", "FILE-0001", "*.txt", "regex:f[0-9]+7"})
+    public String term;
+
+    /**
+     * Names matched per invocation
+     */
+    private final List<String> names = new ArrayList<>();
+    /**
+     * Compiled matcher of the term
+     */
+    private NameMatcher matcher;
+    /**
+     * Lower case term of the original regex, null - term is a glob / regex
+     */
+    private String plainTerm;
+
+    @Setup(Level.Trial)
+    public void compile() {
+        for (int d = 0; d < 20; d++) {
+            names.add("d" + d);
+            for (int f = 0; f < 25; f++) {
+                names.add(String.format("file-%04d.txt", f));
+            }
+        }
+        matcher = NameMatcher.compile(term);
+        plainTerm = (term.contains(":") || term.contains("*")) ? null : term.toLowerCase();
+    }
+
+    /**
+     * nameMatcher - compiled NameMatcher
+     *
+     * @return num of names found
+     */
+    @Benchmark
+    public int nameMatcher() {
+        int found = 0;
+        for (String name : names) {
+            if (matcher.matches(name)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * originalRegex - regex compiled per name, as the original Indexer did (plain terms only)
+     *
+     * @return num of names found
+     */
+    @Benchmark
+    public int originalRegex() {
+        if (plainTerm == null) {
+            return 0;
+        }
+        int found = 0;
+        for (String name : names) {
+            if (name.toLowerCase().matches("(.*)" + plainTerm + "(.*)")) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,106 @@
+package crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Trees class - synthetic trees the benchmarks crawl, generated in a temp dir per trial
+ *          - wide: one directory, many files
+ *          - deep: long chain of directories
+ *          - tiny: many directories of tiny files
+ */
+final class Trees {
+    /**
+     * Stream discarding the console output of the measured tasks
+     */
+    static final PrintStream MUTED = new PrintStream(new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private Trees() {
+    }
+
+    /**
+     * create - generates one of the named trees
+     *
+     * @param base temp dir of the trial
+     * @param name "wide", "deep" or "tiny"
+     * @return root of the tree
+     * @throws IOException if the tree can not be created
+     */
+    static File create(Path base, String name) throws IOException {
+        switch (name) {
+            case "wide":
+                return generate(base.resolve(name), 1, 1, 20000, 64);
+            case "deep":
+                return generate(base.resolve(name), 100, 1, 50, 64);
+            case "tiny":
+                return generate(base.resolve(name), 2, 20, 25, 16);
+            default:
+                throw new IllegalArgumentException("Unknown tree " + name);
+        }
+    }
+
+    /**
+     * generate - creates a tree: directories nested depth levels, width sub directories per level, files per directory
+     *
+     * @param root      root of the tree
+     * @param depth     num of directory levels
+     * @param width     num of sub directories per directory
+     * @param files     num of files per directory
+     * @param fileBytes size of each file
+     * @return root as File
+     * @throws IOException if tree can not be created
+     */
+    static File generate(Path root, int depth, int width, int files, int fileBytes) throws IOException {
+        byte[] content = new byte[fileBytes];
+        Arrays.fill(content, (byte) 'a');
+        for (int i = 0; i < content.length; i += 8) {
+            content[i] = ' ';
+        }
+        String text = new String(content, StandardCharsets.US_ASCII);
+        List<Path> level = new ArrayList<>();
+        level.add(root);
+        Files.createDirectories(root);
+        for (int d = 0; d < depth; d++) {
+            List<Path> next = new ArrayList<>();
+            for (Path dir : level) {
+                for (int w = 0; w < width; w++) {
+                    Path sub = Files.createDirectory(dir.resolve("d" + w));
+                    for (int f = 0; f < files; f++) {
+                        Files.write(sub.resolve(String.format("file-%04d.txt", f)), (text + f).getBytes(StandardCharsets.US_ASCII));
+                    }
+                    next.add(sub);
+                }
+            }
+            level = next;
+        }
+        return root.toFile();
+    }
+
+    /**
+     * delete - removes a generated tree
+     *
+     * @param base temp dir
+     * @throws IOException if walk fails
+     */
+    static void delete(Path base) throws IOException {
+        try (Stream<Path> paths = Files.walk(base)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
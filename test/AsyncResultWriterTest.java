@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AsyncResultWriterTest class - every accepted result is written, a stalled output holds the producers back
+ */
+class AsyncResultWriterTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void writesEveryResultOnClose() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AsyncResultWriter writer = new AsyncResultWriter(bytes, true, ResultSink.Format.CSV);
+        Thread[] producers = new Thread[3];
+        for (int p = 0; p < producers.length; p++) {
+            final int producer = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    writer.accept(producer * 10_000L + i + 1, new File("/data/" + producer + "/" + i));
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        writer.close();
+        // closed twice - nothing to do
+        writer.close();
+        String[] lines = bytes.toString(StandardCharsets.UTF_8.name()).split(System.lineSeparator());
+        assertEquals("index,path", lines[0]);
+        assertEquals(30_001, lines.length);
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void acceptWaitsWhileOutputIsStalled() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream stalled = new OutputStream() {
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                bytes.write(b, off, len);
+            }
+        };
+        final AsyncResultWriter writer = new AsyncResultWriter(stalled, true, ResultSink.Format.TEXT);
+        final int results = 4 * AsyncResultWriter.CAPACITY;
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= results; i++) {
+                writer.accept(i, new File("/data/file" + i));
+            }
+        });
+        producer.start();
+        producer.join(1000);
+        assertTrue(producer.isAlive(), "producer should wait for the stalled output");
+        release.countDown();
+        producer.join();
+        writer.close();
+        assertEquals(results, bytes.toString(StandardCharsets.UTF_8.name()).split(System.lineSeparator()).length);
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void writeErrorIsReportedByClose() {
+        OutputStream failing = new OutputStream() {
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        AsyncResultWriter writer = new AsyncResultWriter(failing, true, ResultSink.Format.TEXT);
+        // more than the queue holds - the writer keeps draining after the error, accept never waits forever
+        for (int i = 1; i <= 2 * AsyncResultWriter.CAPACITY + 100_000; i++) {
+            writer.accept(i, new File("/data/file" + i));
+        }
+        assertThrows(IOException.class, writer::close);
+    }
+}
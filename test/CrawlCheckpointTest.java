@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CrawlCheckpointTest class - a written checkpoint loads back, a stopped search resumes from it
+ */
+class CrawlCheckpointTest {
+
+    @TempDir
+    File tree;
+
+    @TempDir
+    File storage;
+
+    @Test
+    void writtenStateLoadsBack() throws IOException {
+        File file = new File(storage, "crawl.ckpt");
+        File a = new File(tree, "a"), b = new File(tree, "b"), c = new File(tree, "c");
+        File done = new File(a, "done.txt"), pending = new File(tree, "pending.txt"), early = new File(b, "early.txt");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, "key");
+        for (File directory : Arrays.asList(tree, a, b, c)) {
+            checkpoint.discovered(directory);
+        }
+        checkpoint.listed(tree);
+        checkpoint.listed(a);
+        File[] processed = {done};
+        checkpoint.handedOver(processed);
+        checkpoint.processed(processed, Collections.singletonList(done));
+        checkpoint.handedOver(new File[]{pending});
+        // processed while b is still being listed - kept, so listing b again does not hand it over twice
+        File[] partial = {early};
+        checkpoint.handedOver(partial);
+        checkpoint.processed(partial, null);
+        checkpoint.write();
+        assertFalse(new File(storage, "crawl.ckpt.tmp").exists());
+
+        CrawlCheckpoint.State state = new CrawlCheckpoint(file, "key").load();
+        assertNotNull(state);
+        assertEquals(2, state.processed);
+        assertEquals(new HashSet<>(Arrays.asList(b, c)), new HashSet<>(state.frontier));
+        assertEquals(Collections.singletonList(pending), state.pending);
+        assertEquals(Collections.singletonList(early), state.partial);
+        assertEquals(new HashSet<>(Arrays.asList(tree, a)), new HashSet<>(state.completed));
+        assertEquals(Collections.singletonList(done), state.results);
+    }
+
+    @Test
+    void checkpointOfAnotherCrawlIsNotResumed() throws IOException {
+        File file = new File(storage, "crawl.ckpt");
+        assertNull(new CrawlCheckpoint(file, "key").load());
+        new CrawlCheckpoint(file, "key").write();
+        assertNull(new CrawlCheckpoint(file, "other").load());
+
+        Files.write(file.toPath(), "not a checkpoint".getBytes());
+        assertThrows(IOException.class, () -> new CrawlCheckpoint(file, "key").load());
+    }
+
+    @Test
+    void finishWritesACancelledCrawlAndRemovesACompleteOne() throws IOException {
+        File file = new File(storage, "crawl.ckpt");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, "key");
+        checkpoint.discovered(tree);
+        checkpoint.finish(true);
+        assertEquals(Collections.singletonList(tree), new CrawlCheckpoint(file, "key").load().frontier);
+        checkpoint.finish(false);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void takeBelowSplitsEntriesByRoot() {
+        File one = new File(tree, "one"), other = new File(tree, "one-other");
+        List<File> files = new ArrayList<>(Arrays.asList(one, new File(one, "x"), other));
+        assertEquals(Arrays.asList(one, new File(one, "x")), CrawlCheckpoint.State.takeBelow(files, one));
+        assertEquals(Collections.singletonList(other), files);
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void stoppedSearchResumesFromTheCheckpoint() throws IOException {
+        File a = new File(tree, "a"), b = new File(tree, "b"), late = new File(a, "late");
+        assertTrue(late.mkdirs() && b.mkdir());
+        File foundBefore = touch(new File(a, "target.txt")), pending = touch(new File(tree, "target.txt"));
+        File inFrontier = touch(new File(b, "target.txt"));
+        // below a directory listed before the stop - it is not listed again
+        touch(new File(late, "target.txt"));
+
+        File file = new File(storage, "search.ckpt");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, "task2:" + tree.getPath() + ":target.txt");
+        checkpoint.discovered(tree);
+        checkpoint.discovered(a);
+        checkpoint.discovered(b);
+        checkpoint.listed(tree);
+        checkpoint.listed(a);
+        File[] chunk = {foundBefore};
+        checkpoint.handedOver(chunk);
+        checkpoint.processed(chunk, Collections.singletonList(foundBefore));
+        checkpoint.handedOver(new File[]{pending});
+        checkpoint.write();
+
+        CrawlConfig config = new CrawlConfig();
+        config.checkpointFile = file;
+        final Set<File> found = Collections.synchronizedSet(new HashSet<File>());
+        config.resultSink = new ResultSink() {
+            public void accept(long index, File f) {
+                found.add(f);
+            }
+
+            public void close() {
+            }
+        };
+        Task2_ProducerConsumer.startIndexing(tree, new File("target.txt"), config).join();
+        assertEquals(new HashSet<>(Arrays.asList(foundBefore, pending, inFrontier)), found);
+        // the search is complete - its checkpoint is removed
+        assertFalse(file.exists());
+    }
+
+    /**
+     * touch - creates an empty file
+     *
+     * @param file file to create
+     * @return the file
+     * @throws IOException if the file can not be written
+     */
+    private File touch(File file) throws IOException {
+        Files.write(file.toPath(), new byte[0]);
+        return file;
+    }
+}
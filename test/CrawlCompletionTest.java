@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CrawlCompletionTest class - the last producer closes the queue, the last consumer completes the crawl, cancel stops it
+ */
+class CrawlCompletionTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void lastProducerClosesTheQueue() throws InterruptedException {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        CrawlCompletion completion = new CrawlCompletion(queue, 2, 1, () -> 0);
+        queue.put(new File("a"));
+        completion.producerDone();
+        assertArrayEquals(new File[]{new File("a")}, queue.take());
+        assertEquals(0, queue.size());
+        completion.producerDone();
+        assertNull(queue.take());
+        assertFalse(completion.isCancelled());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void lastConsumerCompletesWithTheResult() {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        final AtomicInteger files = new AtomicInteger();
+        CrawlCompletion completion = new CrawlCompletion(queue, 1, 2, files::get);
+        completion.producerDone();
+        files.addAndGet(3);
+        completion.consumerDone();
+        assertFalse(completion.future().isDone());
+        // added while the crawl runs - counted like the others
+        assertTrue(completion.addConsumer());
+        files.addAndGet(4);
+        completion.consumerDone();
+        assertFalse(completion.future().isDone());
+        completion.consumerDone();
+        assertEquals(7, completion.future().join().intValue());
+        // all consumers done - no more can be added
+        assertFalse(completion.addConsumer());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void consumersDoneBeforeProducersCancelTheQueue() {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        CrawlCompletion completion = new CrawlCompletion(queue, 1, 1, () -> 5);
+        completion.consumerDone();
+        assertTrue(completion.isCancelled());
+        assertEquals(5, completion.future().join().intValue());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void cancellingTheCrawlCancelsTheQueue() throws InterruptedException {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        CrawlCompletion completion = new CrawlCompletion(queue, 1, 1, () -> 0);
+        final AtomicInteger actions = new AtomicInteger();
+        completion.whenDone((value, e) -> actions.incrementAndGet()).cancel(true);
+        assertTrue(completion.isCancelled());
+        assertTrue(completion.future().isCancelled());
+        assertNull(queue.take());
+        // the action still runs once (RESULTS are printed)
+        assertEquals(1, actions.get());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void noProducersOrConsumers() throws InterruptedException {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        new CrawlCompletion(queue, 0, 1, () -> 0);
+        assertNull(queue.take());
+
+        CrawlCompletion idle = new CrawlCompletion(new FileBatchQueue(4, 8), 1, 0, () -> 9);
+        assertEquals(9, idle.future().join().intValue());
+    }
+}
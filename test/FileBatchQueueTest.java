@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FileBatchQueueTest class - files are handed over in chunks, close ends the stream after them, cancel ends it at once
+ */
+class FileBatchQueueTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void batchIsHandedOverWhenFullOrFlushed() throws InterruptedException {
+        FileBatchQueue queue = new FileBatchQueue(4, 2);
+        FileBatchQueue.Batch batch = queue.newBatch();
+        batch.add(new File("a"));
+        assertEquals(0, queue.size());
+        batch.add(new File("b"));
+        batch.add(new File("c"));
+        batch.flush();
+        // empty batch - nothing to hand over
+        batch.flush();
+        assertEquals(2, queue.size());
+        assertArrayEquals(new File[]{new File("a"), new File("b")}, queue.take());
+        assertArrayEquals(new File[]{new File("c")}, queue.take());
+        assertEquals(3, queue.taken());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void closeEndsTheStreamAfterChunksPutSoFar() throws InterruptedException {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        queue.put(new File("a"));
+        queue.put(new File("b"));
+        queue.close();
+        assertArrayEquals(new File[]{new File("a")}, queue.take());
+        assertArrayEquals(new File[]{new File("b")}, queue.take());
+        // every consumer sees the end, not only the first one
+        assertNull(queue.take());
+        assertNull(queue.take());
+        assertFalse(queue.isCancelled());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void closeWakesWaitingConsumers() throws InterruptedException {
+        final FileBatchQueue queue = new FileBatchQueue(4, 8);
+        Thread[] consumers = new Thread[3];
+        final int[] ends = new int[1];
+        for (int c = 0; c < consumers.length; c++) {
+            consumers[c] = new Thread(() -> {
+                try {
+                    if (queue.take() == null) {
+                        synchronized (ends) {
+                            ends[0]++;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumers[c].start();
+        }
+        while (queue.waiting() < consumers.length) {
+            Thread.sleep(10);
+        }
+        queue.close();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        assertEquals(consumers.length, ends[0]);
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void cancelDropsWaitingAndFurtherChunks() throws InterruptedException {
+        FileBatchQueue queue = new FileBatchQueue(4, 8);
+        queue.put(new File("a"));
+        queue.cancel();
+        assertTrue(queue.isCancelled());
+        assertNull(queue.take());
+        // put after cancel - dropped, only the end is left
+        queue.put(new File("b"));
+        assertEquals(1, queue.size());
+        assertNull(queue.take());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void cancelReleasesProducerBlockedOnFullQueue() throws InterruptedException {
+        final FileBatchQueue queue = new FileBatchQueue(1, 1);
+        queue.put(new File("a"));
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(new File("b"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(300);
+        assertTrue(producer.isAlive(), "producer should wait for space");
+        queue.cancel();
+        producer.join();
+        assertNull(queue.take());
+    }
+}
@@ -0,0 +1,162 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * ListingCacheTest class - listings are reused while the directory mtime is the same and the TTL holds, racy listings
+ *          are not kept, the least recently used ones are evicted, the spill file carries them to the next run
+ */
+class ListingCacheTest {
+
+    @TempDir
+    File tree;
+
+    @TempDir
+    File storage;
+
+    @Test
+    void listingIsReusedUntilTheDirectoryChanges() {
+        ListingCache cache = new ListingCache(100, 60_000, null);
+        long now = System.currentTimeMillis(), mtime = now - 10_000;
+        ListingCache.Listing listing = listing(mtime, now, "a", "b");
+        cache.put(tree, listing);
+        assertSame(listing, cache.get(tree, mtime));
+        assertSame(listing, cache.get(tree, mtime));
+        // entry added or removed - the listing is dropped
+        assertNull(cache.get(tree, mtime + 1000));
+        assertNull(cache.get(tree, mtime));
+    }
+
+    @Test
+    void listingOlderThanTheTtlIsListedAgain() {
+        ListingCache cache = new ListingCache(100, 1000, null);
+        long now = System.currentTimeMillis(), mtime = now - 60_000;
+        cache.put(tree, listing(mtime, now - 5000, "a"));
+        assertNull(cache.get(tree, mtime));
+    }
+
+    @Test
+    void directoryChangedJustBeforeItWasListedIsNotCached() {
+        ListingCache cache = new ListingCache(100, 60_000, null);
+        long now = System.currentTimeMillis();
+        cache.put(tree, listing(now - ListingCache.RACY_MILLIS / 2, now, "a"));
+        assertNull(cache.get(tree, now - ListingCache.RACY_MILLIS / 2));
+    }
+
+    @Test
+    void leastRecentlyUsedListingsAreEvicted() {
+        ListingCache cache = new ListingCache(4, 60_000, null);
+        long now = System.currentTimeMillis(), mtime = now - 10_000;
+        File a = new File(tree, "a"), b = new File(tree, "b"), c = new File(tree, "c");
+        cache.put(a, listing(mtime, now, "1", "2"));
+        cache.put(b, listing(mtime, now, "1", "2"));
+        // a used after b - b is the eldest
+        assertNotNull(cache.get(a, mtime));
+        cache.put(c, listing(mtime, now, "1", "2"));
+        assertNull(cache.get(b, mtime));
+        assertNotNull(cache.get(a, mtime));
+        assertNotNull(cache.get(c, mtime));
+        // larger than the whole cache - not kept
+        cache.put(b, listing(mtime, now, "1", "2", "3", "4", "5"));
+        assertNull(cache.get(b, mtime));
+        assertNotNull(cache.get(a, mtime));
+    }
+
+    @Test
+    void spillFileCarriesListingsToTheNextRun() throws Exception {
+        File spill = new File(storage, "listings.cache");
+        long now = System.currentTimeMillis(), mtime = now - 10_000;
+        ListingCache first = new ListingCache(100, 60_000, spill);
+        first.put(tree, listing(mtime, now, "file.txt", "sub"));
+        first.save();
+
+        CrawlConfig config = new CrawlConfig();
+        config.listingCacheSize = 100;
+        config.listingCacheTtl = 60;
+        config.listingCacheFile = spill;
+        ListingCache.Listing loaded = ListingCache.open(config).get(tree, mtime);
+        assertNotNull(loaded);
+        final List<String> names = new ArrayList<>();
+        // names and types only - entries are handed without attributes
+        loaded.visit(tree, all(), (entry, attrs, isDirectory) -> {
+            assertNull(attrs);
+            names.add(entry.getName() + (isDirectory ? "/" : ""));
+        }, true);
+        assertEquals(Arrays.asList("file.txt", "sub/"), names);
+    }
+
+    @Test
+    void cachedListerListsAChangedDirectoryAgain() throws Exception {
+        Files.write(new File(tree, "a.txt").toPath(), new byte[]{1});
+        long mtime = System.currentTimeMillis() - 60_000;
+        Files.setLastModifiedTime(tree.toPath(), FileTime.fromMillis(mtime));
+        final AtomicInteger listed = new AtomicInteger();
+        final DirectoryLister backend = new DirectoryLister.LegacyLister();
+        DirectoryLister counting = (directory, fileFilter, visitor) -> {
+            listed.incrementAndGet();
+            backend.list(directory, fileFilter, visitor);
+        };
+        DirectoryLister lister = DirectoryLister.cached(counting, new ListingCache(100, 60_000, null), false);
+
+        assertEquals(new HashSet<>(Arrays.asList("a.txt")), list(lister));
+        assertEquals(new HashSet<>(Arrays.asList("a.txt")), list(lister));
+        assertEquals(1, listed.get());
+
+        Files.write(new File(tree, "b.txt").toPath(), new byte[]{1});
+        Files.setLastModifiedTime(tree.toPath(), FileTime.fromMillis(mtime + 1000));
+        assertEquals(new HashSet<>(Arrays.asList("a.txt", "b.txt")), list(lister));
+        assertEquals(2, listed.get());
+    }
+
+    /**
+     * listing - listing of files with the given names, the last one a sub directory if there is more than one
+     *
+     * @param mtime    mtime of the directory
+     * @param listedAt time of the listing
+     * @param names    names of the entries
+     * @return listing
+     */
+    private ListingCache.Listing listing(long mtime, long listedAt, String... names) {
+        ListingCache.Builder builder = new ListingCache.Builder(names.length);
+        for (int i = 0; i < names.length; i++) {
+            builder.add(names[i], (BasicFileAttributes) null, names.length > 1 && i == names.length - 1);
+        }
+        return builder.build(mtime, listedAt);
+    }
+
+    /**
+     * list - names of the entries of the tree as the lister hands them
+     *
+     * @param lister lister
+     * @return names
+     * @throws Exception if listing fails
+     */
+    private HashSet<String> list(DirectoryLister lister) throws Exception {
+        final HashSet<String> names = new HashSet<>();
+        lister.list(tree, all(), (entry, attrs, isDirectory) -> names.add(entry.getName()));
+        return names;
+    }
+
+    /**
+     * @return filter accepting every file
+     */
+    private FileFilter all() {
+        return file -> true;
+    }
+}
@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * NameIndexTest class - a query of the name index finds the same files as NameMatcher checking every name
+ */
+class NameIndexTest {
+
+    /**
+     * Names of the indexed files
+     */
+    private static final String[] NAMES = {"README.md", "readme.txt", "Thread.java", "ThreadPool.java", "report-2024.csv",
+            "Report-2023.CSV", "a.b+c", "aaaa", "aab", "x", "日本語.txt", "日本日本", "großer Ärger.txt", "ΣΟΦΙΑ.md", "σοφια",
+            "file1.log", "file22.log", "[ab].c", "notes", "no tes"};
+
+    /**
+     * Search terms: literals (short and long), globs, regex
+     */
+    private static final String[] TERMS = {"read", "READ", "thread", "ead", "re", "a", "", "csv", "a.b+c", "aaa", "日本",
+            "日本語", "ärger", "ΣΟΦΙΑ", "σοφ", "*.java", "*.CSV", "report-*.csv", "file?.log", "file*.log", "[rR]eadme.*",
+            "*日本*", "glob:notes", "glob:*tes", "regex:^[a-z]+$", "regex:(?i)report-\\d+\\.csv", "missing", "*zzz*"};
+
+    @Test
+    void queryAgreesWithNameMatcher() {
+        NameIndex index = build();
+        for (String term : TERMS) {
+            NameMatcher matcher = NameMatcher.compile(term);
+            Set<String> expected = new HashSet<>();
+            for (String name : NAMES) {
+                if (matcher.matches(name)) {
+                    expected.add(name);
+                }
+            }
+            List<File> found = new ArrayList<>();
+            int count = index.query(term, Integer.MAX_VALUE, found);
+            Set<String> names = new HashSet<>();
+            for (File file : found) {
+                names.add(file.getName());
+            }
+            assertEquals(expected, names, term);
+            assertEquals(expected.size(), count, term);
+        }
+    }
+
+    @Test
+    void queryCountsBeyondMaxFiles() {
+        NameIndex index = build();
+        List<File> found = new ArrayList<>();
+        // README.md, readme.txt, Thread.java and ThreadPool.java contain "read"
+        assertEquals(2, index.query("*.java", 1, found));
+        assertEquals(4, index.query("read", 0, found));
+        assertEquals(1, found.size());
+        assertEquals(NAMES.length, index.size());
+    }
+
+    @Test
+    void requiredLiteralIsTheLongestPlainPart() {
+        assertEquals("read", NameIndex.requiredLiteral("READ"));
+        assertEquals("report-", NameIndex.requiredLiteral("report-*.csv"));
+        assertEquals("notes", NameIndex.requiredLiteral("glob:notes"));
+        assertEquals(".log", NameIndex.requiredLiteral("f[0-9].log"));
+        assertNull(NameIndex.requiredLiteral("ab"));
+        assertNull(NameIndex.requiredLiteral("*.c"));
+        assertNull(NameIndex.requiredLiteral("regex:report"));
+    }
+
+    /**
+     * build - index of NAMES, filled by two partials sharing one path store like the consumers of a crawl
+     *
+     * @return frozen index
+     */
+    private NameIndex build() {
+        PathArena paths = new PathArena();
+        NameIndex first = new NameIndex(paths), second = new NameIndex(paths);
+        for (int i = 0; i < NAMES.length; i++) {
+            File file = new File("/data/dir" + (i % 3), NAMES[i]);
+            (i % 2 == 0 ? first : second).add(file);
+        }
+        return NameIndex.mergeAll(Arrays.asList(first, second));
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * NameMatcherTest class - strategies picked by NameMatcher.compile and the glob to regex translation
+ */
+class NameMatcherTest {
+
+    @Test
+    void picksStrategyFromTerm() {
+        assertTrue(NameMatcher.compile("report") instanceof NameMatcher.SubstringMatcher);
+        assertTrue(NameMatcher.compile("*.txt") instanceof NameMatcher.GlobMatcher);
+        assertTrue(NameMatcher.compile("file?.log") instanceof NameMatcher.GlobMatcher);
+        assertTrue(NameMatcher.compile("[ab].c") instanceof NameMatcher.GlobMatcher);
+        assertTrue(NameMatcher.compile("glob:plain") instanceof NameMatcher.GlobMatcher);
+        assertTrue(NameMatcher.compile("regex:^a.*") instanceof NameMatcher.RegexMatcher);
+    }
+
+    @Test
+    void substringIsCaseInsensitiveAndLiteral() {
+        NameMatcher matcher = NameMatcher.compile("Read");
+        assertTrue(matcher.matches("README.md"));
+        assertTrue(matcher.matches("thread.java"));
+        assertTrue(matcher.matches("read"));
+        assertFalse(matcher.matches("rea"));
+        assertFalse(matcher.matches("ready".substring(1)));
+        // regex metacharacters are plain characters
+        assertTrue(NameMatcher.compile("a.b+c").matches("xa.b+cx"));
+        assertFalse(NameMatcher.compile("a.b+c").matches("axbbc"));
+        assertTrue(NameMatcher.compile("").matches("anything"));
+    }
+
+    @Test
+    void substringFindsCharactersAbove255() {
+        assertTrue(NameMatcher.compile("日本").matches("x日本"));
+        assertTrue(NameMatcher.compile("日本").matches("日本語.txt"));
+        assertTrue(NameMatcher.compile("本日本").matches("日本日本日本"));
+        assertTrue(NameMatcher.compile("Ärger").matches("großer ärger.txt"));
+        assertTrue(NameMatcher.compile("ΣΟΦΙΑ").matches("φιλοσοφια-σοφια"));
+        assertFalse(NameMatcher.compile("日本").matches("日x本"));
+        // last character of the name window is in the pattern only as its last character
+        assertTrue(NameMatcher.compile("a日").matches("日日a日"));
+    }
+
+    @Test
+    void substringAgreesWithIndexOf() {
+        String[] names = {"abcabd", "日本日本x", "aaaab", "ab日ab日c", "xyz", "日ab"};
+        String[] terms = {"abd", "本x", "aab", "b日c", "日", "z", "日ab", "ab日ab日c", "q"};
+        for (String name : names) {
+            for (String term : terms) {
+                assertEquals(name.contains(term), NameMatcher.compile(term).matches(name), term + " in " + name);
+            }
+        }
+    }
+
+    @Test
+    void globMatchesWholeNameCaseInsensitively() {
+        NameMatcher matcher = NameMatcher.compile("*.txt");
+        assertTrue(matcher.matches("notes.txt"));
+        assertTrue(matcher.matches("NOTES.TXT"));
+        assertTrue(matcher.matches(".txt"));
+        assertFalse(matcher.matches("notes.txt.bak"));
+        assertTrue(NameMatcher.compile("file?.log").matches("file1.log"));
+        assertFalse(NameMatcher.compile("file?.log").matches("file10.log"));
+    }
+
+    @Test
+    void globTranslatesSetsGroupsAndEscapes() {
+        assertTrue(NameMatcher.compile("[abc].c").matches("b.c"));
+        assertFalse(NameMatcher.compile("[abc].c").matches("d.c"));
+        assertTrue(NameMatcher.compile("[!abc].c").matches("d.c"));
+        assertFalse(NameMatcher.compile("[!abc].c").matches("a.c"));
+        assertTrue(NameMatcher.compile("[a-c]x").matches("bx"));
+        assertTrue(NameMatcher.compile("*.{java,kt}").matches("Main.java"));
+        assertTrue(NameMatcher.compile("*.{java,kt}").matches("Main.kt"));
+        assertFalse(NameMatcher.compile("*.{java,kt}").matches("Main.js"));
+        assertTrue(NameMatcher.compile("glob:a,b").matches("a,b"));
+        assertTrue(NameMatcher.compile("glob:a\\*").matches("a*"));
+        assertFalse(NameMatcher.compile("glob:a\\*").matches("ab"));
+        // unclosed set and regex metacharacters are literal
+        assertTrue(NameMatcher.compile("[x").matches("[x"));
+        assertTrue(NameMatcher.compile("glob:a+(b)$").matches("a+(b)$"));
+        assertEquals("[^/]*\\Q.\\E\\Qc\\E", NameMatcher.GlobMatcher.toRegex("*.c"));
+    }
+
+    @Test
+    void globMatchesNamesThePlatformCanNotEncode() {
+        // lone surrogate - not representable as Path on most platforms
+        assertTrue(NameMatcher.compile("*.txt").matches("bad\uD800name.txt"));
+    }
+
+    @Test
+    void regexIsFoundAnywhereCaseInsensitively() {
+        NameMatcher matcher = NameMatcher.compile("regex:v[0-9]+\\.log");
+        assertTrue(matcher.matches("app-V12.log"));
+        assertTrue(matcher.matches("v1.log.gz"));
+        assertFalse(matcher.matches("v.log"));
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PathFilterTest class - .gitignore precedence (last rule wins, deeper rule files win, ! re-includes), pruning and limits
+ */
+class PathFilterTest {
+
+    @TempDir
+    File tree;
+
+    @Test
+    void nothingConfiguredAcceptsEverything() throws IOException {
+        PathFilter filter = PathFilter.compile(new CrawlConfig(), new File[]{tree});
+        assertSame(PathFilter.NONE, filter);
+        PathFilter.Scope root = filter.scopeOf(tree);
+        assertSame(root, root.enter(new File(tree, ".git")));
+        assertTrue(root.accept(new File(tree, "a.class"), null));
+    }
+
+    @Test
+    void lastMatchingRuleWins() throws IOException {
+        PathFilter.Scope root = scope(config("*.log", "!keep.log"));
+        assertFalse(root.accept(new File(tree, "a.log"), null));
+        assertTrue(root.accept(new File(tree, "keep.log"), null));
+        assertTrue(root.accept(new File(tree, "a.txt"), null));
+
+        // the same rules the other way round - the exclude comes last and wins
+        root = scope(config("!keep.log", "*.log"));
+        assertFalse(root.accept(new File(tree, "keep.log"), null));
+    }
+
+    @Test
+    void directoryRulePrunesOnlyDirectories() throws IOException {
+        PathFilter.Scope root = scope(config("build/"));
+        assertNull(root.enter(new File(tree, "build")));
+        assertTrue(root.accept(new File(tree, "build"), null));
+        // a name rule matches at any depth
+        PathFilter.Scope src = root.enter(new File(tree, "src"));
+        assertNotNull(src);
+        assertNull(src.enter(new File(tree, "src/build")));
+    }
+
+    @Test
+    void ruleWithDirectoryPartIsAnchored() throws IOException {
+        PathFilter.Scope root = scope(config("docs/*.tmp", "/top.txt", "**/gen/**"));
+        PathFilter.Scope docs = root.enter(new File(tree, "docs"));
+        assertFalse(docs.accept(new File(tree, "docs/a.tmp"), null));
+        PathFilter.Scope nested = root.enter(new File(tree, "x")).enter(new File(tree, "x/docs"));
+        assertTrue(nested.accept(new File(tree, "x/docs/a.tmp"), null));
+
+        assertFalse(root.accept(new File(tree, "top.txt"), null));
+        assertTrue(docs.accept(new File(tree, "docs/top.txt"), null));
+
+        PathFilter.Scope gen = root.enter(new File(tree, "a")).enter(new File(tree, "a/gen"));
+        assertFalse(gen.accept(new File(tree, "a/gen/Out.java"), null));
+    }
+
+    @Test
+    void deeperRuleFileWinsOverConfigAndParent() throws IOException {
+        File sub = new File(tree, "sub"), deeper = new File(sub, "deeper");
+        assertTrue(deeper.mkdirs());
+        Files.write(new File(sub, ".ignore").toPath(), Arrays.asList("# keep texts here", "!*.txt", "secret/"));
+        Files.write(new File(deeper, ".ignore").toPath(), Arrays.asList("notes.txt"));
+        CrawlConfig config = config("*.txt");
+        config.ignoreFileName = ".ignore";
+        PathFilter filter = PathFilter.compile(config, new File[]{tree});
+
+        PathFilter.Scope root = filter.scopeOf(tree);
+        assertFalse(root.accept(new File(tree, "a.txt"), null));
+        PathFilter.Scope subScope = root.enter(sub);
+        assertTrue(subScope.accept(new File(sub, "a.txt"), null));
+        assertNull(subScope.enter(new File(sub, "secret")));
+        PathFilter.Scope deeperScope = subScope.enter(deeper);
+        assertFalse(deeperScope.accept(new File(deeper, "notes.txt"), null));
+        assertTrue(deeperScope.accept(new File(deeper, "other.txt"), null));
+
+        // a resumed crawl starting below the root reads the same rule files on the way down
+        assertTrue(filter.scopeOf(deeper).accept(new File(deeper, "other.txt"), null));
+        assertNull(filter.scopeOf(new File(sub, "secret")));
+    }
+
+    @Test
+    void includeGlobsDepthAndSizeLimits() throws IOException {
+        File small = new File(tree, "small.java"), large = new File(tree, "large.java");
+        Files.write(small.toPath(), new byte[10]);
+        Files.write(large.toPath(), new byte[1000]);
+        CrawlConfig config = new CrawlConfig();
+        config.include.add("*.java");
+        config.maxDepth = 1;
+        config.maxFileSize = 100;
+        PathFilter.Scope root = scope(config);
+        assertTrue(root.accept(small, null));
+        assertFalse(root.accept(large, null));
+        assertFalse(root.accept(new File(tree, "readme.md"), null));
+        // entries of a root have depth 1 - nothing below it is listed
+        assertNull(root.enter(new File(tree, "src")));
+    }
+
+    /**
+     * config - config with exclude rules
+     *
+     * @param excludes exclude rules in .gitignore syntax
+     * @return config
+     */
+    private CrawlConfig config(String... excludes) {
+        CrawlConfig config = new CrawlConfig();
+        config.exclude.addAll(Arrays.asList(excludes));
+        return config;
+    }
+
+    /**
+     * scope - scope of the root of the tree
+     *
+     * @param config filter settings
+     * @return scope of the root
+     * @throws IOException if a rule file can not be read
+     */
+    private PathFilter.Scope scope(CrawlConfig config) throws IOException {
+        return PathFilter.compile(config, new File[]{tree}).scopeOf(tree);
+    }
+}
@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PersistentIndexTest class - save / load round-trip of the persistent index and compaction of its dictionary
+ */
+class PersistentIndexTest {
+
+    @TempDir
+    File tree;
+
+    @TempDir
+    File storage;
+
+    @Test
+    void unchangedFilesKeepTheirTermsAcrossRuns() throws IOException {
+        List<File> files = createFiles(3);
+        PersistentIndex first = PersistentIndex.open(storage, false);
+        crawl(first, files);
+        first.indexed(files.get(0), new HashSet<>(Arrays.asList("alpha", "beta")));
+        first.indexed(files.get(1), null);
+        first.save(true);
+
+        PersistentIndex second = PersistentIndex.open(storage, false);
+        for (File file : files) {
+            assertTrue(second.fileUnchanged(file, null), file.getName());
+        }
+        String[] terms = second.cachedTerms(files.get(0));
+        Arrays.sort(terms);
+        assertArrayEquals(new String[]{"alpha", "beta"}, terms);
+        assertSame(PersistentIndex.BINARY, second.cachedTerms(files.get(1)));
+        // never indexed - has to be read
+        assertNull(second.cachedTerms(files.get(2)));
+        // taken once per run
+        assertNull(second.cachedTerms(files.get(0)));
+    }
+
+    @Test
+    void changedFileIsReadAgain() throws IOException {
+        List<File> files = createFiles(1);
+        PersistentIndex first = PersistentIndex.open(storage, false);
+        crawl(first, files);
+        first.indexed(files.get(0), Collections.singleton("old"));
+        first.save(true);
+
+        Files.write(files.get(0).toPath(), "a longer content".getBytes());
+        PersistentIndex second = PersistentIndex.open(storage, false);
+        assertFalse(second.fileUnchanged(files.get(0), null));
+        assertNull(second.cachedTerms(files.get(0)));
+    }
+
+    @Test
+    void unchangedDirectoryIsTakenFromTheIndex() throws IOException {
+        List<File> files = createFiles(2);
+        PersistentIndex first = PersistentIndex.open(storage, true);
+        crawl(first, files);
+        first.save(true);
+
+        PersistentIndex second = PersistentIndex.open(storage, true);
+        List<File> known = new ArrayList<>();
+        List<File> subDirs = second.unchangedSubDirectories(tree, null, known);
+        assertTrue(subDirs != null && subDirs.isEmpty());
+        assertTrue(known.containsAll(files) && known.size() == files.size());
+    }
+
+    @Test
+    void compactionDropsDeletedNamesAndKeepsLiveRecords() throws IOException {
+        List<File> files = createFiles(1100);
+        PersistentIndex first = PersistentIndex.open(storage, false);
+        crawl(first, files);
+        for (File file : files) {
+            first.indexed(file, Collections.singleton(file.getName()));
+        }
+        first.save(true);
+        long dictionaryBefore = new File(storage, "paths.dict").length();
+
+        // most files deleted - the complete run logs more deletions than live records, the log is compacted
+        List<File> kept = files.subList(0, 100);
+        for (File file : files.subList(100, files.size())) {
+            assertTrue(file.delete());
+        }
+        PersistentIndex second = PersistentIndex.open(storage, false);
+        crawl(second, kept);
+        second.save(true);
+        assertTrue(new File(storage, "paths.dict").length() < dictionaryBefore / 2);
+
+        PersistentIndex third = PersistentIndex.open(storage, false);
+        for (File file : kept) {
+            assertTrue(third.fileUnchanged(file, null), file.getName());
+            assertArrayEquals(new String[]{file.getName()}, third.cachedTerms(file));
+        }
+        // a deleted file created again is new
+        File again = files.get(500);
+        Files.write(again.toPath(), "x".getBytes());
+        assertFalse(third.fileUnchanged(again, null));
+    }
+
+    /**
+     * createFiles - creates files in the crawled tree
+     *
+     * @param count num of files
+     * @return created files
+     * @throws IOException if a file can not be written
+     */
+    private List<File> createFiles(int count) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = new File(tree, "file" + i + ".txt");
+            Files.write(file.toPath(), ("content " + i).getBytes());
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * crawl - records a crawl of the tree the way the crawlers do
+     *
+     * @param index index of the run
+     * @param files files found in the tree
+     */
+    private void crawl(PersistentIndex index, List<File> files) {
+        for (File file : files) {
+            index.fileUnchanged(file, null);
+        }
+        index.recordDirectory(tree, null, Collections.<File>emptyList(), files);
+    }
+}
@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ShardCoordinatorTest class - a sharded search finds every file once, also when a worker dies or hangs on its shard
+ */
+class ShardCoordinatorTest {
+
+    @TempDir
+    File tree;
+
+    @TempDir
+    File markers;
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void findsEveryFileOnce() throws IOException {
+        Set<File> expected = createTree();
+        assertEquals(expected, search(config(null)));
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void retriesShardOfDeadWorker() throws IOException {
+        Set<File> expected = createTree();
+        CrawlConfig config = config("die");
+        ShardCoordinator coordinator = new ShardCoordinator(tree, "match", config, new CollectingSink());
+        assertEquals(expected.size(), coordinator.start().join().intValue());
+        assertTrue(coordinator.summary().contains("1 retried, 0 failed"), coordinator.summary());
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void killsAndRetriesHungWorker() throws IOException {
+        Set<File> expected = createTree();
+        CrawlConfig config = config("hang");
+        config.shardWorkerTimeoutMillis = 1000;
+        CollectingSink sink = new CollectingSink();
+        ShardCoordinator coordinator = new ShardCoordinator(tree, "match", config, sink);
+        assertEquals(expected.size(), coordinator.start().join().intValue());
+        assertEquals(expected, sink.files);
+        assertTrue(coordinator.summary().contains("1 retried, 0 failed"), coordinator.summary());
+    }
+
+    /**
+     * createTree - directories with matching and other files
+     *
+     * @return matching files
+     * @throws IOException if the tree can not be written
+     */
+    private Set<File> createTree() throws IOException {
+        Set<File> matching = new HashSet<>();
+        for (String dir : Arrays.asList("a", "a/b", "c", "d/e/f")) {
+            File directory = new File(tree, dir);
+            assertTrue(directory.mkdirs());
+            for (int i = 0; i < 5; i++) {
+                File file = new File(directory, "match" + i + ".txt");
+                Files.write(file.toPath(), new byte[]{1});
+                matching.add(file);
+                Files.write(new File(directory, "other" + i + ".txt").toPath(), new byte[]{1});
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * config - two workers, the first one started fails in the given way
+     *
+     * @param failure "die", "hang" or null (no failure)
+     * @return settings of the search
+     */
+    private CrawlConfig config(String failure) {
+        CrawlConfig config = new CrawlConfig();
+        config.shardWorkers = 2;
+        if (failure != null) {
+            config.shardWorkerCommand = new ArrayList<>(Arrays.asList(
+                    new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), FailingWorker.class.getName(),
+                    new File(markers, "failed").getPath(), failure));
+        }
+        return config;
+    }
+
+    /**
+     * search - runs a sharded search for "match"
+     *
+     * @param config settings of the search
+     * @return found files
+     */
+    private Set<File> search(CrawlConfig config) {
+        CollectingSink sink = new CollectingSink();
+        new ShardCoordinator(tree, "match", config, sink).start().join();
+        return sink.files;
+    }
+
+    /**
+     * CollectingSink class - keeps the merged results
+     */
+    private static class CollectingSink implements ResultSink {
+        /**
+         * Found files
+         */
+        final Set<File> files = Collections.synchronizedSet(new HashSet<File>());
+
+        public void accept(long index, File file) {
+            files.add(file);
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * FailingWorker class - worker process whose first instance (the one creating the marker file) exits at once or
+     *          never replies, the others are normal ShardWorkers
+     */
+    public static class FailingWorker {
+        public static void main(String[] args) throws IOException, InterruptedException {
+            if (!new File(args[0]).createNewFile()) {
+                ShardWorker.main(new String[0]);
+            } else if (args[1].equals("die")) {
+                System.exit(1);
+            } else {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+        }
+    }
+}
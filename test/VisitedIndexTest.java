@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * VisitedIndexTest class - files and directories keyed by file key, and by (file key, name) for a name search
+ */
+class VisitedIndexTest {
+
+    @TempDir
+    File tree;
+
+    @Test
+    void fileIsMarkedOnce() throws IOException {
+        File file = new File(tree, "a.txt");
+        Files.write(file.toPath(), new byte[]{1});
+        VisitedIndex index = new VisitedIndex();
+        assertTrue(index.markFile(file));
+        assertFalse(index.markFile(file));
+        assertFalse(index.markFile(new File(tree, "./a.txt")));
+    }
+
+    @Test
+    void hardLinkIsTheSameFileUnlessKeyedByName() throws IOException {
+        File file = new File(tree, "a.txt"), sameName = new File(tree, "sub/a.txt"), otherName = new File(tree, "copy.txt");
+        Files.write(file.toPath(), new byte[]{1});
+        assertTrue(sameName.getParentFile().mkdir());
+        Files.createLink(sameName.toPath(), file.toPath());
+        Files.createLink(otherName.toPath(), file.toPath());
+
+        VisitedIndex byKey = new VisitedIndex();
+        assertTrue(byKey.markFile(file));
+        assertFalse(byKey.markFile(sameName));
+        assertFalse(byKey.markFile(otherName));
+
+        VisitedIndex byName = new VisitedIndex(true);
+        assertTrue(byName.markFile(file));
+        assertFalse(byName.markFile(sameName));
+        assertTrue(byName.markFile(otherName));
+    }
+
+    @Test
+    void symlinkToEnteredDirectoryIsALoop() throws IOException {
+        File dir = new File(tree, "dir"), link = new File(dir, "back");
+        assertTrue(dir.mkdir());
+        Files.createSymbolicLink(link.toPath(), tree.toPath());
+        // directories are keyed by file key in both modes
+        for (VisitedIndex index : new VisitedIndex[]{new VisitedIndex(), new VisitedIndex(true)}) {
+            assertTrue(index.markDirectory(tree));
+            assertTrue(index.markDirectory(dir));
+            assertFalse(index.markDirectory(link));
+        }
+    }
+}